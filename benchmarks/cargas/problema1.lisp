@@ -0,0 +1,3 @@
+; Problema 1 de "Problemas de Prueba.txt"
+(SET x 20)
+(PRINT x)
@@ -0,0 +1,3 @@
+; Problema 2 de "Problemas de Prueba.txt"
+(SET x (+ 10 (* 3 3) 2 (+ 20 (- 10 5)) ))
+(PRINT x)
@@ -0,0 +1,10 @@
+; Problema 3 de "Problemas de Prueba.txt"
+(defun (evaluar-numero n)
+  (cond
+    ((< n 0) "El número es negativo.")
+    ((= n 0) "El número es cero.")
+    (t "El número es positivo.")))
+
+(evaluar-numero -5)
+(evaluar-numero 0)
+(evaluar-numero 7)
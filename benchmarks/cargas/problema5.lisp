@@ -0,0 +1,8 @@
+; Problema 5 de "Problemas de Prueba.txt"
+(DEFUN (factorial n)
+(cond
+	((= n 0) 1)
+	(t (SET resultado (* n (factorial (- n 1))))
+	resultado)))
+(factorial 5)
+(factorial 20)
@@ -0,0 +1,8 @@
+; Recursión doble y construcción de listas
+(DEFUN (fib n) (COND ((< n 2) n) (T (+ (fib (- n 1)) (fib (- n 2))))))
+(DEFUN (rango n acc) (COND ((= n 0) acc) (T (rango (- n 1) (CONS n acc)))))
+(DEFUN (suma l) (COND ((EQ l NIL) 0) (T (+ (CAR l) (suma (CDR l))))))
+(fib 15)
+(suma (rango 100 NIL))
+(EQUAL (rango 50 NIL) (rango 50 NIL))
+(CONCAT "fib(15) = " (fib 15))
@@ -0,0 +1,91 @@
+package rendimiento;
+
+import Excepciones.ExcepcionLisp;
+import lisp.ExpresionLisp;
+import lisp.Fasl;
+import lisp.analizador;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rendimiento de analizador.analizar sobre entradas pequeñas y grandes, comparado con
+ * la lectura de las mismas formas en formato FASL.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AnalizadorBenchmark {
+    /** Tamaño de la entrada: una forma corta o un programa con muchas definiciones */
+    @Param({"pequena", "grande"})
+    public String entrada;
+
+    private String texto;
+
+    private byte[] fasl;
+
+    @Setup
+    public void preparar() throws ExcepcionLisp, IOException {
+        prepararTexto();
+        List<ExpresionLisp> formas = new ArrayList<>();
+        analizador lector = new analizador(new StringReader(texto));
+        ExpresionLisp expresion;
+        while ((expresion = lector.analizar()) != null) {
+            formas.add(expresion);
+        }
+        ByteArrayOutputStream salida = new ByteArrayOutputStream();
+        Fasl.escribir(formas, salida);
+        fasl = salida.toByteArray();
+    }
+
+    private void prepararTexto() {
+        if (entrada.equals("pequena")) {
+            texto = "(DEFUN (FACTORIAL N) (COND ((= N 0) 1) (T (* N (FACTORIAL (- N 1))))))";
+            return;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            sb.append("(DEFUN (F").append(i).append(" X Y) ")
+              .append("(COND ((< X ").append(i).append(") (LIST X Y \"cadena ").append(i).append("\")) ")
+              .append("(T (CONS 'A (F").append(i).append(" (- X 1) (+ Y 2))))))\n");
+            sb.append("; comentario ").append(i).append('\n');
+        }
+        texto = sb.toString();
+    }
+
+    @Benchmark
+    public void analizar(Blackhole agujero) throws ExcepcionLisp {
+        analizador lector = new analizador(new StringReader(texto));
+        ExpresionLisp expresion;
+        while ((expresion = lector.analizar()) != null) {
+            agujero.consume(expresion);
+        }
+    }
+
+    @Benchmark
+    public void leerFasl(Blackhole agujero) throws ExcepcionLisp, IOException {
+        for (ExpresionLisp expresion : Fasl.leer(new ByteArrayInputStream(fasl))) {
+            agujero.consume(expresion);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package rendimiento;
+
+import Excepciones.ExcepcionLisp;
+import lisp.ExpresionLisp;
+import lisp.Interprete;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rendimiento de Interprete.evaluar sobre programas recursivos y de construcción de listas.
+ * Cada medida incluye el análisis de la forma, como en el uso real de evaluar(String).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EvaluacionBenchmark {
+    private Interprete interprete;
+
+    @Setup
+    public void preparar() throws ExcepcionLisp {
+        interprete = crearInterprete();
+        interprete.evaluar("(DEFUN (FIB N) (COND ((< N 2) N) (T (+ (FIB (- N 1)) (FIB (- N 2))))))");
+        interprete.evaluar("(DEFUN (FACTORIAL N) (COND ((= N 0) 1) (T (* N (FACTORIAL (- N 1))))))");
+        interprete.evaluar("(DEFUN (RANGO N ACC) (COND ((= N 0) ACC) (T (RANGO (- N 1) (CONS N ACC)))))");
+        interprete.evaluar("(DEFUN (INVERTIR L ACC) (COND ((EQ L NIL) ACC) (T (INVERTIR (CDR L) (CONS (CAR L) ACC)))))");
+    }
+
+    @Benchmark
+    public ExpresionLisp fib() throws ExcepcionLisp {
+        return interprete.evaluar("(FIB 20)");
+    }
+
+    @Benchmark
+    public ExpresionLisp factorial() throws ExcepcionLisp {
+        return interprete.evaluar("(FACTORIAL 20)");
+    }
+
+    @Benchmark
+    public ExpresionLisp construirListas() throws ExcepcionLisp {
+        return interprete.evaluar("(INVERTIR (RANGO 100 NIL) NIL)");
+    }
+
+    /**
+     * Crea un intérprete sin entrada y que descarta su salida.
+     *
+     * @return el intérprete
+     */
+    static Interprete crearInterprete() throws ExcepcionLisp {
+        return new Interprete(new ByteArrayInputStream(new byte[0]), new PrintStream(OutputStream.nullOutputStream()));
+    }
+}
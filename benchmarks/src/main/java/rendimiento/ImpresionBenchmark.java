@@ -0,0 +1,52 @@
+package rendimiento;
+
+import lisp.ExpresionLisp;
+import lisp.cadena;
+import lisp.numero;
+import lisp.par;
+import lisp.simbolo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rendimiento de ExpresionLisp.toString sobre listas anidadas de números, símbolos y cadenas.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ImpresionBenchmark {
+    /** Número de sublistas de la expresión impresa */
+    @Param({"10", "1000"})
+    public int elementos;
+
+    private ExpresionLisp expresion;
+
+    @Setup
+    public void preparar() {
+        ExpresionLisp lista = simbolo.NULO;
+        for (int i = elementos - 1; i >= 0; i--) {
+            ExpresionLisp sublista = par.crearLista(numero.obtenerValor(i), simbolo.VERDADERO, new cadena("elemento " + i));
+            lista = new par(sublista, lista);
+        }
+        expresion = lista;
+    }
+
+    @Benchmark
+    public String imprimir() {
+        return expresion.toString();
+    }
+}
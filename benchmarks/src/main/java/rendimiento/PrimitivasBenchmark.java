@@ -0,0 +1,71 @@
+package rendimiento;
+
+import Excepciones.ExcepcionLisp;
+import lisp.ExpresionLisp;
+import lisp.Interprete;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rendimiento del despacho de funciones incorporadas: aritmética, EQUAL, MAPCAR y REDUCE
+ * sobre listas largas.
+ * Las formas se analizan una sola vez y se evalúan repetidas veces en un bucle DOTIMES,
+ * de modo que la medida está dominada por el despacho y no por el analizador.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PrimitivasBenchmark {
+    /** Longitud de las listas comparadas con EQUAL */
+    @Param({"100", "1000"})
+    public int longitud;
+
+    private Interprete interprete;
+
+    @Setup
+    public void preparar() throws ExcepcionLisp {
+        interprete = EvaluacionBenchmark.crearInterprete();
+        StringBuilder lista = new StringBuilder("(QUOTE (");
+        for (int i = 0; i < longitud; i++) {
+            lista.append(i).append(' ');
+        }
+        lista.append("))");
+        interprete.evaluar("(SET A " + lista + ")");
+        interprete.evaluar("(SET B " + lista + ")");
+        interprete.evaluar("(DEFUN (DOBLE X) (* X 2))");
+    }
+
+    @Benchmark
+    public ExpresionLisp aritmetica() throws ExcepcionLisp {
+        return interprete.evaluar("(DOTIMES (I 1000) (+ (* I 3) (- I 1) (/ I 2)))");
+    }
+
+    @Benchmark
+    public ExpresionLisp igualdadListas() throws ExcepcionLisp {
+        return interprete.evaluar("(EQUAL A B)");
+    }
+
+    @Benchmark
+    public ExpresionLisp mapearLista() throws ExcepcionLisp {
+        return interprete.evaluar("(MAPCAR DOBLE A)");
+    }
+
+    @Benchmark
+    public ExpresionLisp reducirSuma() throws ExcepcionLisp {
+        return interprete.evaluar("(REDUCE + A)");
+    }
+}
@@ -0,0 +1,365 @@
+package rendimiento;
+
+import Excepciones.ExcepcionLisp;
+import lisp.Interprete;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * Prueba de carga de extremo a extremo del intérprete.
+ * Reproduce un directorio de programas .lisp, forma a forma y a través de
+ * Interprete.evaluar(String), durante N iteraciones en M hilos. Informa formas por
+ * segundo, latencias p50 y p99 por forma y crecimiento del heap, y compara el resultado
+ * con una línea base guardada, terminando con código 1 si hay una regresión.
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar rendimiento.PruebaCarga
+ *      [--cargas cargas] [--iteraciones 200] [--hilos 4] [--modo nuevo|compartido]
+ *      [--linea-base archivo] [--guardar archivo] [--tolerancia 0.15]
+ * </pre>
+ *
+ * En modo nuevo cada hilo crea un intérprete por iteración; en modo compartido todos
+ * los hilos usan un único intérprete publicado, cada uno con su propia capa.
+ */
+public final class PruebaCarga {
+    /** Margen fijo de crecimiento del heap antes de considerarlo una regresión */
+    private static final long MARGEN_HEAP = 8L * 1024 * 1024;
+
+    private Path cargas = Path.of("cargas");
+    private int iteraciones = 200;
+    private int hilos = 4;
+    private boolean compartido;
+    private Path lineaBase;
+    private Path guardar;
+    private double tolerancia = 0.15;
+
+    private PruebaCarga() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        PruebaCarga prueba = new PruebaCarga();
+        prueba.leerOpciones(args);
+        Resultado resultado = prueba.ejecutar();
+        resultado.imprimir(System.out);
+
+        if (prueba.guardar != null) {
+            resultado.guardar(prueba.guardar);
+            System.out.println("Línea base guardada en " + prueba.guardar);
+        }
+        if (prueba.lineaBase != null) {
+            List<String> regresiones = resultado.comparar(Resultado.cargar(prueba.lineaBase), prueba.tolerancia);
+            if (!regresiones.isEmpty()) {
+                regresiones.forEach(r -> System.out.println("REGRESIÓN: " + r));
+                System.exit(1);
+            }
+            System.out.println("Sin regresiones respecto a " + prueba.lineaBase);
+        }
+    }
+
+    /**
+     * Interpreta las opciones de línea de comandos.
+     *
+     * @param args las opciones
+     */
+    private void leerOpciones(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String opcion = args[i];
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Falta el valor de " + opcion);
+            }
+            String valor = args[++i];
+            switch (opcion) {
+                case "--cargas" -> cargas = Path.of(valor);
+                case "--iteraciones" -> iteraciones = Integer.parseInt(valor);
+                case "--hilos" -> hilos = Integer.parseInt(valor);
+                case "--modo" -> compartido = switch (valor) {
+                    case "nuevo" -> false;
+                    case "compartido" -> true;
+                    default -> throw new IllegalArgumentException("Modo desconocido: " + valor);
+                };
+                case "--linea-base" -> lineaBase = Path.of(valor);
+                case "--guardar" -> guardar = Path.of(valor);
+                case "--tolerancia" -> tolerancia = Double.parseDouble(valor);
+                default -> throw new IllegalArgumentException("Opción desconocida: " + opcion);
+            }
+        }
+    }
+
+    /**
+     * Ejecuta la carga completa en todos los hilos.
+     *
+     * @return las medidas obtenidas
+     */
+    private Resultado ejecutar() throws Exception {
+        List<String> formas = leerFormas(cargas);
+        if (formas.isEmpty()) {
+            throw new IllegalStateException("No hay formas en " + cargas);
+        }
+        Interprete unico = compartido ? crearInterprete() : null;
+        if (unico != null) {
+            unico.publicar();
+        }
+
+        // Calentamiento, para no medir la carga de clases ni el primer JIT
+        ejecutarHilo(formas, Math.max(1, iteraciones / 10), unico);
+
+        MemoryMXBean memoria = ManagementFactory.getMemoryMXBean();
+        System.gc();
+        long heapInicial = memoria.getHeapMemoryUsage().getUsed();
+
+        ExecutorService ejecutor = Executors.newFixedThreadPool(hilos);
+        List<Future<Medidas>> pendientes = new ArrayList<>();
+        long inicio = System.nanoTime();
+        for (int h = 0; h < hilos; h++) {
+            pendientes.add(ejecutor.submit(() -> ejecutarHilo(formas, iteraciones, unico)));
+        }
+        Medidas total = new Medidas(0);
+        for (Future<Medidas> pendiente : pendientes) {
+            total.agregar(pendiente.get());
+        }
+        long nanos = System.nanoTime() - inicio;
+        ejecutor.shutdown();
+
+        System.gc();
+        long heapFinal = memoria.getHeapMemoryUsage().getUsed();
+
+        long[] latencias = Arrays.copyOf(total.latencias, total.cantidad);
+        Arrays.sort(latencias);
+        Resultado resultado = new Resultado();
+        resultado.formasPorSegundo = total.cantidad * 1e9 / nanos;
+        resultado.p50Micros = percentil(latencias, 0.50) / 1e3;
+        resultado.p99Micros = percentil(latencias, 0.99) / 1e3;
+        resultado.crecimientoHeap = heapFinal - heapInicial;
+        resultado.errores = total.errores;
+        resultado.formas = total.cantidad;
+        return resultado;
+    }
+
+    /**
+     * Evalúa todas las formas el número de veces indicado, midiendo cada una.
+     *
+     * @param formas las formas a evaluar
+     * @param veces el número de iteraciones
+     * @param unico el intérprete compartido, o null para crear uno por iteración
+     * @return las latencias y errores observados
+     */
+    private static Medidas ejecutarHilo(List<String> formas, int veces, Interprete unico) throws ExcepcionLisp {
+        Medidas medidas = new Medidas(formas.size() * veces);
+        for (int i = 0; i < veces; i++) {
+            Interprete interprete = unico != null ? unico : crearInterprete();
+            for (String forma : formas) {
+                long inicio = System.nanoTime();
+                try {
+                    interprete.evaluar(forma);
+                } catch (ExcepcionLisp e) {
+                    medidas.errores++;
+                }
+                medidas.registrar(System.nanoTime() - inicio);
+            }
+        }
+        return medidas;
+    }
+
+    private static Interprete crearInterprete() throws ExcepcionLisp {
+        return new Interprete(new ByteArrayInputStream(new byte[0]), new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    private static long percentil(long[] ordenadas, double p) {
+        if (ordenadas.length == 0) {
+            return 0;
+        }
+        int indice = (int) Math.ceil(p * ordenadas.length) - 1;
+        return ordenadas[Math.max(0, Math.min(indice, ordenadas.length - 1))];
+    }
+
+    /**
+     * Lee las formas de nivel superior de todos los archivos .lisp del directorio, en orden.
+     *
+     * @param directorio el directorio de cargas
+     * @return el texto de cada forma
+     */
+    static List<String> leerFormas(Path directorio) throws IOException {
+        List<Path> archivos;
+        try (Stream<Path> listado = Files.list(directorio)) {
+            archivos = listado.filter(p -> p.toString().endsWith(".lisp")).sorted().toList();
+        }
+        List<String> formas = new ArrayList<>();
+        for (Path archivo : archivos) {
+            formas.addAll(dividirFormas(Files.readString(archivo, StandardCharsets.UTF_8)));
+        }
+        return formas;
+    }
+
+    /**
+     * Divide un programa en el texto de sus formas de nivel superior, respetando
+     * cadenas y comentarios.
+     *
+     * @param texto el programa
+     * @return el texto de cada forma
+     */
+    static List<String> dividirFormas(String texto) {
+        List<String> formas = new ArrayList<>();
+        int nivel = 0;
+        int inicio = -1;
+        boolean enCadena = false;
+        for (int i = 0; i < texto.length(); i++) {
+            char c = texto.charAt(i);
+            if (enCadena) {
+                if (c == '\\') {
+                    i++;
+                } else if (c == '"') {
+                    enCadena = false;
+                    if (nivel == 0) {
+                        formas.add(texto.substring(inicio, i + 1));
+                        inicio = -1;
+                    }
+                }
+                continue;
+            }
+            if (c == ';') {
+                while (i < texto.length() && texto.charAt(i) != '\n') {
+                    i++;
+                }
+                continue;
+            }
+            if (inicio < 0 && !Character.isWhitespace(c)) {
+                inicio = i;
+            }
+            if (c == '"') {
+                enCadena = true;
+            } else if (c == '(') {
+                nivel++;
+            } else if (c == ')') {
+                nivel--;
+            }
+            boolean finAtomo = nivel == 0 && c != '\'' && (i + 1 == texto.length()
+                    || Character.isWhitespace(texto.charAt(i + 1)) || texto.charAt(i + 1) == ';');
+            if (inicio >= 0 && nivel == 0 && (c == ')' || finAtomo)) {
+                formas.add(texto.substring(inicio, i + 1));
+                inicio = -1;
+            }
+        }
+        return formas;
+    }
+
+    /**
+     * Latencias y errores acumulados por un hilo.
+     */
+    private static final class Medidas {
+        private long[] latencias;
+        private int cantidad;
+        private long errores;
+
+        Medidas(int capacidad) {
+            this.latencias = new long[Math.max(capacidad, 16)];
+        }
+
+        void registrar(long nanos) {
+            if (cantidad == latencias.length) {
+                latencias = Arrays.copyOf(latencias, cantidad * 2);
+            }
+            latencias[cantidad++] = nanos;
+        }
+
+        void agregar(Medidas otras) {
+            for (int i = 0; i < otras.cantidad; i++) {
+                registrar(otras.latencias[i]);
+            }
+            errores += otras.errores;
+        }
+    }
+
+    /**
+     * Resultado de una ejecución, que puede guardarse como línea base.
+     */
+    private static final class Resultado {
+        private double formasPorSegundo;
+        private double p50Micros;
+        private double p99Micros;
+        private long crecimientoHeap;
+        private long errores;
+        private long formas;
+
+        void imprimir(PrintStream salida) {
+            salida.printf("Formas evaluadas:   %d (%d errores)%n", formas, errores);
+            salida.printf("Formas por segundo: %.1f%n", formasPorSegundo);
+            salida.printf("Latencia p50:       %.2f us%n", p50Micros);
+            salida.printf("Latencia p99:       %.2f us%n", p99Micros);
+            salida.printf("Crecimiento heap:   %d bytes%n", crecimientoHeap);
+        }
+
+        /**
+         * Compara este resultado con una línea base.
+         *
+         * @param base la línea base
+         * @param tolerancia la variación relativa admitida
+         * @return la descripción de cada regresión encontrada
+         */
+        List<String> comparar(Resultado base, double tolerancia) {
+            List<String> regresiones = new ArrayList<>();
+            if (formasPorSegundo < base.formasPorSegundo * (1 - tolerancia)) {
+                regresiones.add(String.format("formas por segundo %.1f < %.1f", formasPorSegundo, base.formasPorSegundo));
+            }
+            if (p50Micros > base.p50Micros * (1 + tolerancia)) {
+                regresiones.add(String.format("p50 %.2f us > %.2f us", p50Micros, base.p50Micros));
+            }
+            if (p99Micros > base.p99Micros * (1 + tolerancia)) {
+                regresiones.add(String.format("p99 %.2f us > %.2f us", p99Micros, base.p99Micros));
+            }
+            long limiteHeap = (long) (Math.max(base.crecimientoHeap, 0) * (1 + tolerancia)) + MARGEN_HEAP;
+            if (crecimientoHeap > limiteHeap) {
+                regresiones.add(String.format("crecimiento del heap %d > %d bytes", crecimientoHeap, limiteHeap));
+            }
+            if (errores > base.errores) {
+                regresiones.add(String.format("errores %d > %d", errores, base.errores));
+            }
+            return regresiones;
+        }
+
+        void guardar(Path archivo) throws IOException {
+            Properties propiedades = new Properties();
+            propiedades.setProperty("formasPorSegundo", Double.toString(formasPorSegundo));
+            propiedades.setProperty("p50Micros", Double.toString(p50Micros));
+            propiedades.setProperty("p99Micros", Double.toString(p99Micros));
+            propiedades.setProperty("crecimientoHeap", Long.toString(crecimientoHeap));
+            propiedades.setProperty("errores", Long.toString(errores));
+            propiedades.setProperty("formas", Long.toString(formas));
+            try (Writer escritor = Files.newBufferedWriter(archivo, StandardCharsets.UTF_8)) {
+                propiedades.store(escritor, "Línea base de PruebaCarga");
+            }
+        }
+
+        static Resultado cargar(Path archivo) throws IOException {
+            Properties propiedades = new Properties();
+            try (Reader lector = Files.newBufferedReader(archivo, StandardCharsets.UTF_8)) {
+                propiedades.load(lector);
+            }
+            Resultado resultado = new Resultado();
+            resultado.formasPorSegundo = Double.parseDouble(propiedades.getProperty("formasPorSegundo"));
+            resultado.p50Micros = Double.parseDouble(propiedades.getProperty("p50Micros"));
+            resultado.p99Micros = Double.parseDouble(propiedades.getProperty("p99Micros"));
+            resultado.crecimientoHeap = Long.parseLong(propiedades.getProperty("crecimientoHeap"));
+            resultado.errores = Long.parseLong(propiedades.getProperty("errores", "0"));
+            resultado.formas = Long.parseLong(propiedades.getProperty("formas", "0"));
+            return resultado;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package Excepciones;
+
+/**
+ * Clase de excepción personalizada para indicar que una evaluación superó su presupuesto
+ * (pasos, profundidad o tiempo) o fue cancelada en el intérprete LISP.
+ * Extiende ExcepcionLisp para mantener la jerarquía de excepciones del intérprete.
+ */
+public class ExcepcionLimite extends ExcepcionLisp {
+    /**
+     * Construye una excepción de límite con el mensaje de error especificado.
+     *
+     * @param mensaje el mensaje de error que detalla la causa de la excepción
+     */
+    public ExcepcionLimite(String mensaje) {
+        super(mensaje);
+    }
+
+    /**
+     * Construye una excepción de límite con el mensaje de error y la causa especificados.
+     *
+     * @param mensaje el mensaje de error que detalla la causa de la excepción
+     * @param causa   la causa subyacente de la excepción
+     */
+    public ExcepcionLimite(String mensaje, Throwable causa) {
+        super(mensaje, causa);
+    }
+}
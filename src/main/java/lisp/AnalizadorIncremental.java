@@ -0,0 +1,352 @@
+package lisp;
+
+import Excepciones.ExcepcionLisp;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Analizador sintáctico incremental que recibe la entrada por fragmentos.
+ * A diferencia de analizador, que lee de un Reader y se bloquea esperando más texto,
+ * este analizador no lee: se le entregan fragmentos (CharBuffer, o ByteBuffer en UTF-8)
+ * a medida que llegan, y conserva entre fragmentos todo el estado a medio analizar: el
+ * token en curso, una cadena sin cerrar, un comentario y las listas abiertas. Cada forma
+ * de nivel superior se entrega al receptor en cuanto se cierra.
+ *
+ * <p>Así, un servidor basado en un Selector puede analizar muchas conexiones desde pocos
+ * hilos, con un analizador por conexión, sin dedicar un hilo bloqueado a cada una. Acepta
+ * la misma sintaxis que analizador. La instancia no es segura para hilos.</p>
+ */
+public final class AnalizadorIncremental {
+    /**
+     * Recibe las formas completas a medida que se analizan.
+     */
+    public interface Receptor {
+        void recibir(ExpresionLisp forma) throws ExcepcionLisp;
+    }
+
+    /** Qué se está leyendo en el punto actual de la entrada */
+    private enum Estado { ESPACIO, TOKEN, CADENA, ESCAPE, COMENTARIO }
+
+    private final Receptor receptor;
+    private Estado estado = Estado.ESPACIO;
+    /** Caracteres del token o la cadena en curso */
+    private final StringBuilder texto = new StringBuilder();
+    /** Listas abiertas y citas pendientes, de la más externa a la más interna */
+    private final ArrayDeque<Marco> pila = new ArrayDeque<>();
+
+    /** Decodificador de los fragmentos en bytes y bytes de un carácter incompleto */
+    private CharsetDecoder decodificador;
+    private ByteBuffer bytesPendientes;
+    private CharBuffer decodificados;
+
+    /**
+     * Construye un analizador incremental.
+     *
+     * @param receptor recibe cada forma de nivel superior al cerrarse
+     */
+    public AnalizadorIncremental(Receptor receptor) {
+        this.receptor = receptor;
+    }
+
+    /**
+     * Analiza un fragmento de texto. Consume el fragmento entero salvo que el receptor
+     * lance una excepción; en ese caso la posición del búfer queda justo después de la
+     * forma entregada y el resto puede volver a pasarse.
+     *
+     * @param fragmento el texto recibido
+     * @throws ExcepcionLisp si hay un error de sintaxis (el estado se reinicia) o el receptor falla
+     */
+    public void alimentar(CharBuffer fragmento) throws ExcepcionLisp {
+        MetricasInterprete.caracteresAnalizados.add(fragmento.remaining());
+        while (fragmento.hasRemaining()) {
+            procesar(fragmento.get());
+        }
+    }
+
+    /**
+     * Analiza un fragmento de texto.
+     *
+     * @param fragmento el texto recibido
+     * @throws ExcepcionLisp si hay un error de sintaxis o el receptor falla
+     */
+    public void alimentar(CharSequence fragmento) throws ExcepcionLisp {
+        alimentar(CharBuffer.wrap(fragmento));
+    }
+
+    /**
+     * Analiza un fragmento de bytes en UTF-8. Un carácter partido entre dos fragmentos
+     * se completa con el siguiente; las secuencias inválidas se sustituyen por U+FFFD.
+     * El búfer se consume entero; si el receptor lanza una excepción, se descarta lo que
+     * quedaba del fragmento después de la forma entregada.
+     *
+     * @param fragmento los bytes recibidos
+     * @throws ExcepcionLisp si hay un error de sintaxis o el receptor falla
+     */
+    public void alimentar(ByteBuffer fragmento) throws ExcepcionLisp {
+        if (decodificador == null) {
+            decodificador = StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            bytesPendientes = ByteBuffer.allocate(16);
+            decodificados = CharBuffer.allocate(4096);
+        }
+
+        ByteBuffer origen = fragmento;
+        if (bytesPendientes.position() > 0) {
+            if (bytesPendientes.remaining() < fragmento.remaining()) {
+                ByteBuffer mayor = ByteBuffer.allocate(bytesPendientes.position() + fragmento.remaining());
+                bytesPendientes.flip();
+                mayor.put(bytesPendientes);
+                bytesPendientes = mayor;
+            }
+            bytesPendientes.put(fragmento);
+            bytesPendientes.flip();
+            origen = bytesPendientes;
+        }
+
+        try {
+            decodificar(origen, false);
+        } catch (ExcepcionLisp | RuntimeException e) {
+            origen.position(origen.limit());
+            bytesPendientes.clear();
+            throw e;
+        }
+
+        // Guardar los bytes de un carácter incompleto para el siguiente fragmento
+        if (origen == bytesPendientes) {
+            bytesPendientes.compact();
+        } else {
+            bytesPendientes.clear();
+            bytesPendientes.put(origen);
+        }
+    }
+
+    /**
+     * Indica el final de la entrada: termina el token en curso y comprueba que no quede
+     * ninguna lista ni cadena abierta. Después el analizador queda listo para otra entrada.
+     *
+     * @throws ExcepcionLisp si la entrada terminó a mitad de una forma
+     */
+    public void terminar() throws ExcepcionLisp {
+        if (decodificador != null) {
+            bytesPendientes.flip();
+            try {
+                decodificar(bytesPendientes, true);
+            } finally {
+                bytesPendientes.clear();
+                decodificador.reset();
+            }
+        }
+        if (estado == Estado.TOKEN) {
+            terminarToken();
+        }
+        if (estado == Estado.CADENA || estado == Estado.ESCAPE) {
+            throw errorSintaxis("Cadena sin cerrar");
+        }
+        if (!pila.isEmpty()) {
+            throw errorSintaxis("Fin de entrada inesperado, falta un paréntesis de cierre");
+        }
+        estado = Estado.ESPACIO;
+    }
+
+    /**
+     * Indica si hay una forma a medio analizar.
+     *
+     * @return true si quedan listas, cadenas, citas o tokens sin terminar
+     */
+    public boolean enCurso() {
+        return !pila.isEmpty() || estado == Estado.TOKEN || estado == Estado.CADENA || estado == Estado.ESCAPE;
+    }
+
+    /**
+     * Descarta la forma a medio analizar.
+     */
+    public void reiniciar() {
+        pila.clear();
+        texto.setLength(0);
+        estado = Estado.ESPACIO;
+    }
+
+    /**
+     * Descarta la forma a medio analizar y cuenta el error en las métricas.
+     *
+     * @param mensaje la descripción del error
+     * @return la excepción a lanzar
+     */
+    private ExcepcionLisp errorSintaxis(String mensaje) {
+        reiniciar();
+        MetricasInterprete.errores.increment();
+        return new ExcepcionLisp(mensaje);
+    }
+
+    private void decodificar(ByteBuffer origen, boolean fin) throws ExcepcionLisp {
+        CoderResult resultado;
+        do {
+            resultado = decodificador.decode(origen, decodificados, fin);
+            entregarDecodificados();
+        } while (resultado.isOverflow());
+        if (fin) {
+            do {
+                resultado = decodificador.flush(decodificados);
+                entregarDecodificados();
+            } while (resultado.isOverflow());
+        }
+    }
+
+    private void entregarDecodificados() throws ExcepcionLisp {
+        decodificados.flip();
+        try {
+            alimentar(decodificados);
+        } finally {
+            decodificados.clear();
+        }
+    }
+
+    /**
+     * Avanza la máquina de estados con un carácter.
+     */
+    private void procesar(char ch) throws ExcepcionLisp {
+        switch (estado) {
+            case CADENA -> {
+                if (ch == '\\') {
+                    estado = Estado.ESCAPE;
+                } else if (ch == '"') {
+                    estado = Estado.ESPACIO;
+                    String valor = texto.toString();
+                    texto.setLength(0);
+                    completar(new cadena(valor));
+                } else {
+                    texto.append(ch);
+                }
+                return;
+            }
+            case ESCAPE -> {
+                texto.append(analizador.caracterEscapado(ch));
+                estado = Estado.CADENA;
+                return;
+            }
+            case COMENTARIO -> {
+                if (ch == '\n' || ch == '\r') {
+                    estado = Estado.ESPACIO;
+                }
+                return;
+            }
+            case TOKEN -> {
+                if (!analizador.esDelimitador(ch)) {
+                    texto.append(ch);
+                    return;
+                }
+                terminarToken();
+            }
+            default -> {
+            }
+        }
+
+        // Estado ESPACIO: el carácter empieza algo nuevo
+        if (Character.isWhitespace(ch)) {
+            return;
+        }
+        switch (ch) {
+            case '(' -> pila.push(new Marco(false));
+            case ')' -> cerrarLista();
+            case '\'' -> pila.push(new Marco(true));
+            case '"' -> estado = Estado.CADENA;
+            case ';' -> estado = Estado.COMENTARIO;
+            case '.' -> punto();
+            default -> {
+                texto.append(ch);
+                estado = Estado.TOKEN;
+            }
+        }
+    }
+
+    private void terminarToken() throws ExcepcionLisp {
+        String token = texto.toString();
+        texto.setLength(0);
+        estado = Estado.ESPACIO;
+        completar(analizador.analizarAtomo(token));
+    }
+
+    /**
+     * Un punto aislado separa el final de un par punteado; fuera de una lista con
+     * elementos es el símbolo ".", como en analizador.
+     */
+    private void punto() throws ExcepcionLisp {
+        Marco marco = pila.peek();
+        if (marco != null && !marco.cita && !marco.elementos.isEmpty() && !marco.punteado) {
+            marco.punteado = true;
+            return;
+        }
+        completar(analizador.analizarAtomo("."));
+    }
+
+    private void cerrarLista() throws ExcepcionLisp {
+        Marco marco = pila.peek();
+        if (marco == null || marco.cita) {
+            throw errorSintaxis("Paréntesis de cierre inesperado");
+        }
+        if (marco.punteado && marco.cola == null) {
+            throw errorSintaxis("Falta la expresión después del punto");
+        }
+        pila.pop();
+        ExpresionLisp lista = marco.punteado ? marco.cola : simbolo.NULO;
+        List<ExpresionLisp> elementos = marco.elementos;
+        for (int i = elementos.size() - 1; i >= 0; i--) {
+            lista = new par(elementos.get(i), lista);
+        }
+        completar(lista);
+    }
+
+    /**
+     * Entrega una expresión terminada a la lista o cita que la contiene, o al receptor
+     * si es una forma de nivel superior.
+     */
+    private void completar(ExpresionLisp expr) throws ExcepcionLisp {
+        while (true) {
+            Marco marco = pila.peek();
+            if (marco == null) {
+                MetricasInterprete.formasAnalizadas.increment();
+                receptor.recibir(expr);
+                return;
+            }
+            if (marco.cita) {
+                pila.pop();
+                expr = new par(simbolo.CITAR, new par(expr, simbolo.NULO));
+                continue;
+            }
+            if (marco.punteado) {
+                if (marco.cola != null) {
+                    throw errorSintaxis("Se esperaba un paréntesis de cierre después del par punteado");
+                }
+                marco.cola = expr;
+            } else {
+                marco.elementos.add(expr);
+            }
+            return;
+        }
+    }
+
+    /**
+     * Una lista abierta o una cita (') que espera su expresión.
+     */
+    private static final class Marco {
+        final boolean cita;
+        final List<ExpresionLisp> elementos;
+        boolean punteado;
+        /** La expresión después del punto en un par punteado */
+        ExpresionLisp cola;
+
+        Marco(boolean cita) {
+            this.cita = cita;
+            this.elementos = cita ? List.of() : new ArrayList<>();
+        }
+    }
+}
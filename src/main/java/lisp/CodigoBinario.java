@@ -0,0 +1,111 @@
+package lisp;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Codificación binaria compacta compartida por los formatos de archivo del intérprete.
+ * Los enteros se escriben como varint (7 bits por byte, el bit alto indica que sigue
+ * otro byte); los enteros con signo usan además codificación zigzag para que los
+ * valores negativos pequeños ocupen pocos bytes. Los textos se escriben en UTF-8,
+ * precedidos de su longitud en bytes.
+ */
+final class CodigoBinario {
+    private CodigoBinario() {
+    }
+
+    /**
+     * Escribe un entero no negativo como varint.
+     *
+     * @param salida el destino
+     * @param valor el valor, tratado como sin signo
+     */
+    static void escribirNatural(DataOutput salida, long valor) throws IOException {
+        while ((valor & ~0x7FL) != 0) {
+            salida.writeByte((int) ((valor & 0x7F) | 0x80));
+            valor >>>= 7;
+        }
+        salida.writeByte((int) valor);
+    }
+
+    /**
+     * Lee un entero escrito con escribirNatural().
+     *
+     * @param entrada el origen
+     * @return el valor leído
+     * @throws IOException si el varint está mal formado
+     */
+    static long leerNatural(DataInput entrada) throws IOException {
+        long valor = 0;
+        for (int desplazamiento = 0; desplazamiento < 64; desplazamiento += 7) {
+            int b = entrada.readUnsignedByte();
+            valor |= (long) (b & 0x7F) << desplazamiento;
+            if ((b & 0x80) == 0) {
+                return valor;
+            }
+        }
+        throw new IOException("Varint demasiado largo");
+    }
+
+    /**
+     * Escribe un entero con signo en zigzag y varint.
+     *
+     * @param salida el destino
+     * @param valor el valor
+     */
+    static void escribirEntero(DataOutput salida, long valor) throws IOException {
+        escribirNatural(salida, (valor << 1) ^ (valor >> 63));
+    }
+
+    /**
+     * Lee un entero escrito con escribirEntero().
+     *
+     * @param entrada el origen
+     * @return el valor leído
+     */
+    static long leerEntero(DataInput entrada) throws IOException {
+        long codificado = leerNatural(entrada);
+        return (codificado >>> 1) ^ -(codificado & 1);
+    }
+
+    /**
+     * Lee un entero no negativo que debe caber en un int.
+     *
+     * @param entrada el origen
+     * @return el valor leído
+     * @throws IOException si el valor no cabe en un int
+     */
+    static int leerIndice(DataInput entrada) throws IOException {
+        long valor = leerNatural(entrada);
+        if (valor > Integer.MAX_VALUE) {
+            throw new IOException("Índice fuera de rango: " + valor);
+        }
+        return (int) valor;
+    }
+
+    /**
+     * Escribe un texto en UTF-8 precedido de su longitud.
+     *
+     * @param salida el destino
+     * @param texto el texto
+     */
+    static void escribirTexto(DataOutput salida, String texto) throws IOException {
+        byte[] bytes = texto.getBytes(StandardCharsets.UTF_8);
+        escribirNatural(salida, bytes.length);
+        salida.write(bytes);
+    }
+
+    /**
+     * Lee un texto escrito con escribirTexto().
+     *
+     * @param entrada el origen
+     * @return el texto leído
+     */
+    static String leerTexto(DataInput entrada) throws IOException {
+        byte[] bytes = new byte[leerIndice(entrada)];
+        entrada.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
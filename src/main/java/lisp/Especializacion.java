@@ -0,0 +1,113 @@
+package lisp;
+
+import Excepciones.ExcepcionLisp;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Especialización de una llamada a una función incorporada según los tipos observados.
+ * La primera vez que se evalúa una llamada binaria a una operación aritmética o de
+ * comparación, si ambos argumentos son números, la llamada queda especializada en la
+ * operación sobre dos enteros y las siguientes evaluaciones calculan el resultado
+ * directamente, sin lista de argumentos ni despacho por operador. Si más adelante llega
+ * un argumento de otro tipo, la llamada vuelve para siempre a la ruta genérica.
+ * La especialización se guarda en la ranura del par de la llamada.
+ */
+final class Especializacion {
+    /** Marca de las llamadas que no se especializan o que se desespecializaron */
+    static final Especializacion GENERICA = new Especializacion(null, null);
+
+    /** Operaciones especializables sobre dos enteros */
+    private enum Operacion {
+        SUMA, RESTA, MULTIPLICA, DIVIDE, MENOR, MAYOR, IGUAL
+    }
+
+    private static final Especializacion[] nodos = {
+            new Especializacion(simbolo.SUMA, Operacion.SUMA),
+            new Especializacion(simbolo.SUMAR, Operacion.SUMA),
+            new Especializacion(simbolo.RESTA, Operacion.RESTA),
+            new Especializacion(simbolo.RESTAR, Operacion.RESTA),
+            new Especializacion(simbolo.MULTIPLICA, Operacion.MULTIPLICA),
+            new Especializacion(simbolo.MULTIPLICAR, Operacion.MULTIPLICA),
+            new Especializacion(simbolo.DIVIDE, Operacion.DIVIDE),
+            new Especializacion(simbolo.DIVIDIR, Operacion.DIVIDE),
+            new Especializacion(simbolo.MENOR, Operacion.MENOR),
+            new Especializacion(simbolo.MENOR_QUE, Operacion.MENOR),
+            new Especializacion(simbolo.MAYOR, Operacion.MAYOR),
+            new Especializacion(simbolo.MAYOR_QUE, Operacion.MAYOR),
+            new Especializacion(simbolo.IGUAL, Operacion.IGUAL),
+    };
+
+    /** La función incorporada especializada */
+    final simbolo op;
+
+    /** La operación que se calcula */
+    private final Operacion operacion;
+
+    /** Contador de llamadas de la operación en las métricas del intérprete */
+    private final LongAdder llamadas;
+
+    private Especializacion(simbolo op, Operacion operacion) {
+        this.op = op;
+        this.operacion = operacion;
+        this.llamadas = op == null ? null : MetricasInterprete.contadorPrimitiva(op);
+    }
+
+    /**
+     * Obtiene la especialización para una llamada, antes de observar sus argumentos.
+     *
+     * @param op la función incorporada llamada
+     * @param argumentos las formas de los argumentos
+     * @return la especialización sobre dos enteros, o GENERICA si la llamada no es especializable
+     */
+    static Especializacion para(simbolo op, ExpresionLisp argumentos) {
+        if (!(argumentos instanceof par primero) || !(primero.resto() instanceof par segundo)
+                || segundo.resto() != simbolo.NULO) {
+            return GENERICA;
+        }
+        return deOperacion(op);
+    }
+
+    /**
+     * Obtiene la especialización sobre dos enteros de una función incorporada.
+     * MAPCAR, FILTER y REDUCE la usan para llamar directamente a la operación cuando
+     * reciben, por ejemplo, + como función.
+     *
+     * @param op la función incorporada
+     * @return su especialización, o GENERICA si no tiene
+     */
+    static Especializacion deOperacion(simbolo op) {
+        for (Especializacion nodo : nodos) {
+            if (nodo.op == op) {
+                return nodo;
+            }
+        }
+        return GENERICA;
+    }
+
+    /**
+     * Calcula la operación sobre dos enteros.
+     *
+     * @param a el primer argumento
+     * @param b el segundo argumento
+     * @return el resultado, con la misma semántica que la función incorporada
+     * @throws ExcepcionLisp si se divide por cero
+     */
+    ExpresionLisp calcular(long a, long b) throws ExcepcionLisp {
+        llamadas.increment();
+        return switch (operacion) {
+            case SUMA -> numero.obtenerValor(a + b);
+            case RESTA -> numero.obtenerValor(a - b);
+            case MULTIPLICA -> numero.obtenerValor(a * b);
+            case DIVIDE -> {
+                if (b == 0) {
+                    throw new ExcepcionLisp("División por cero");
+                }
+                yield numero.obtenerValor(a / b);
+            }
+            case MENOR -> a < b ? simbolo.VERDADERO : simbolo.NULO;
+            case MAYOR -> a > b ? simbolo.VERDADERO : simbolo.NULO;
+            case IGUAL -> a == b ? simbolo.VERDADERO : simbolo.NULO;
+        };
+    }
+}
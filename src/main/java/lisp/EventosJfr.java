@@ -0,0 +1,155 @@
+package lisp;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+import java.io.PrintStream;
+
+/**
+ * Eventos de Java Flight Recorder emitidos por el intérprete.
+ * Permiten ver, junto a los eventos de GC y JIT de la JVM, qué formas de nivel superior,
+ * llamadas a funciones, lecturas del analizador y construcciones grandes de listas y
+ * cadenas están ocupando el tiempo. Con la grabación detenida, crear un evento y
+ * consultarlo no cuesta casi nada; el prefijo impreso de la forma solo se calcula
+ * cuando el evento se va a registrar.
+ */
+final class EventosJfr {
+    /** Máximo de caracteres del prefijo impreso de una forma */
+    private static final int LONGITUD_PREFIJO = 120;
+
+    /** Cantidad de elementos o caracteres a partir de la cual se registra una construcción */
+    static final int UMBRAL_CONSTRUCCION = 4096;
+
+    private EventosJfr() {
+    }
+
+    /**
+     * Evaluación de una forma de nivel superior.
+     */
+    @Name("lisp.Forma")
+    @Label("Forma de nivel superior")
+    @Category({"Lisp", "Evaluación"})
+    @StackTrace(false)
+    static final class Forma extends Event {
+        @Label("Función")
+        String funcion;
+
+        @Label("Forma")
+        String forma;
+    }
+
+    /**
+     * Llamada a una función definida por el usuario que supera el umbral de duración.
+     */
+    @Name("lisp.Llamada")
+    @Label("Llamada a función")
+    @Category({"Lisp", "Evaluación"})
+    @Threshold("1 ms")
+    @StackTrace(false)
+    static final class Llamada extends Event {
+        @Label("Función")
+        String funcion;
+
+        @Label("Forma")
+        @Description("Prefijo impreso del cuerpo de la función")
+        String forma;
+    }
+
+    /**
+     * Lectura de una forma completa por el analizador.
+     */
+    @Name("lisp.Analisis")
+    @Label("Análisis de forma")
+    @Category({"Lisp", "Analizador"})
+    @StackTrace(false)
+    static final class Analisis extends Event {
+        @Label("Función")
+        String funcion;
+
+        @Label("Forma")
+        String forma;
+
+        @Label("Caracteres leídos")
+        long caracteres;
+    }
+
+    /**
+     * Construcción de una lista o cadena grande con LIST o CONCAT.
+     */
+    @Name("lisp.Construccion")
+    @Label("Construcción grande")
+    @Category({"Lisp", "Memoria"})
+    static final class Construccion extends Event {
+        @Label("Función")
+        String funcion;
+
+        @Label("Forma")
+        @Description("Prefijo impreso del resultado")
+        String forma;
+
+        @Label("Tamaño")
+        @Description("Elementos de la lista o caracteres de la cadena")
+        long tamano;
+    }
+
+    /**
+     * Obtiene el nombre de la función que encabeza una forma.
+     *
+     * @param forma la forma
+     * @return el nombre del símbolo en cabeza, o null si la forma no empieza por un símbolo
+     */
+    static String nombreFuncion(ExpresionLisp forma) {
+        if (forma instanceof par lista && lista.primero() instanceof simbolo nombre) {
+            return nombre.obtenerNombre();
+        }
+        return null;
+    }
+
+    /**
+     * Imprime el comienzo de una expresión, sin recorrer más de lo necesario.
+     *
+     * @param expr la expresión
+     * @return como mucho LONGITUD_PREFIJO caracteres de su representación impresa
+     */
+    static String prefijo(ExpresionLisp expr) {
+        StringBuilder sb = new StringBuilder();
+        PrintStream ps = new PrintStream(PrintStream.nullOutputStream()) {
+            @Override
+            public void print(String s) {
+                sb.append(s);
+                if (sb.length() > LONGITUD_PREFIJO) {
+                    throw Truncado.INSTANCIA;
+                }
+            }
+
+            @Override
+            public void print(long l) {
+                print(Long.toString(l));
+            }
+        };
+        try {
+            expr.imprimir(ps);
+            return sb.toString();
+        } catch (Truncado e) {
+            return sb.substring(0, LONGITUD_PREFIJO) + "...";
+        }
+    }
+
+    /**
+     * Señal para cortar la impresión cuando el prefijo ya está completo.
+     */
+    private static final class Truncado extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        static final Truncado INSTANCIA = new Truncado();
+
+        private Truncado() {
+            super(null, null, false, false);
+        }
+    }
+}
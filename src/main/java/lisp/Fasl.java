@@ -0,0 +1,301 @@
+package lisp;
+
+import Excepciones.ExcepcionLisp;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Formato binario para código fuente precompilado (FASL).
+ * Un archivo FASL contiene las formas de un archivo fuente ya analizadas: una cabecera
+ * con la tabla de los símbolos usados, seguida de cada forma codificada como un árbol.
+ * Los números van en varint con zigzag, las cadenas en UTF-8 con su longitud delante y
+ * los símbolos como índices en la tabla, de modo que leer el archivo construye los
+ * pares, números, cadenas y símbolos directamente, sin tokenizar texto.
+ *
+ * <p>COMPILE-FILE escribe el archivo .fasl junto al fuente, y LOAD lo usa en lugar del
+ * fuente cuando es al menos tan reciente como este.</p>
+ */
+public final class Fasl {
+    /** Bytes iniciales de todo archivo FASL */
+    private static final byte[] FIRMA = "LISPFASL".getBytes(StandardCharsets.US_ASCII);
+
+    /** Versión del formato */
+    private static final int VERSION = 1;
+
+    /** Extensión de los archivos compilados */
+    public static final String EXTENSION = ".fasl";
+
+    /** Etiquetas de los nodos */
+    private static final int SIMBOLO = 0;
+    private static final int NUMERO = 1;
+    private static final int CADENA = 2;
+    private static final int LISTA = 3;
+
+    private Fasl() {
+    }
+
+    /**
+     * Escribe una secuencia de formas en formato FASL.
+     *
+     * @param formas las formas a escribir
+     * @param destino el flujo de destino; no se cierra
+     * @throws IOException si falla la escritura
+     * @throws ExcepcionLisp si alguna forma contiene un valor que no proviene del analizador
+     */
+    public static void escribir(List<ExpresionLisp> formas, OutputStream destino) throws IOException, ExcepcionLisp {
+        Map<simbolo, Integer> simbolos = new IdentityHashMap<>();
+        List<simbolo> tabla = new ArrayList<>();
+        for (ExpresionLisp forma : formas) {
+            recolectarSimbolos(forma, simbolos, tabla);
+        }
+
+        DataOutputStream salida = new DataOutputStream(new BufferedOutputStream(destino));
+        salida.write(FIRMA);
+        CodigoBinario.escribirNatural(salida, VERSION);
+        CodigoBinario.escribirNatural(salida, tabla.size());
+        for (simbolo sym : tabla) {
+            CodigoBinario.escribirTexto(salida, sym.obtenerNombre());
+        }
+        CodigoBinario.escribirNatural(salida, formas.size());
+        for (ExpresionLisp forma : formas) {
+            escribirExpresion(salida, forma, simbolos);
+        }
+        salida.flush();
+    }
+
+    /**
+     * Lee todas las formas de un flujo en formato FASL.
+     *
+     * @param origen el flujo de origen; no se cierra
+     * @return las formas en el orden en que se escribieron
+     * @throws IOException si falla la lectura
+     * @throws ExcepcionLisp si el contenido no es un FASL válido
+     */
+    public static List<ExpresionLisp> leer(InputStream origen) throws IOException, ExcepcionLisp {
+        DataInputStream entrada = new DataInputStream(new ByteArrayInputStream(origen.readAllBytes()));
+        try {
+            byte[] firma = new byte[FIRMA.length];
+            entrada.readFully(firma);
+            if (!Arrays.equals(firma, FIRMA)) {
+                throw new ExcepcionLisp("El contenido no está en formato FASL");
+            }
+            long version = CodigoBinario.leerNatural(entrada);
+            if (version != VERSION) {
+                throw new ExcepcionLisp("Versión de FASL no soportada: " + version);
+            }
+            simbolo[] tabla = new simbolo[leerCantidad(entrada)];
+            for (int i = 0; i < tabla.length; i++) {
+                tabla[i] = simbolo.internamente(CodigoBinario.leerTexto(entrada));
+            }
+            int cantidad = leerCantidad(entrada);
+            List<ExpresionLisp> formas = new ArrayList<>(cantidad);
+            for (int i = 0; i < cantidad; i++) {
+                formas.add(leerExpresion(entrada, tabla));
+            }
+            return formas;
+        } catch (EOFException e) {
+            throw new ExcepcionLisp("El FASL está truncado", e);
+        }
+    }
+
+    /**
+     * Analiza un archivo fuente y escribe su versión compilada junto a él.
+     *
+     * @param fuente el archivo fuente
+     * @return la ruta del archivo .fasl escrito
+     * @throws ExcepcionLisp si el fuente tiene errores de sintaxis o falla la escritura
+     */
+    public static Path compilarArchivo(Path fuente) throws ExcepcionLisp {
+        Path destino = rutaCompilada(fuente);
+        List<ExpresionLisp> formas = analizarArchivo(fuente);
+        try (OutputStream salida = Files.newOutputStream(destino)) {
+            escribir(formas, salida);
+        } catch (IOException e) {
+            throw new ExcepcionLisp("No se pudo escribir " + destino + ": " + e.getMessage(), e);
+        }
+        return destino;
+    }
+
+    /**
+     * Lee las formas de un archivo, fuente o compilado. Si se pide un fuente y existe su
+     * .fasl con fecha de modificación igual o posterior, se lee el .fasl.
+     *
+     * @param ruta el archivo a cargar
+     * @return las formas del archivo
+     * @throws ExcepcionLisp si el archivo no existe, no es válido o falla la lectura
+     */
+    public static List<ExpresionLisp> cargarArchivo(Path ruta) throws ExcepcionLisp {
+        Path archivo = elegirArchivo(ruta);
+        if (!archivo.toString().endsWith(EXTENSION)) {
+            return analizarArchivo(archivo);
+        }
+        try (InputStream entrada = Files.newInputStream(archivo)) {
+            return leer(entrada);
+        } catch (IOException e) {
+            throw new ExcepcionLisp("No se pudo leer " + archivo + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Elige el archivo que LOAD debe leer para una ruta.
+     *
+     * @param ruta la ruta pedida
+     * @return el .fasl del fuente si está al día o el fuente no existe, o la propia ruta
+     */
+    static Path elegirArchivo(Path ruta) {
+        if (ruta.toString().endsWith(EXTENSION)) {
+            return ruta;
+        }
+        Path compilado = rutaCompilada(ruta);
+        if (!Files.isRegularFile(compilado)) {
+            return ruta;
+        }
+        if (!Files.exists(ruta)) {
+            return compilado;
+        }
+        try {
+            if (Files.getLastModifiedTime(compilado).compareTo(Files.getLastModifiedTime(ruta)) >= 0) {
+                return compilado;
+            }
+        } catch (IOException e) {
+            // Si no se pueden comparar las fechas se usa el fuente
+        }
+        return ruta;
+    }
+
+    /**
+     * Obtiene la ruta del archivo compilado de un fuente, cambiando su extensión por .fasl.
+     *
+     * @param fuente el archivo fuente
+     * @return la ruta del .fasl correspondiente
+     */
+    static Path rutaCompilada(Path fuente) {
+        String nombre = fuente.getFileName().toString();
+        int punto = nombre.lastIndexOf('.');
+        String base = punto > 0 ? nombre.substring(0, punto) : nombre;
+        return fuente.resolveSibling(base + EXTENSION);
+    }
+
+    private static List<ExpresionLisp> analizarArchivo(Path fuente) throws ExcepcionLisp {
+        try (Reader lector = Files.newBufferedReader(fuente, StandardCharsets.UTF_8)) {
+            analizador analizador = new analizador(lector);
+            List<ExpresionLisp> formas = new ArrayList<>();
+            ExpresionLisp forma;
+            while ((forma = analizador.analizar()) != null) {
+                formas.add(forma);
+            }
+            return formas;
+        } catch (IOException e) {
+            throw new ExcepcionLisp("No se pudo leer " + fuente + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Recorre una forma y asigna un índice a cada símbolo nuevo, en orden de aparición.
+     */
+    private static void recolectarSimbolos(ExpresionLisp expr, Map<simbolo, Integer> simbolos, List<simbolo> tabla) {
+        while (expr instanceof par celda) {
+            recolectarSimbolos(celda.primero(), simbolos, tabla);
+            expr = celda.resto();
+        }
+        if (expr instanceof simbolo sym && !simbolos.containsKey(sym)) {
+            simbolos.put(sym, tabla.size());
+            tabla.add(sym);
+        }
+    }
+
+    /**
+     * Escribe una expresión. Las listas se escriben como la cantidad de elementos, los
+     * elementos y el final de la lista (NIL en las listas propias).
+     */
+    private static void escribirExpresion(DataOutputStream salida, ExpresionLisp expr, Map<simbolo, Integer> simbolos)
+            throws IOException, ExcepcionLisp {
+        if (expr instanceof par) {
+            int cantidad = 0;
+            ExpresionLisp actual = expr;
+            while (actual instanceof par celda) {
+                cantidad++;
+                actual = celda.resto();
+            }
+            salida.writeByte(LISTA);
+            CodigoBinario.escribirNatural(salida, cantidad);
+            actual = expr;
+            while (actual instanceof par celda) {
+                escribirExpresion(salida, celda.primero(), simbolos);
+                actual = celda.resto();
+            }
+            escribirExpresion(salida, actual, simbolos);
+        } else if (expr instanceof simbolo sym) {
+            salida.writeByte(SIMBOLO);
+            CodigoBinario.escribirNatural(salida, simbolos.get(sym));
+        } else if (expr instanceof numero num) {
+            salida.writeByte(NUMERO);
+            CodigoBinario.escribirEntero(salida, num.obtenerValor());
+        } else if (expr instanceof cadena texto) {
+            salida.writeByte(CADENA);
+            CodigoBinario.escribirTexto(salida, texto.obtenerValor());
+        } else {
+            throw new ExcepcionLisp("No se puede compilar el valor: " + expr);
+        }
+    }
+
+    /**
+     * Lee una cantidad de elementos. Cada elemento ocupa al menos un byte, así que una
+     * cantidad mayor que los bytes restantes indica un archivo dañado y se rechaza antes
+     * de reservar memoria para ella.
+     */
+    private static int leerCantidad(DataInputStream entrada) throws IOException, ExcepcionLisp {
+        int cantidad = CodigoBinario.leerIndice(entrada);
+        if (cantidad > entrada.available()) {
+            throw new ExcepcionLisp("Cantidad inválida en el FASL: " + cantidad);
+        }
+        return cantidad;
+    }
+
+    private static ExpresionLisp leerExpresion(DataInputStream entrada, simbolo[] tabla) throws IOException, ExcepcionLisp {
+        int etiqueta = entrada.readUnsignedByte();
+        switch (etiqueta) {
+            case SIMBOLO -> {
+                int indice = CodigoBinario.leerIndice(entrada);
+                if (indice >= tabla.length) {
+                    throw new ExcepcionLisp("Símbolo fuera de la tabla del FASL: " + indice);
+                }
+                return tabla[indice];
+            }
+            case NUMERO -> {
+                return numero.obtenerValor(CodigoBinario.leerEntero(entrada));
+            }
+            case CADENA -> {
+                return new cadena(CodigoBinario.leerTexto(entrada));
+            }
+            case LISTA -> {
+                ExpresionLisp[] elementos = new ExpresionLisp[leerCantidad(entrada)];
+                for (int i = 0; i < elementos.length; i++) {
+                    elementos[i] = leerExpresion(entrada, tabla);
+                }
+                ExpresionLisp resultado = leerExpresion(entrada, tabla);
+                for (int i = elementos.length - 1; i >= 0; i--) {
+                    resultado = new par(elementos[i], resultado);
+                }
+                return resultado;
+            }
+            default -> throw new ExcepcionLisp("Nodo desconocido en el FASL: " + etiqueta);
+        }
+    }
+}
@@ -0,0 +1,395 @@
+package lisp;
+
+import Excepciones.ExcepcionLisp;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Imagen binaria del entorno global de un intérprete.
+ * La imagen guarda la tabla de símbolos, los enlaces del contexto global y todo lo que
+ * alcanzan: listas, constantes, tablas hash, funciones con sus contextos léxicos y macros.
+ * Cargarla reconstruye el entorno sin volver a analizar ni evaluar las definiciones.
+ *
+ * <p>El archivo es una secuencia de registros; cada registro crea un objeto y le asigna el
+ * siguiente identificador, y los registros posteriores se refieren a él por ese número.
+ * Los identificadores 0 y 1 están reservados para el contexto global del intérprete que
+ * carga la imagen y para el entorno de funciones incorporadas. Los objetos compartidos se
+ * escriben una sola vez, por lo que la imagen conserva la identidad (EQ) entre ellos,
+ * también entre vistas distintas de la misma celda de una lista de arreglo o arena, y
+ * los símbolos se vuelven a internar al cargar, de modo que son los mismos objetos que
+ * produce el analizador.</p>
+ */
+final class ImagenMemoria {
+    /** Bytes iniciales de todo archivo de imagen */
+    private static final byte[] FIRMA = "LISPIMG".getBytes(StandardCharsets.US_ASCII);
+
+    /** Versión del formato */
+    private static final int VERSION = 1;
+
+    /** Identificadores reservados */
+    private static final int ID_GLOBAL = 0;
+    private static final int ID_BASE = 1;
+
+    /** Etiquetas de los registros */
+    private static final int FIN = 0;
+    private static final int SIMBOLO = 1;
+    private static final int NUMERO = 2;
+    private static final int CADENA = 3;
+    private static final int PAR = 4;
+    private static final int CONTEXTO = 5;
+    private static final int FUNCION = 6;
+    private static final int MACRO = 7;
+    private static final int TABLA = 8;
+    private static final int ENLACES = 9;
+    private static final int ENTRADAS = 10;
+
+    /**
+     * Función definida por el usuario que puede guardarse en una imagen.
+     */
+    interface FuncionGuardable {
+        String obtenerNombre();
+
+        ExpresionLisp obtenerParametros();
+
+        ExpresionLisp obtenerCuerpo();
+
+        ExpresionLisp obtenerCuerpoOptimizado();
+
+        contexto obtenerCierre();
+    }
+
+    /**
+     * Crea las funciones al cargar una imagen; la implementa el intérprete dueño del
+     * contexto global.
+     */
+    interface FabricaFunciones {
+        ExpresionLisp crear(String nombre, ExpresionLisp parametros, ExpresionLisp cuerpo,
+                            ExpresionLisp cuerpoOptimizado, contexto cierre);
+    }
+
+    private ImagenMemoria() {
+    }
+
+    /**
+     * Guarda el contexto global en un archivo de imagen.
+     *
+     * @param archivo el archivo de destino
+     * @param global el contexto global a guardar
+     * @param base el entorno de funciones incorporadas, que no se guarda
+     * @param optimizado si el optimizador sigue activo en el intérprete
+     * @throws ExcepcionLisp si algún valor no puede guardarse o falla la escritura
+     */
+    static void guardar(Path archivo, contexto global, contexto base, boolean optimizado) throws ExcepcionLisp {
+        try (DataOutputStream salida = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(archivo)))) {
+            salida.write(FIRMA);
+            CodigoBinario.escribirNatural(salida, VERSION);
+            salida.writeBoolean(optimizado);
+            new Escritor(salida, global, base).escribir();
+        } catch (IOException e) {
+            throw new ExcepcionLisp("No se pudo guardar la imagen " + archivo + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Carga un archivo de imagen en un contexto global vacío.
+     *
+     * @param archivo el archivo de imagen
+     * @param global el contexto global donde se definen los enlaces guardados
+     * @param base el entorno de funciones incorporadas
+     * @param fabrica crea las funciones guardadas en la imagen
+     * @return si el optimizador estaba activo al guardar la imagen
+     * @throws ExcepcionLisp si el archivo no es una imagen válida o falla la lectura
+     */
+    static boolean cargar(Path archivo, contexto global, contexto base, FabricaFunciones fabrica) throws ExcepcionLisp {
+        try (DataInputStream entrada = new DataInputStream(new BufferedInputStream(Files.newInputStream(archivo)))) {
+            byte[] firma = new byte[FIRMA.length];
+            entrada.readFully(firma);
+            if (!Arrays.equals(firma, FIRMA)) {
+                throw new ExcepcionLisp("El archivo no es una imagen del intérprete: " + archivo);
+            }
+            long version = CodigoBinario.leerNatural(entrada);
+            if (version != VERSION) {
+                throw new ExcepcionLisp("Versión de imagen no soportada: " + version);
+            }
+            boolean optimizado = entrada.readBoolean();
+            new Lector(entrada, global, base, fabrica).leer();
+            return optimizado;
+        } catch (EOFException e) {
+            throw new ExcepcionLisp("La imagen " + archivo + " está truncada", e);
+        } catch (IOException e) {
+            throw new ExcepcionLisp("No se pudo cargar la imagen " + archivo + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Recorre el grafo de objetos alcanzable desde el contexto global y escribe sus registros.
+     */
+    private static final class Escritor {
+        private final DataOutputStream salida;
+        private final contexto global;
+        /** Identificador asignado a cada objeto ya escrito */
+        private final Map<Object, Integer> identificadores = new IdentityHashMap<>();
+        /**
+         * Identificador de cada celda de lista de arreglo o de arena ya escrita. Cada
+         * resto() de una vista crea un objeto nuevo, así que se identifican por la celda
+         * que designan, igual que en EQ
+         */
+        private final Map<par.Celda, Integer> celdas = new HashMap<>();
+        /** Contextos y tablas cuyo contenido falta escribir */
+        private final ArrayDeque<Object> pendientes = new ArrayDeque<>();
+        private int siguiente = 2;
+
+        Escritor(DataOutputStream salida, contexto global, contexto base) {
+            this.salida = salida;
+            this.global = global;
+            identificadores.put(global, ID_GLOBAL);
+            identificadores.put(base, ID_BASE);
+        }
+
+        /**
+         * Escribe la tabla de símbolos, luego el contenido del contexto global y de todo
+         * contexto o tabla que aparezca por el camino.
+         */
+        void escribir() throws IOException, ExcepcionLisp {
+            for (simbolo sym : simbolo.todos()) {
+                referencia(sym);
+            }
+            pendientes.add(global);
+            while (!pendientes.isEmpty()) {
+                Object objeto = pendientes.poll();
+                if (objeto instanceof contexto ctx) {
+                    escribirEnlaces(ctx);
+                } else {
+                    escribirEntradas((tablaHash) objeto);
+                }
+            }
+            CodigoBinario.escribirNatural(salida, FIN);
+        }
+
+        private void escribirEnlaces(contexto ctx) throws IOException, ExcepcionLisp {
+            Map<simbolo, ExpresionLisp> enlaces = ctx.enlacesLocales();
+            int[] ids = new int[enlaces.size() * 2];
+            int i = 0;
+            for (Map.Entry<simbolo, ExpresionLisp> enlace : enlaces.entrySet()) {
+                ids[i++] = referencia(enlace.getKey());
+                ids[i++] = referencia(enlace.getValue());
+            }
+            CodigoBinario.escribirNatural(salida, ENLACES);
+            CodigoBinario.escribirNatural(salida, identificadores.get(ctx));
+            escribirIdentificadores(ids);
+        }
+
+        private void escribirEntradas(tablaHash tabla) throws IOException, ExcepcionLisp {
+            ExpresionLisp[] entradas = tabla.entradas();
+            int[] ids = new int[entradas.length];
+            for (int i = 0; i < entradas.length; i++) {
+                ids[i] = referencia(entradas[i]);
+            }
+            CodigoBinario.escribirNatural(salida, ENTRADAS);
+            CodigoBinario.escribirNatural(salida, identificadores.get(tabla));
+            escribirIdentificadores(ids);
+        }
+
+        private void escribirIdentificadores(int[] ids) throws IOException {
+            CodigoBinario.escribirNatural(salida, ids.length / 2);
+            for (int id : ids) {
+                CodigoBinario.escribirNatural(salida, id);
+            }
+        }
+
+        /**
+         * Obtiene el identificador de un objeto, escribiendo antes su registro si aún no
+         * se escribió.
+         *
+         * @param objeto una expresión o un contexto
+         * @return el identificador del objeto en la imagen
+         */
+        private int referencia(Object objeto) throws IOException, ExcepcionLisp {
+            Integer id = buscar(objeto);
+            if (id != null) {
+                return id;
+            }
+            if (objeto instanceof par celda) {
+                return escribirLista(celda);
+            }
+            if (objeto instanceof simbolo sym) {
+                CodigoBinario.escribirNatural(salida, SIMBOLO);
+                CodigoBinario.escribirTexto(salida, sym.obtenerNombre());
+            } else if (objeto instanceof numero num) {
+                CodigoBinario.escribirNatural(salida, NUMERO);
+                CodigoBinario.escribirEntero(salida, num.obtenerValor());
+            } else if (objeto instanceof cadena texto) {
+                CodigoBinario.escribirNatural(salida, CADENA);
+                CodigoBinario.escribirTexto(salida, texto.obtenerValor());
+            } else if (objeto instanceof contexto ctx) {
+                int padre = ctx.obtenerPadre() == null ? 0 : referencia(ctx.obtenerPadre()) + 1;
+                CodigoBinario.escribirNatural(salida, CONTEXTO);
+                CodigoBinario.escribirNatural(salida, padre);
+                pendientes.add(ctx);
+            } else if (objeto instanceof FuncionGuardable funcion) {
+                int parametros = referencia(funcion.obtenerParametros());
+                int cuerpo = referencia(funcion.obtenerCuerpo());
+                int cuerpoOptimizado = referencia(funcion.obtenerCuerpoOptimizado());
+                int cierre = referencia(funcion.obtenerCierre());
+                CodigoBinario.escribirNatural(salida, FUNCION);
+                CodigoBinario.escribirTexto(salida, funcion.obtenerNombre());
+                CodigoBinario.escribirNatural(salida, parametros);
+                CodigoBinario.escribirNatural(salida, cuerpo);
+                CodigoBinario.escribirNatural(salida, cuerpoOptimizado);
+                CodigoBinario.escribirNatural(salida, cierre);
+            } else if (objeto instanceof macro m) {
+                int expansor = referencia(m.obtenerExpansor());
+                CodigoBinario.escribirNatural(salida, MACRO);
+                CodigoBinario.escribirTexto(salida, m.obtenerNombre());
+                CodigoBinario.escribirNatural(salida, expansor);
+            } else if (objeto instanceof tablaHash tabla) {
+                CodigoBinario.escribirNatural(salida, TABLA);
+                CodigoBinario.escribirNatural(salida, tabla.cantidad());
+                pendientes.add(tabla);
+            } else {
+                throw new ExcepcionLisp("No se puede guardar en una imagen el valor: " + objeto);
+            }
+            return registrar(objeto);
+        }
+
+        /**
+         * Escribe una lista recorriendo su espina de forma iterativa, desde la última
+         * celda aún no escrita hasta la primera, para que las listas largas no agoten la
+         * pila y las colas compartidas se escriban una sola vez.
+         */
+        private int escribirLista(par cabeza) throws IOException, ExcepcionLisp {
+            List<par> espina = new ArrayList<>();
+            ExpresionLisp actual = cabeza;
+            while (actual instanceof par celda && buscar(celda) == null) {
+                espina.add(celda);
+                actual = celda.resto();
+            }
+            int resto = referencia(actual);
+            for (int i = espina.size() - 1; i >= 0; i--) {
+                par celda = espina.get(i);
+                int primero = referencia(celda.primero());
+                CodigoBinario.escribirNatural(salida, PAR);
+                CodigoBinario.escribirNatural(salida, primero);
+                CodigoBinario.escribirNatural(salida, resto);
+                resto = registrar(celda);
+            }
+            return resto;
+        }
+
+        /**
+         * Obtiene el identificador de un objeto ya escrito.
+         *
+         * @return el identificador, o null si el objeto aún no se escribió
+         */
+        private Integer buscar(Object objeto) {
+            Integer id = identificadores.get(objeto);
+            if (id == null && objeto instanceof par vista && vista.claveCelda() != null) {
+                id = celdas.get(vista.claveCelda());
+            }
+            return id;
+        }
+
+        private int registrar(Object objeto) {
+            int id = siguiente++;
+            identificadores.put(objeto, id);
+            if (objeto instanceof par vista && vista.claveCelda() != null) {
+                celdas.put(vista.claveCelda(), id);
+            }
+            return id;
+        }
+    }
+
+    /**
+     * Reconstruye los objetos de una imagen en el orden en que se escribieron.
+     */
+    private static final class Lector {
+        private final DataInputStream entrada;
+        private final FabricaFunciones fabrica;
+        private final List<Object> objetos = new ArrayList<>();
+
+        Lector(DataInputStream entrada, contexto global, contexto base, FabricaFunciones fabrica) {
+            this.entrada = entrada;
+            this.fabrica = fabrica;
+            objetos.add(global);
+            objetos.add(base);
+        }
+
+        void leer() throws IOException, ExcepcionLisp {
+            while (true) {
+                int etiqueta = CodigoBinario.leerIndice(entrada);
+                switch (etiqueta) {
+                    case FIN -> {
+                        return;
+                    }
+                    case SIMBOLO -> objetos.add(simbolo.internamente(CodigoBinario.leerTexto(entrada)));
+                    case NUMERO -> objetos.add(numero.obtenerValor(CodigoBinario.leerEntero(entrada)));
+                    case CADENA -> objetos.add(new cadena(CodigoBinario.leerTexto(entrada)));
+                    case PAR -> {
+                        ExpresionLisp primero = expresion();
+                        objetos.add(new par(primero, expresion()));
+                    }
+                    case CONTEXTO -> {
+                        int padre = CodigoBinario.leerIndice(entrada);
+                        objetos.add(new contexto(padre == 0 ? null : objeto(padre - 1, contexto.class)));
+                    }
+                    case FUNCION -> {
+                        String nombre = CodigoBinario.leerTexto(entrada);
+                        ExpresionLisp parametros = expresion();
+                        ExpresionLisp cuerpo = expresion();
+                        ExpresionLisp cuerpoOptimizado = expresion();
+                        contexto cierre = objeto(CodigoBinario.leerIndice(entrada), contexto.class);
+                        objetos.add(fabrica.crear(nombre, parametros, cuerpo, cuerpoOptimizado, cierre));
+                    }
+                    case MACRO -> {
+                        String nombre = CodigoBinario.leerTexto(entrada);
+                        objetos.add(new macro(nombre, expresion()));
+                    }
+                    case TABLA -> objetos.add(new tablaHash(CodigoBinario.leerIndice(entrada)));
+                    case ENLACES -> {
+                        contexto ctx = objeto(CodigoBinario.leerIndice(entrada), contexto.class);
+                        int cantidad = CodigoBinario.leerIndice(entrada);
+                        for (int i = 0; i < cantidad; i++) {
+                            simbolo sym = objeto(CodigoBinario.leerIndice(entrada), simbolo.class);
+                            ctx.establecer(sym, expresion());
+                        }
+                    }
+                    case ENTRADAS -> {
+                        tablaHash tabla = objeto(CodigoBinario.leerIndice(entrada), tablaHash.class);
+                        int cantidad = CodigoBinario.leerIndice(entrada);
+                        for (int i = 0; i < cantidad; i++) {
+                            ExpresionLisp clave = expresion();
+                            tabla.poner(clave, expresion());
+                        }
+                    }
+                    default -> throw new ExcepcionLisp("Registro desconocido en la imagen: " + etiqueta);
+                }
+            }
+        }
+
+        private ExpresionLisp expresion() throws IOException, ExcepcionLisp {
+            return objeto(CodigoBinario.leerIndice(entrada), ExpresionLisp.class);
+        }
+
+        private <T> T objeto(int id, Class<T> tipo) throws ExcepcionLisp {
+            if (id >= objetos.size() || !tipo.isInstance(objetos.get(id))) {
+                throw new ExcepcionLisp("Referencia inválida en la imagen: " + id);
+            }
+            return tipo.cast(objetos.get(id));
+        }
+    }
+}
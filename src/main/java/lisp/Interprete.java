@@ -2,10 +2,12 @@ package lisp;
 
 import Excepciones.ExcepcionAtomo;
 import Excepciones.ExcepcionContexto;
+import Excepciones.ExcepcionLimite;
 import Excepciones.ExcepcionLisp;
 
 import java.io.PrintStream;
 import java.io.StringReader;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -13,14 +15,28 @@ import java.util.List;
  * Intérprete de LISP simple.
  * Esta clase implementa un intérprete básico para un subconjunto del lenguaje LISP,
  * proporcionando funcionalidad para evaluar expresiones y mantener un entorno global.
+ * Una vez cargadas las definiciones, publicar() permite evaluar desde varios hilos a la vez.
  */
-public class Interprete {
+public final class Interprete {
     /** El analizador sintáctico para procesar expresiones LISP */
     private final analizador analizador;
     /** La salida donde se mostrarán los resultados */
     private final PrintStream salida;
     /** El contexto global que mantiene las variables y funciones definidas */
     private final contexto contextoGlobal;
+    /** Indica si el contexto global ya se publicó para su uso concurrente */
+    private volatile boolean publicado;
+    /** Capa de cada hilo sobre el contexto global publicado, donde se escriben sus enlaces */
+    private final ThreadLocal<contexto> capas = new ThreadLocal<>();
+
+    /**
+     * Entorno de funciones incorporadas y constantes, construido una sola vez y
+     * compartido (sellado) por todos los intérpretes y sesiones del proceso.
+     */
+    private static final contexto contextoBase = crearContextoGlobal();
+
+    /** Pasada de plegado de constantes aplicada a las formas antes de evaluarlas */
+    private final Optimizador optimizador = new Optimizador(forma -> evaluar(forma, contextoBase));
 
     /**
      * Constructor del intérprete que usa la entrada y salida estándar.
@@ -42,7 +58,9 @@ public class Interprete {
     public Interprete(java.io.InputStream entrada, PrintStream salida) throws ExcepcionAtomo, ExcepcionLisp {
         this.analizador = new analizador(entrada);
         this.salida = salida;
-        this.contextoGlobal = crearContextoGlobal();
+        this.contextoGlobal = new contexto(contextoBase);
+        contextoGlobal.capa = contextoGlobal;
+        MetricasInterprete.registrar();
     }
 
     /**
@@ -72,7 +90,12 @@ public class Interprete {
             throw new ExcepcionLisp("No se puede evaluar: " + expr);
         }
 
-        // Evaluación de listas
+        // Evaluación de listas: cada una consume un paso del presupuesto, si lo hay
+        Presupuesto presupuesto = ctx.presupuesto;
+        if (presupuesto != null) {
+            presupuesto.paso();
+        }
+
         if (expr.primero() instanceof simbolo op) {
             // Formas especiales
             if (op == simbolo.CITAR) {
@@ -93,7 +116,11 @@ public class Interprete {
                 }
                 simbolo var = (simbolo) args.primero();
                 ExpresionLisp valor = evaluar(args.resto().primero(), ctx);
-                ctx.establecer(var, valor);
+                optimizador.reasignado(var);
+                if (valor instanceof macro) {
+                    optimizador.ligadaMacro(var, ctx);
+                }
+                ctx.asignar(var, valor);
                 return valor;
             } else if (op == simbolo.DEFUN) {
                 // (DEFUN (nombre param1 param2...) cuerpo)
@@ -112,11 +139,36 @@ public class Interprete {
                 simbolo nombreFuncion = (simbolo) cabecera.primero();
                 ExpresionLisp parametros = cabecera.resto();
 
-                // Crear la función
-                Funcion funcion = new Funcion(parametros, cuerpo, ctx);
+                // Crear la función, con su cuerpo optimizado
+                optimizador.reasignado(nombreFuncion);
+                Funcion funcion = new Funcion(nombreFuncion.obtenerNombre(), parametros, cuerpo,
+                        optimizador.optimizarCuerpo(cuerpo, parametros, ctx), ctx);
+                ctx.capturar();
                 ctx.establecer(nombreFuncion, funcion);
 
                 return nombreFuncion;
+            } else if (op == simbolo.DEFMACRO) {
+                // (DEFMACRO (nombre param1 param2...) cuerpo)
+                // Los parámetros reciben las formas sin evaluar; el cuerpo devuelve la expansión
+                ExpresionLisp args = expr.resto();
+                if (args == simbolo.NULO || args.resto() == simbolo.NULO || args.resto().resto() != simbolo.NULO) {
+                    throw new ExcepcionLisp("DEFMACRO requiere exactamente dos argumentos");
+                }
+                ExpresionLisp cabecera = args.primero();
+                if (cabecera == simbolo.NULO || cabecera.esAtomo() || !(cabecera.primero() instanceof simbolo)) {
+                    throw new ExcepcionLisp("Cabecera de macro inválida");
+                }
+                simbolo nombreMacro = (simbolo) cabecera.primero();
+                ExpresionLisp parametros = cabecera.resto();
+                ExpresionLisp cuerpo = args.resto().primero();
+
+                optimizador.reasignado(nombreMacro);
+                optimizador.ligadaMacro(nombreMacro, ctx);
+                Funcion expansor = new Funcion(nombreMacro.obtenerNombre(), parametros, cuerpo,
+                        optimizador.optimizarCuerpo(cuerpo, parametros, ctx), ctx);
+                ctx.capturar();
+                ctx.establecer(nombreMacro, new macro(nombreMacro.obtenerNombre(), expansor));
+                return nombreMacro;
             } else if (op == simbolo.CONDICIONAL) {
                 // (CONDICIONAL (condición1 resultado1) ... (condiciónN resultadoN))
                 ExpresionLisp condiciones = expr.resto();
@@ -145,14 +197,164 @@ public class Interprete {
 
                 // No se cumplió ninguna condición
                 return simbolo.NULO;
+            } else if (op == simbolo.ENLAZAR || op == simbolo.ENLAZAR_SECUENCIAL) {
+                // (LET ((var valor) ...) cuerpo...) o (LET* ((var valor) ...) cuerpo...)
+                ExpresionLisp args = expr.resto();
+                if (args == simbolo.NULO) {
+                    throw new ExcepcionLisp(op.obtenerNombre() + " requiere una lista de enlaces");
+                }
+                ExpresionLisp enlaces = args.primero();
+                boolean secuencial = op == simbolo.ENLAZAR_SECUENCIAL;
+
+                // El marco se dimensiona con el número de enlaces de la forma
+                contexto marco = new contexto(ctx, contarElementos(enlaces));
+                while (enlaces != simbolo.NULO) {
+                    if (enlaces.esAtomo()) {
+                        throw new ExcepcionLisp("Lista de enlaces inválida en " + op.obtenerNombre());
+                    }
+                    ExpresionLisp enlace = enlaces.primero();
+                    if (enlace instanceof simbolo var) {
+                        marco.establecer(var, simbolo.NULO);
+                    } else if (!enlace.esAtomo() && enlace.primero() instanceof simbolo var) {
+                        ExpresionLisp inicial = enlace.resto();
+                        ExpresionLisp valor = inicial == simbolo.NULO ? simbolo.NULO
+                                : evaluar(inicial.primero(), secuencial ? marco : ctx);
+                        marco.establecer(var, valor);
+                    } else {
+                        throw new ExcepcionLisp("Enlace inválido en " + op.obtenerNombre() + ": " + enlace);
+                    }
+                    enlaces = enlaces.resto();
+                }
+                return evaluarCuerpo(args.resto(), marco);
+            } else if (op == simbolo.FUTURO) {
+                // (FUTURE expr) => evalúa expr en un hilo virtual sobre una copia de los enlaces
+                // locales y una capa propia: sus SET a variables globales no salen del futuro.
+                // El futuro comparte el presupuesto de quien lo crea
+                ExpresionLisp args = expr.resto();
+                if (args == simbolo.NULO || args.resto() != simbolo.NULO) {
+                    throw new ExcepcionLisp("FUTURE requiere exactamente un argumento");
+                }
+                ExpresionLisp forma = args.primero();
+                contexto capaFuturo = ctx.abrirCapa(ctx.compartirNivelSuperior());
+                contexto copia = ctx.instantanea(capaFuturo);
+                return futuro.iniciar(() -> {
+                    try {
+                        return evaluar(forma, copia);
+                    } finally {
+                        capaFuturo.cerrarCapa();
+                    }
+                });
+            } else if (op == simbolo.PERFILAR) {
+                // (PROFILE expr) => evalúa expr registrando sus llamadas e imprime el informe
+                ExpresionLisp args = expr.resto();
+                if (args == simbolo.NULO || args.resto() != simbolo.NULO) {
+                    throw new ExcepcionLisp("PROFILE requiere exactamente un argumento");
+                }
+                Perfilador perfilador = new Perfilador();
+                Perfilador anterior = ctx.perfilador;
+                ctx.perfilador = perfilador;
+                try {
+                    return evaluar(args.primero(), ctx);
+                } finally {
+                    ctx.perfilador = anterior;
+                    perfilador.imprimirInforme(salida);
+                }
+            } else if (op == simbolo.MIENTRAS) {
+                // (WHILE condición cuerpo...)
+                ExpresionLisp args = expr.resto();
+                if (args == simbolo.NULO) {
+                    throw new ExcepcionLisp("WHILE requiere una condición");
+                }
+                ExpresionLisp condicion = args.primero();
+                ExpresionLisp cuerpo = args.resto();
+                while (evaluar(condicion, ctx) != simbolo.NULO) {
+                    evaluarCuerpo(cuerpo, ctx);
+                    if (presupuesto != null) {
+                        presupuesto.paso();
+                    }
+                }
+                return simbolo.NULO;
+            } else if (op == simbolo.REPETIR) {
+                // (DOTIMES (var n [resultado]) cuerpo...)
+                ExpresionLisp especificacion = especificacionIteracion(expr, "DOTIMES");
+                simbolo var = (simbolo) especificacion.primero();
+                ExpresionLisp limite = evaluar(especificacion.resto().primero(), ctx);
+                if (!limite.esNumero()) {
+                    throw new ExcepcionLisp("DOTIMES requiere un límite numérico");
+                }
+                long n = ((numero) limite).obtenerValor();
+                ExpresionLisp cuerpo = expr.resto().resto();
+
+                // Un único marco para todas las iteraciones; el contador vive como long
+                contexto marco = ctx.marcoIteracion();
+                for (long i = 0; i < n; i++) {
+                    marco.establecer(var, numero.obtenerValor(i));
+                    evaluarCuerpo(cuerpo, marco);
+                    if (presupuesto != null) {
+                        presupuesto.paso();
+                    }
+                }
+                marco.establecer(var, numero.obtenerValor(Math.max(n, 0)));
+                return resultadoIteracion(especificacion, marco);
+            } else if (op == simbolo.PARA_CADA) {
+                // (DOLIST (var lista [resultado]) cuerpo...)
+                ExpresionLisp especificacion = especificacionIteracion(expr, "DOLIST");
+                simbolo var = (simbolo) especificacion.primero();
+                ExpresionLisp lista = evaluar(especificacion.resto().primero(), ctx);
+                ExpresionLisp cuerpo = expr.resto().resto();
+
+                contexto marco = ctx.marcoIteracion();
+                while (lista != simbolo.NULO) {
+                    if (lista.esAtomo()) {
+                        throw new ExcepcionLisp("DOLIST requiere una lista propia");
+                    }
+                    marco.establecer(var, lista.primero());
+                    evaluarCuerpo(cuerpo, marco);
+                    lista = lista.resto();
+                    if (presupuesto != null) {
+                        presupuesto.paso();
+                    }
+                }
+                marco.establecer(var, simbolo.NULO);
+                return resultadoIteracion(especificacion, marco);
             }
         }
 
         // Aplicación de función
-        List<ExpresionLisp> args = new ArrayList<>();
         ExpresionLisp funcion = evaluar(expr.primero(), ctx);
         ExpresionLisp listaArgs = expr.resto();
 
+        if (funcion instanceof macro m) {
+            // La llamada se sustituye por su expansión, calculada una sola vez por llamada
+            return evaluar(expandir(m, (par) expr, ctx), ctx);
+        }
+
+        if (funcion instanceof simbolo op && expr instanceof par llamada && llamada.ranura != Especializacion.GENERICA) {
+            // Llamada binaria a una operación aritmética: se especializa según los tipos observados
+            Especializacion nodo = llamada.ranura instanceof Especializacion e && e.op == op
+                    ? e : Especializacion.para(op, listaArgs);
+            if (nodo != Especializacion.GENERICA) {
+                ExpresionLisp a = evaluar(listaArgs.primero(), ctx);
+                ExpresionLisp b = evaluar(listaArgs.resto().primero(), ctx);
+                if (a instanceof numero x && b instanceof numero y) {
+                    if (llamada.ranura != nodo) {
+                        llamada.ranura = nodo;
+                    }
+                    return nodo.calcular(x.obtenerValor(), y.obtenerValor());
+                }
+                llamada.ranura = Especializacion.GENERICA;
+                return aplicar(op, List.of(a, b), ctx);
+            }
+            llamada.ranura = Especializacion.GENERICA;
+        }
+
+        if (funcion instanceof Funcion func && func.aridad >= 0) {
+            // Los argumentos se evalúan directamente sobre el marco de la llamada
+            return func.llamar(listaArgs, ctx, this);
+        }
+
+        List<ExpresionLisp> args = new ArrayList<>();
+
         // Evaluar todos los argumentos
         while (listaArgs != simbolo.NULO) {
             args.add(evaluar(listaArgs.primero(), ctx));
@@ -160,7 +362,159 @@ public class Interprete {
         }
 
         // Aplicar la función a los argumentos
-        return aplicar(funcion, args);
+        return aplicar(funcion, args, ctx);
+    }
+
+    /**
+     * Obtiene la expansión de una llamada a macro. La primera vez se calcula aplicando
+     * el expansor a las formas de los argumentos y se guarda en la propia llamada; las
+     * siguientes se reutiliza mientras el símbolo siga enlazado a la misma macro.
+     *
+     * @param m la macro llamada
+     * @param llamada la forma de la llamada
+     * @param ctx el contexto de la llamada
+     * @return la forma que sustituye a la llamada
+     */
+    private ExpresionLisp expandir(macro m, par llamada, contexto ctx) throws ExcepcionLisp, ExcepcionAtomo, ExcepcionContexto {
+        ExpresionLisp expansion = m.expansionGuardada(llamada);
+        if (expansion != null) {
+            return expansion;
+        }
+        List<ExpresionLisp> formas = new ArrayList<>();
+        for (ExpresionLisp resto = llamada.resto(); resto != simbolo.NULO; resto = resto.resto()) {
+            formas.add(resto.primero());
+        }
+        expansion = aplicar(m.obtenerExpansor(), formas, ctx);
+        m.guardarExpansion(llamada, expansion);
+        return expansion;
+    }
+
+    /**
+     * Evalúa una secuencia de formas y devuelve el valor de la última.
+     *
+     * @param formas la lista de formas a evaluar
+     * @param ctx el contexto de evaluación
+     * @return el valor de la última forma, o NIL si la lista está vacía
+     */
+    private ExpresionLisp evaluarCuerpo(ExpresionLisp formas, contexto ctx) throws ExcepcionLisp, ExcepcionAtomo, ExcepcionContexto {
+        ExpresionLisp resultado = simbolo.NULO;
+        while (formas != simbolo.NULO) {
+            resultado = evaluar(formas.primero(), ctx);
+            formas = formas.resto();
+        }
+        return resultado;
+    }
+
+    /**
+     * Calcula el número de parámetros de una lista de parámetros formales.
+     *
+     * @param parametros la lista de parámetros
+     * @return el número de parámetros, o -1 si no es una lista propia de símbolos
+     */
+    private static int calcularAridad(ExpresionLisp parametros) {
+        int aridad = 0;
+        try {
+            while (parametros != simbolo.NULO) {
+                if (parametros.esAtomo() || !parametros.primero().esSimbolo()) {
+                    return -1;
+                }
+                aridad++;
+                parametros = parametros.resto();
+            }
+        } catch (ExcepcionAtomo e) {
+            return -1;
+        }
+        return aridad;
+    }
+
+    /**
+     * Registra en JFR la construcción de una lista o cadena si alcanza el umbral de tamaño.
+     *
+     * @param evento el evento iniciado antes de la construcción
+     * @param op la función que construyó el resultado
+     * @param resultado la lista o cadena construida
+     * @param tamano los elementos de la lista o caracteres de la cadena
+     */
+    private static void registrarConstruccion(EventosJfr.Construccion evento, simbolo op, ExpresionLisp resultado, long tamano) {
+        evento.end();
+        if (tamano >= EventosJfr.UMBRAL_CONSTRUCCION && evento.shouldCommit()) {
+            evento.funcion = op.obtenerNombre();
+            evento.forma = EventosJfr.prefijo(resultado);
+            evento.tamano = tamano;
+            evento.commit();
+        }
+    }
+
+    /**
+     * Determina si una forma puede capturar el contexto en el que se evalúa,
+     * es decir, si contiene alguna forma que guarde una referencia al contexto
+     * más allá de su propia evaluación (como DEFUN, que crea un cierre léxico).
+     *
+     * @param forma la forma a examinar
+     * @return true si la forma contiene alguna forma que captura el contexto
+     */
+    private static boolean capturaContexto(ExpresionLisp forma) {
+        while (!forma.esAtomo()) {
+            try {
+                if (capturaContexto(forma.primero())) {
+                    return true;
+                }
+                forma = forma.resto();
+            } catch (ExcepcionAtomo e) {
+                return true;
+            }
+        }
+        return forma == simbolo.DEFUN || forma == simbolo.DEFMACRO;
+    }
+
+    /**
+     * Cuenta los elementos de una lista sin evaluarlos.
+     *
+     * @param lista la lista a recorrer
+     * @return el número de elementos hasta el primer átomo
+     */
+    private static int contarElementos(ExpresionLisp lista) throws ExcepcionAtomo {
+        int cantidad = 0;
+        while (!lista.esAtomo()) {
+            cantidad++;
+            lista = lista.resto();
+        }
+        return cantidad;
+    }
+
+    /**
+     * Valida y obtiene la especificación (var valor [resultado]) de DOTIMES o DOLIST.
+     *
+     * @param expr la forma de iteración completa
+     * @param nombre el nombre de la forma, para los mensajes de error
+     * @return la especificación de la iteración
+     */
+    private ExpresionLisp especificacionIteracion(ExpresionLisp expr, String nombre) throws ExcepcionLisp, ExcepcionAtomo {
+        ExpresionLisp args = expr.resto();
+        if (args == simbolo.NULO || args.primero().esAtomo()) {
+            throw new ExcepcionLisp(nombre + " requiere una especificación (var valor [resultado])");
+        }
+        ExpresionLisp especificacion = args.primero();
+        if (!(especificacion.primero() instanceof simbolo) || especificacion.resto() == simbolo.NULO) {
+            throw new ExcepcionLisp(nombre + " requiere una especificación (var valor [resultado])");
+        }
+        ExpresionLisp extra = especificacion.resto().resto();
+        if (extra != simbolo.NULO && extra.resto() != simbolo.NULO) {
+            throw new ExcepcionLisp(nombre + " acepta a lo sumo una forma de resultado");
+        }
+        return especificacion;
+    }
+
+    /**
+     * Evalúa la forma de resultado opcional de DOTIMES o DOLIST.
+     *
+     * @param especificacion la especificación (var valor [resultado])
+     * @param marco el marco de la iteración
+     * @return el valor de la forma de resultado, o NIL si no hay
+     */
+    private ExpresionLisp resultadoIteracion(ExpresionLisp especificacion, contexto marco) throws ExcepcionLisp, ExcepcionAtomo, ExcepcionContexto {
+        ExpresionLisp extra = especificacion.resto().resto();
+        return extra == simbolo.NULO ? simbolo.NULO : evaluar(extra.primero(), marco);
     }
 
     private void verificarCantidadArgumentos(List<ExpresionLisp> args, int esperados) throws ExcepcionLisp {
@@ -169,38 +523,113 @@ public class Interprete {
         }
     }
 
-    private boolean esIgual(ExpresionLisp a, ExpresionLisp b) throws ExcepcionLisp, ExcepcionAtomo {
-        if (a == b) {
-            return true; // Misma referencia
+    private tablaHash comoTablaHash(ExpresionLisp arg, String operacion) throws ExcepcionLisp {
+        if (!(arg instanceof tablaHash tabla)) {
+            throw new ExcepcionLisp(operacion + " requiere una tabla hash");
         }
+        return tabla;
+    }
 
-        if (a.esNumero() && b.esNumero()) {
-            return ((numero) a).obtenerValor() == ((numero) b).obtenerValor();
+    private arena comoArena(ExpresionLisp arg, String operacion) throws ExcepcionLisp {
+        if (!(arg instanceof arena a)) {
+            throw new ExcepcionLisp(operacion + " requiere una arena");
         }
+        return a;
+    }
 
-        if (a.esCadena() && b.esCadena()) {
-            return ((cadena) a).obtenerValor().equals(((cadena) b).obtenerValor());
+    private long comoEntero(ExpresionLisp arg, String operacion) throws ExcepcionLisp {
+        if (!arg.esNumero()) {
+            throw new ExcepcionLisp(operacion + " requiere argumentos numéricos");
         }
+        return ((numero) arg).obtenerValor();
+    }
 
-        if (a.esSimbolo() && b.esSimbolo()) {
-            return a == b; // Los símbolos son internados
+    private static Path comoRuta(ExpresionLisp arg, String operacion) throws ExcepcionLisp {
+        if (!arg.esCadena()) {
+            throw new ExcepcionLisp(operacion + " requiere la ruta del archivo como cadena");
         }
+        return Path.of(((cadena) arg).obtenerValor());
+    }
+
+    private boolean esIgual(ExpresionLisp a, ExpresionLisp b) throws ExcepcionLisp, ExcepcionAtomo {
+        // Las listas se recorren de forma iterativa por el resto, para admitir listas largas
+        while (true) {
+            if (par.mismaCelda(a, b)) {
+                return true; // Misma referencia
+            }
+
+            if (a.esNumero() && b.esNumero()) {
+                return ((numero) a).obtenerValor() == ((numero) b).obtenerValor();
+            }
+
+            if (a.esCadena() && b.esCadena()) {
+                return ((cadena) a).obtenerValor().equals(((cadena) b).obtenerValor());
+            }
+
+            if (a.esSimbolo() && b.esSimbolo()) {
+                return false; // Los símbolos son internados
+            }
+
+            if (a.esAtomo() || b.esAtomo()) {
+                return false; // Tipos diferentes
+            }
 
-        if (!a.esAtomo() && !b.esAtomo()) {
             // Para listas, comprobamos si todos los elementos son iguales
-            return esIgual(a.primero(), b.primero()) && esIgual(a.resto(), b.resto());
+            if (!esIgual(a.primero(), b.primero())) {
+                return false;
+            }
+            a = a.resto();
+            b = b.resto();
+        }
+    }
+
+    /**
+     * Aplica una función a un argumento. CAR y CDR se calculan directamente, sin lista
+     * de argumentos; el resto de funciones pasa por aplicar.
+     */
+    private ExpresionLisp aplicarUno(ExpresionLisp funcion, ExpresionLisp arg, contexto llamador) throws ExcepcionLisp, ExcepcionAtomo, ExcepcionContexto {
+        if (funcion == simbolo.PRIMERO || funcion == simbolo.RESTO) {
+            MetricasInterprete.contarPrimitiva((simbolo) funcion);
+            return funcion == simbolo.PRIMERO ? arg.primero() : arg.resto();
+        }
+        return aplicar(funcion, List.of(arg), llamador);
+    }
+
+    /**
+     * Aplica una función a dos argumentos. Las operaciones aritméticas y de comparación
+     * sobre dos números se calculan directamente con su especialización.
+     */
+    private ExpresionLisp aplicarDos(ExpresionLisp funcion, ExpresionLisp a, ExpresionLisp b, contexto llamador) throws ExcepcionLisp, ExcepcionAtomo, ExcepcionContexto {
+        if (funcion instanceof simbolo op && a instanceof numero x && b instanceof numero y) {
+            Especializacion nodo = Especializacion.deOperacion(op);
+            if (nodo != Especializacion.GENERICA) {
+                return nodo.calcular(x.obtenerValor(), y.obtenerValor());
+            }
         }
+        return aplicar(funcion, List.of(a, b), llamador);
+    }
 
-        return false; // Tipos diferentes
+    /**
+     * Aplica una función en una capa propia, como las operaciones paralelas, y cierra la
+     * capa al terminar para devolver al presupuesto los pasos que no usó.
+     */
+    private ExpresionLisp aplicarEnCapa(ExpresionLisp funcion, List<ExpresionLisp> args, contexto origen, contexto superior) throws ExcepcionLisp, ExcepcionAtomo, ExcepcionContexto {
+        contexto capa = origen.abrirCapa(superior);
+        try {
+            return aplicar(funcion, args, capa);
+        } finally {
+            capa.cerrarCapa();
+        }
     }
 
-    private ExpresionLisp aplicar(ExpresionLisp funcion, List<ExpresionLisp> args) throws ExcepcionLisp, ExcepcionAtomo, ExcepcionContexto {
+    private ExpresionLisp aplicar(ExpresionLisp funcion, List<ExpresionLisp> args, contexto llamador) throws ExcepcionLisp, ExcepcionAtomo, ExcepcionContexto {
         if (funcion instanceof Funcion func) {
             // Función definida por el usuario
-            return func.aplicar(args, this);
+            return func.aplicar(args, llamador, this);
         } else if (funcion.esSimbolo()) {
             // Función incorporada
             simbolo op = (simbolo) funcion;
+            MetricasInterprete.contarPrimitiva(op);
 
             if (op == simbolo.PRIMERO) {
                 verificarCantidadArgumentos(args, 1);
@@ -212,15 +641,17 @@ public class Interprete {
                 verificarCantidadArgumentos(args, 2);
                 return new par(args.get(0), args.get(1));
             } else if (op == simbolo.LISTA) {
-                // Convierte lista de args a una lista LISP adecuada
-                ExpresionLisp resultado = simbolo.NULO;
-                for (int i = args.size() - 1; i >= 0; i--) {
-                    resultado = new par(args.get(i), resultado);
-                }
+                // Los argumentos ya evaluados se guardan contiguos en una lista de arreglo
+                EventosJfr.Construccion evento = new EventosJfr.Construccion();
+                evento.begin();
+                ExpresionLisp resultado = listaArreglo.crear(args.toArray(new ExpresionLisp[0]), simbolo.NULO);
+                registrarConstruccion(evento, op, resultado, args.size());
                 return resultado;
             } else if (op == simbolo.ES_IGUAL_REF) {
                 verificarCantidadArgumentos(args, 2);
-                return args.get(0) == args.get(1) ? simbolo.VERDADERO : simbolo.NULO;
+                ExpresionLisp a = args.get(0);
+                ExpresionLisp b = args.get(1);
+                return par.mismaCelda(a, b) ? simbolo.VERDADERO : simbolo.NULO;
             } else if (op == simbolo.ES_IGUAL || op == simbolo.IGUAL || op == simbolo.ES_IGUAL_VALOR) {
                 verificarCantidadArgumentos(args, 2);
                 return esIgual(args.get(0), args.get(1)) ? simbolo.VERDADERO : simbolo.NULO;
@@ -244,33 +675,63 @@ public class Interprete {
                 // Check if it's a proper list
                 return ((par) arg).esLista() ? simbolo.VERDADERO : simbolo.NULO;
             } else if (op == simbolo.CONCATENAR) {
-                StringBuilder resultado = new StringBuilder();
-                for (ExpresionLisp arg : args) {
-                    if (arg.esCadena()) {
-                        resultado.append(((cadena) arg).obtenerValor());
-                    } else {
-                        StringBuilder temp = new StringBuilder();
-                        PrintStream ps = new PrintStream(System.out) {
-                            @Override
-                            public void print(String s) {
-                                temp.append(s);
-                            }
-                            @Override
-                            public void print(long l) {
-                                temp.append(l);
-                            }
-                        };
-                        arg.imprimir(ps);
-                        resultado.append(temp);
-                    }
-                }
-                return new cadena(resultado.toString());
+                EventosJfr.Construccion evento = new EventosJfr.Construccion();
+                evento.begin();
+                cadena resultado = cadena.concatenar(args);
+                registrarConstruccion(evento, op, resultado, resultado.longitud());
+                return resultado;
             } else if (op == simbolo.LONGITUD_CADENA) {
                 verificarCantidadArgumentos(args, 1);
+                ExpresionLisp arg = args.get(0);
+                if (arg == simbolo.NULO) {
+                    return numero.CERO;
+                }
+                if (arg instanceof par lista) {
+                    // Tiempo constante en las listas de arreglo
+                    int longitud = lista.longitud();
+                    if (longitud < 0) {
+                        throw new ExcepcionLisp("LENGTH requiere una lista propia");
+                    }
+                    return numero.obtenerValor(longitud);
+                }
+                if (!arg.esCadena()) {
+                    throw new ExcepcionLisp("LONGITUD_CADENA requiere un argumento de tipo cadena o lista");
+                }
+                return numero.obtenerValor(((cadena) arg).longitud());
+            } else if (op == simbolo.ENESIMO) {
+                // (NTH indice lista), NIL si la lista es más corta
+                verificarCantidadArgumentos(args, 2);
+                if (!args.get(0).esNumero() || ((numero) args.get(0)).obtenerValor() < 0) {
+                    throw new ExcepcionLisp("NTH requiere un índice numérico no negativo");
+                }
+                if (!(args.get(1) instanceof par lista)) {
+                    if (args.get(1) == simbolo.NULO) {
+                        return simbolo.NULO;
+                    }
+                    throw new ExcepcionLisp("NTH requiere una lista");
+                }
+                ExpresionLisp elemento = lista.elemento(((numero) args.get(0)).obtenerValor());
+                return elemento == null ? simbolo.NULO : elemento;
+            } else if (op == simbolo.SUBCADENA) {
+                // (SUBSTRING cadena inicio [fin])
+                if (args.size() < 2 || args.size() > 3) {
+                    throw new ExcepcionLisp("SUBSTRING requiere dos o tres argumentos");
+                }
                 if (!args.get(0).esCadena()) {
-                    throw new ExcepcionLisp("LONGITUD_CADENA requiere un argumento de tipo cadena");
+                    throw new ExcepcionLisp("SUBSTRING requiere un argumento de tipo cadena");
+                }
+                cadena texto = (cadena) args.get(0);
+                for (int i = 1; i < args.size(); i++) {
+                    if (!args.get(i).esNumero()) {
+                        throw new ExcepcionLisp("SUBSTRING requiere índices numéricos");
+                    }
+                }
+                long inicio = ((numero) args.get(1)).obtenerValor();
+                long fin = args.size() == 3 ? ((numero) args.get(2)).obtenerValor() : texto.longitud();
+                if (inicio < 0 || fin > texto.longitud() || inicio > fin) {
+                    throw new ExcepcionLisp("Índices fuera de rango en SUBSTRING: " + inicio + ", " + fin);
                 }
-                return numero.obtenerValor(((cadena) args.get(0)).obtenerValor().length());
+                return texto.subcadena((int) inicio, (int) fin);
             } else if (op == simbolo.SUMA || op == simbolo.SUMAR) {
                 long resultado = 0;
                 for (ExpresionLisp arg : args) {
@@ -359,6 +820,162 @@ public class Interprete {
                 long a = ((numero) args.get(0)).obtenerValor();
                 long b = ((numero) args.get(1)).obtenerValor();
                 return a > b ? simbolo.VERDADERO : simbolo.NULO;
+            } else if (op == simbolo.ESPERAR) {
+                // (TOUCH futuro) => espera su resultado, dentro del presupuesto de quien llama;
+                // cualquier otro valor se devuelve tal cual
+                verificarCantidadArgumentos(args, 1);
+                if (!(args.get(0) instanceof futuro f)) {
+                    return args.get(0);
+                }
+                return f.esperar((llamador != null ? llamador : contextoActual()).presupuesto);
+            } else if (op == simbolo.MAPEAR_PARALELO) {
+                // (PMAP funcion lista); cada aplicación escribe sus SET globales en una capa propia
+                verificarCantidadArgumentos(args, 2);
+                ExpresionLisp f = args.get(0);
+                contexto origen = llamador != null ? llamador : contextoActual();
+                contexto superior = origen.compartirNivelSuperior();
+                return listaArreglo.crear(Paralelo.mapear(par.aArreglo(args.get(1)),
+                        x -> aplicarEnCapa(f, List.of(x), origen, superior)), simbolo.NULO);
+            } else if (op == simbolo.FILTRAR_PARALELO) {
+                // (PFILTER predicado lista)
+                verificarCantidadArgumentos(args, 2);
+                ExpresionLisp f = args.get(0);
+                contexto origen = llamador != null ? llamador : contextoActual();
+                contexto superior = origen.compartirNivelSuperior();
+                ExpresionLisp[] elementos = par.aArreglo(args.get(1));
+                ExpresionLisp[] pruebas = Paralelo.mapear(elementos, x -> aplicarEnCapa(f, List.of(x), origen, superior));
+                List<ExpresionLisp> seleccionados = new ArrayList<>();
+                for (int i = 0; i < elementos.length; i++) {
+                    if (pruebas[i] != simbolo.NULO) {
+                        seleccionados.add(elementos[i]);
+                    }
+                }
+                return listaArreglo.crear(seleccionados.toArray(new ExpresionLisp[0]), simbolo.NULO);
+            } else if (op == simbolo.REDUCIR_PARALELO) {
+                // (PREDUCE funcion lista inicial), la función debe ser asociativa
+                verificarCantidadArgumentos(args, 3);
+                ExpresionLisp f = args.get(0);
+                contexto origen = llamador != null ? llamador : contextoActual();
+                contexto superior = origen.compartirNivelSuperior();
+                return Paralelo.reducir(par.aArreglo(args.get(1)),
+                        (a, b) -> aplicarEnCapa(f, List.of(a, b), origen, superior), args.get(2));
+            } else if (op == simbolo.CREAR_HASH) {
+                if (args.size() > 1) {
+                    throw new ExcepcionLisp("MAKE-HASH acepta a lo sumo un argumento");
+                }
+                if (args.isEmpty()) {
+                    return new tablaHash();
+                }
+                if (!args.get(0).esNumero()) {
+                    throw new ExcepcionLisp("MAKE-HASH requiere una capacidad numérica");
+                }
+                long entradas = ((numero) args.get(0)).obtenerValor();
+                if (entradas < 0 || entradas > tablaHash.ENTRADAS_INICIALES_MAXIMAS) {
+                    throw new ExcepcionLisp("MAKE-HASH requiere una capacidad entre 0 y "
+                            + tablaHash.ENTRADAS_INICIALES_MAXIMAS + ": " + entradas);
+                }
+                return new tablaHash((int) entradas);
+            } else if (op == simbolo.OBTENER_HASH) {
+                // (GETHASH clave tabla)
+                verificarCantidadArgumentos(args, 2);
+                ExpresionLisp valor = comoTablaHash(args.get(1), "GETHASH").obtener(args.get(0));
+                return valor == null ? simbolo.NULO : valor;
+            } else if (op == simbolo.PONER_HASH) {
+                // (PUTHASH clave valor tabla)
+                verificarCantidadArgumentos(args, 3);
+                comoTablaHash(args.get(2), "PUTHASH").poner(args.get(0), args.get(1));
+                return args.get(1);
+            } else if (op == simbolo.QUITAR_HASH) {
+                // (REMHASH clave tabla)
+                verificarCantidadArgumentos(args, 2);
+                return comoTablaHash(args.get(1), "REMHASH").quitar(args.get(0)) ? simbolo.VERDADERO : simbolo.NULO;
+            } else if (op == simbolo.CONTAR_HASH) {
+                verificarCantidadArgumentos(args, 1);
+                return numero.obtenerValor(comoTablaHash(args.get(0), "HASH-COUNT").cantidad());
+            } else if (op == simbolo.COMPILAR_ARCHIVO) {
+                // (COMPILE-FILE "archivo.lisp") escribe archivo.fasl y devuelve su ruta
+                verificarCantidadArgumentos(args, 1);
+                return new cadena(Fasl.compilarArchivo(comoRuta(args.get(0), "COMPILE-FILE")).toString());
+            } else if (op == simbolo.CARGAR) {
+                // (LOAD "archivo") evalúa las formas del archivo, o de su .fasl si está al día
+                verificarCantidadArgumentos(args, 1);
+                contexto ctx = llamador != null ? llamador : contextoActual();
+                for (ExpresionLisp forma : Fasl.cargarArchivo(comoRuta(args.get(0), "LOAD"))) {
+                    evaluar(optimizador.optimizar(forma, ctx), ctx);
+                }
+                return simbolo.VERDADERO;
+            } else if (op == simbolo.CREAR_ARENA) {
+                verificarCantidadArgumentos(args, 0);
+                return new arena();
+            } else if (op == simbolo.COPIAR_ARENA) {
+                // (ARENA-COPY arena lista) copia la lista fuera del heap y devuelve una vista
+                verificarCantidadArgumentos(args, 2);
+                return comoArena(args.get(0), "ARENA-COPY").copiar(args.get(1));
+            } else if (op == simbolo.CERRAR_ARENA) {
+                verificarCantidadArgumentos(args, 1);
+                comoArena(args.get(0), "ARENA-CLOSE").close();
+                return simbolo.VERDADERO;
+            } else if (op == simbolo.RANGO) {
+                // (RANGE [inicio] [fin [paso]]); sin argumentos, los naturales sin fin
+                if (args.size() > 3) {
+                    throw new ExcepcionLisp("RANGE acepta a lo sumo tres argumentos");
+                }
+                if (args.isEmpty()) {
+                    return secuencia.rango(0, null, 1);
+                }
+                if (args.size() == 1) {
+                    return secuencia.rango(0, comoEntero(args.get(0), "RANGE"), 1);
+                }
+                long paso = args.size() == 3 ? comoEntero(args.get(2), "RANGE") : 1;
+                return secuencia.rango(comoEntero(args.get(0), "RANGE"), comoEntero(args.get(1), "RANGE"), paso);
+            } else if (op == simbolo.MAPEAR_PEREZOSO) {
+                // (LAZY-MAP funcion secuencia)
+                verificarCantidadArgumentos(args, 2);
+                return secuencia.mapear(args.get(0), args.get(1));
+            } else if (op == simbolo.FILTRAR_PEREZOSO) {
+                // (LAZY-FILTER predicado secuencia)
+                verificarCantidadArgumentos(args, 2);
+                return secuencia.filtrar(args.get(0), args.get(1));
+            } else if (op == simbolo.TOMAR) {
+                // (TAKE n secuencia)
+                verificarCantidadArgumentos(args, 2);
+                return secuencia.tomar(comoEntero(args.get(0), "TAKE"), args.get(1));
+            } else if (op == simbolo.REDUCIR) {
+                // (REDUCE funcion secuencia [inicial]); sin valor inicial parte del primer elemento
+                if (args.size() < 2 || args.size() > 3) {
+                    throw new ExcepcionLisp("REDUCE requiere dos o tres argumentos");
+                }
+                ExpresionLisp f = args.get(0);
+                secuencia.Cursor cursor = secuencia.recorrer(args.get(1), (g, x) -> aplicarUno(g, x, llamador));
+                ExpresionLisp acumulado = args.size() == 3 ? args.get(2) : cursor.siguiente();
+                if (acumulado == null) {
+                    return simbolo.NULO;
+                }
+                ExpresionLisp elemento;
+                while ((elemento = cursor.siguiente()) != null) {
+                    acumulado = aplicarDos(f, acumulado, elemento, llamador);
+                }
+                return acumulado;
+            } else if (op == simbolo.MAPEAR || op == simbolo.FILTRAR) {
+                // (MAPCAR funcion lista) y (FILTER predicado lista), también sobre secuencias.
+                // El resultado se acumula en orden y se guarda en una lista de arreglo
+                verificarCantidadArgumentos(args, 2);
+                ExpresionLisp f = args.get(0);
+                if (!secuencia.esRecorrible(args.get(1))) {
+                    throw new ExcepcionLisp(op.obtenerNombre() + " requiere una lista o una secuencia");
+                }
+                secuencia.Cursor cursor = secuencia.recorrer(args.get(1), (g, x) -> aplicarUno(g, x, llamador));
+                List<ExpresionLisp> resultado = new ArrayList<>();
+                ExpresionLisp elemento;
+                while ((elemento = cursor.siguiente()) != null) {
+                    ExpresionLisp valor = aplicarUno(f, elemento, llamador);
+                    if (op == simbolo.MAPEAR) {
+                        resultado.add(valor);
+                    } else if (valor != simbolo.NULO) {
+                        resultado.add(elemento);
+                    }
+                }
+                return listaArreglo.crear(resultado.toArray(new ExpresionLisp[0]), simbolo.NULO);
             } else if (op == simbolo.IMPRIMIR) {
                 for (ExpresionLisp arg : args) {
                     arg.imprimir(salida);
@@ -373,7 +990,7 @@ public class Interprete {
             throw new ExcepcionLisp("No se puede aplicar: " + funcion);
         }
     }
-    private contexto crearContextoGlobal() {
+    private static contexto crearContextoGlobal() {
         contexto ctx = new contexto();
 
         // Definir constantes
@@ -390,11 +1007,15 @@ public class Interprete {
         ctx.establecer(simbolo.ES_IGUAL, simbolo.ES_IGUAL);
         ctx.establecer(simbolo.ES_LISTA, simbolo.ES_LISTA);
         ctx.establecer(simbolo.IMPRIMIR, simbolo.IMPRIMIR);
+        ctx.establecer(simbolo.ENESIMO, simbolo.ENESIMO);
+        ctx.establecer(simbolo.MAPEAR, simbolo.MAPEAR);
+        ctx.establecer(simbolo.FILTRAR, simbolo.FILTRAR);
         ctx.establecer(simbolo.DEFUN, simbolo.DEFUN);  // Changed from DEFINIR_FUNCION to DEFUN
 
         // Definir operaciones con cadenas
         ctx.establecer(simbolo.CONCATENAR, simbolo.CONCATENAR);
         ctx.establecer(simbolo.LONGITUD_CADENA, simbolo.LONGITUD_CADENA);
+        ctx.establecer(simbolo.SUBCADENA, simbolo.SUBCADENA);
 
         // Definir operadores aritméticos - both forms
         ctx.establecer(simbolo.SUMA, simbolo.SUMA);
@@ -411,9 +1032,39 @@ public class Interprete {
         ctx.establecer(simbolo.MENOR_QUE, simbolo.MENOR_QUE);
         ctx.establecer(simbolo.MAYOR, simbolo.MAYOR);
         ctx.establecer(simbolo.MAYOR_QUE, simbolo.MAYOR_QUE);
-        ctx.establecer(simbolo.IGUAL, simbolo.ES_IGUAL);
+        ctx.establecer(simbolo.IGUAL, simbolo.IGUAL);
         ctx.establecer(simbolo.ES_IGUAL_VALOR, simbolo.ES_IGUAL_VALOR);
 
+        // Definir operaciones asíncronas y paralelas
+        ctx.establecer(simbolo.ESPERAR, simbolo.ESPERAR);
+        ctx.establecer(simbolo.MAPEAR_PARALELO, simbolo.MAPEAR_PARALELO);
+        ctx.establecer(simbolo.REDUCIR_PARALELO, simbolo.REDUCIR_PARALELO);
+        ctx.establecer(simbolo.FILTRAR_PARALELO, simbolo.FILTRAR_PARALELO);
+
+        // Definir operaciones con tablas hash
+        ctx.establecer(simbolo.CREAR_HASH, simbolo.CREAR_HASH);
+        ctx.establecer(simbolo.OBTENER_HASH, simbolo.OBTENER_HASH);
+        ctx.establecer(simbolo.PONER_HASH, simbolo.PONER_HASH);
+        ctx.establecer(simbolo.QUITAR_HASH, simbolo.QUITAR_HASH);
+        ctx.establecer(simbolo.CONTAR_HASH, simbolo.CONTAR_HASH);
+
+        // Definir carga de archivos
+        ctx.establecer(simbolo.COMPILAR_ARCHIVO, simbolo.COMPILAR_ARCHIVO);
+        ctx.establecer(simbolo.CARGAR, simbolo.CARGAR);
+
+        // Definir arenas fuera del heap
+        ctx.establecer(simbolo.CREAR_ARENA, simbolo.CREAR_ARENA);
+        ctx.establecer(simbolo.COPIAR_ARENA, simbolo.COPIAR_ARENA);
+        ctx.establecer(simbolo.CERRAR_ARENA, simbolo.CERRAR_ARENA);
+
+        // Definir secuencias perezosas
+        ctx.establecer(simbolo.RANGO, simbolo.RANGO);
+        ctx.establecer(simbolo.MAPEAR_PEREZOSO, simbolo.MAPEAR_PEREZOSO);
+        ctx.establecer(simbolo.FILTRAR_PEREZOSO, simbolo.FILTRAR_PEREZOSO);
+        ctx.establecer(simbolo.TOMAR, simbolo.TOMAR);
+        ctx.establecer(simbolo.REDUCIR, simbolo.REDUCIR);
+
+        ctx.sellar();
         return ctx;
     }
 
@@ -435,7 +1086,7 @@ public void repl() {
                     break; // Fin de entrada
                 }
 
-                ExpresionLisp resultado = evaluar(expr, contextoGlobal);
+                ExpresionLisp resultado = evaluarNivelSuperior(expr, null, null);
 
                 // Only print the result if it's not from an IMPRIMIR operation
                 if (!(expr.primero() instanceof simbolo &&
@@ -460,57 +1111,364 @@ public void repl() {
      * @throws ExcepcionLisp si hay un error durante la evaluación
      */
     public ExpresionLisp evaluar(String expr) throws ExcepcionLisp, ExcepcionAtomo, ExcepcionContexto {
+        return evaluar(expr, (Presupuesto) null);
+    }
+
+    /**
+     * Evalúa una expresión LISP de cadena dentro de un presupuesto.
+     * Si la evaluación agota los pasos, supera la profundidad, vence el plazo o se
+     * cancela con Presupuesto.cancelar(), termina con ExcepcionLimite.
+     *
+     * @param expr La expresión a evaluar como cadena
+     * @param presupuesto Los límites de la evaluación, o null para no limitarla
+     * @return El resultado de evaluar la expresión
+     * @throws ExcepcionLisp si hay un error durante la evaluación
+     */
+    public ExpresionLisp evaluar(String expr, Presupuesto presupuesto) throws ExcepcionLisp, ExcepcionAtomo, ExcepcionContexto {
+        lisp.analizador analizadorTemp = new analizador(new StringReader(expr));
+        ExpresionLisp s = analizadorTemp.analizar();
+        if (s == null) {
+            MetricasInterprete.errores.increment();
+            throw new ExcepcionLisp("Expresión vacía");
+        }
+        return evaluarNivelSuperior(s, presupuesto, null);
+    }
+
+    /**
+     * Evalúa una expresión LISP de cadena registrando las llamadas a funciones definidas
+     * por el usuario en el perfilador dado. Solo se registran las llamadas hechas en el
+     * hilo que creó el perfilador.
+     *
+     * @param expr La expresión a evaluar como cadena
+     * @param perfilador El perfilador donde registrar las llamadas
+     * @return El resultado de evaluar la expresión
+     * @throws ExcepcionLisp si hay un error durante la evaluación
+     */
+    public ExpresionLisp perfilar(String expr, Perfilador perfilador) throws ExcepcionLisp, ExcepcionAtomo, ExcepcionContexto {
         lisp.analizador analizadorTemp = new analizador(new StringReader(expr));
         ExpresionLisp s = analizadorTemp.analizar();
         if (s == null) {
+            MetricasInterprete.errores.increment();
             throw new ExcepcionLisp("Expresión vacía");
         }
-        return evaluar(s, contextoGlobal);
+        return evaluarNivelSuperior(s, null, perfilador);
+    }
+
+    /**
+     * Evalúa una forma de nivel superior en el contexto del hilo actual.
+     *
+     * @param expr La forma a evaluar
+     * @param presupuesto Los límites de la evaluación, o null
+     * @param perfilador El perfilador de la evaluación, o null
+     * @return El resultado de evaluar la forma
+     */
+    private ExpresionLisp evaluarNivelSuperior(ExpresionLisp expr, Presupuesto presupuesto, Perfilador perfilador) throws ExcepcionLisp, ExcepcionAtomo, ExcepcionContexto {
+        contexto ctx = contextoActual();
+        Presupuesto anterior = ctx.presupuesto;
+        Perfilador perfiladorAnterior = ctx.perfilador;
+        ctx.presupuesto = presupuesto;
+        ctx.perfilador = perfilador;
+        EventosJfr.Forma evento = new EventosJfr.Forma();
+        evento.begin();
+        MetricasInterprete.formas.increment();
+        try {
+            return evaluar(optimizador.optimizar(expr, ctx), ctx);
+        } catch (StackOverflowError e) {
+            MetricasInterprete.errores.increment();
+            throw new ExcepcionLimite("Desbordamiento de pila durante la evaluación", e);
+        } catch (arena.Cerrada e) {
+            MetricasInterprete.errores.increment();
+            throw new ExcepcionLisp(e.getMessage(), e);
+        } catch (ExcepcionLisp | RuntimeException e) {
+            MetricasInterprete.errores.increment();
+            throw e;
+        } finally {
+            ctx.presupuesto = anterior;
+            ctx.perfilador = perfiladorAnterior;
+            evento.end();
+            if (evento.shouldCommit()) {
+                evento.funcion = EventosJfr.nombreFuncion(expr);
+                evento.forma = EventosJfr.prefijo(expr);
+                evento.commit();
+            }
+        }
+    }
+
+    /**
+     * Publica el contexto global para su uso concurrente.
+     * Hasta la publicación, el intérprete debe usarse desde un solo hilo (por ejemplo, para
+     * cargar las definiciones). Después, el contexto global queda sellado y es de solo
+     * lectura, y evaluar(String) puede llamarse desde varios hilos a la vez: cada hilo
+     * escribe sus enlaces de nivel superior en su propia capa sobre el contexto global,
+     * sin ver las asignaciones de los demás. La capa se aplica también dentro de las
+     * funciones: un SET a una variable global desde su cuerpo escribe en la capa del hilo,
+     * y el cuerpo ve los enlaces de esa capa.
+     */
+    public void publicar() {
+        contextoGlobal.sellar();
+        publicado = true;
+    }
+
+    /**
+     * Guarda el contexto global en un archivo de imagen, con las funciones, macros y
+     * datos definidos hasta ahora. Un intérprete creado con desdeImagen() a partir del
+     * archivo arranca con el mismo entorno sin volver a evaluar las definiciones.
+     *
+     * @param archivo el archivo de destino
+     * @throws ExcepcionLisp si algún valor no puede guardarse (por ejemplo, un futuro) o falla la escritura
+     */
+    public void guardarImagen(Path archivo) throws ExcepcionLisp {
+        ImagenMemoria.guardar(archivo, contextoGlobal, contextoBase, optimizador.estaActivo());
+    }
+
+    /**
+     * Crea un intérprete cuyo contexto global se carga desde un archivo de imagen.
+     *
+     * @param archivo el archivo de imagen guardado con guardarImagen()
+     * @param entrada La fuente de entrada para las expresiones
+     * @param salida La salida donde mostrar resultados
+     * @return el intérprete con el entorno de la imagen
+     * @throws ExcepcionLisp si el archivo no es una imagen válida o falla la lectura
+     */
+    public static Interprete desdeImagen(Path archivo, java.io.InputStream entrada, PrintStream salida) throws ExcepcionLisp {
+        Interprete interprete = new Interprete(entrada, salida);
+        boolean optimizado = ImagenMemoria.cargar(archivo, interprete.contextoGlobal, contextoBase,
+                (nombre, parametros, cuerpo, cuerpoOptimizado, cierre) ->
+                        interprete.new Funcion(nombre, parametros, cuerpo, cuerpoOptimizado, cierre));
+        if (!optimizado) {
+            interprete.optimizador.desactivar();
+        }
+        return interprete;
+    }
+
+    /**
+     * Descarta la capa del hilo actual, de modo que la siguiente evaluación del hilo
+     * parta solo de las definiciones publicadas. No tiene efecto antes de publicar.
+     */
+    public void descartarCapa() {
+        capas.remove();
+    }
+
+    /**
+     * Obtiene el contexto donde se evalúan las formas de nivel superior en el hilo actual.
+     *
+     * @return el contexto global, o la capa del hilo actual si el contexto global está publicado
+     */
+    private contexto contextoActual() {
+        if (!publicado) {
+            return contextoGlobal;
+        }
+        contexto capa = capas.get();
+        if (capa == null) {
+            capa = new contexto(contextoGlobal);
+            capa.capa = capa;
+            capas.set(capa);
+        }
+        return capa;
     }
 
     /**
      * Clase interna para representar funciones definidas por el usuario.
      */
-    private class Funcion extends ExpresionLisp {
+    private class Funcion extends ExpresionLisp implements ImagenMemoria.FuncionGuardable {
+        private final String nombre;
         private final ExpresionLisp parametros;
         private final ExpresionLisp cuerpo;
+        /** El cuerpo tras el plegado de constantes; se usa mientras el optimizador siga activo */
+        private final ExpresionLisp cuerpoOptimizado;
         private final contexto cierreLexico;
+        /** Número de parámetros, o -1 si la lista de parámetros no es una lista propia de símbolos */
+        private final int aridad;
+        /** Indica si los marcos de llamada pueden reciclarse porque ninguna forma del cuerpo los captura */
+        private final boolean reciclable;
 
         /**
          * Constructor de una función definida por el usuario.
          *
+         * @param nombre el nombre con que se definió la función
          * @param parametros los parámetros formales de la función
          * @param cuerpo el cuerpo de la función
+         * @param cuerpoOptimizado el cuerpo tras el plegado de constantes
          * @param cierreLexico el contexto donde se definió la función
          */
-        public Funcion(ExpresionLisp parametros, ExpresionLisp cuerpo, contexto cierreLexico) {
+        public Funcion(String nombre, ExpresionLisp parametros, ExpresionLisp cuerpo, ExpresionLisp cuerpoOptimizado, contexto cierreLexico) {
+            this.nombre = nombre;
             this.parametros = parametros;
             this.cuerpo = cuerpo;
+            this.cuerpoOptimizado = cuerpoOptimizado;
             this.cierreLexico = cierreLexico;
+            this.aridad = calcularAridad(parametros);
+            this.reciclable = !capturaContexto(cuerpo);
+        }
+
+        @Override
+        public String obtenerNombre() {
+            return nombre;
+        }
+
+        @Override
+        public ExpresionLisp obtenerParametros() {
+            return parametros;
+        }
+
+        @Override
+        public ExpresionLisp obtenerCuerpo() {
+            return cuerpo;
+        }
+
+        @Override
+        public ExpresionLisp obtenerCuerpoOptimizado() {
+            return cuerpoOptimizado;
+        }
+
+        @Override
+        public contexto obtenerCierre() {
+            return cierreLexico;
         }
 
         /**
          * Aplica la función a los argumentos dados.
          *
          * @param args los argumentos de la función
+         * @param llamador el contexto desde el que se llama, o null
          * @param interprete el intérprete que ejecuta la función
          * @return el resultado de evaluar la función
          * @throws ExcepcionLisp si hay un error durante la evaluación
          * @throws ExcepcionAtomo si hay un error con el manejo de átomos
          * @throws ExcepcionContexto si hay un error con el contexto
          */
-        public ExpresionLisp aplicar(List<ExpresionLisp> args, Interprete interprete) throws ExcepcionLisp, ExcepcionAtomo, ExcepcionContexto {
-            // Convierte la lista de args a una lista LISP adecuada
-            ExpresionLisp listaArgs = simbolo.NULO;
-            for (int i = args.size() - 1; i >= 0; i--) {
-                listaArgs = new par(args.get(i), listaArgs);
+        public ExpresionLisp aplicar(List<ExpresionLisp> args, contexto llamador, Interprete interprete) throws ExcepcionLisp, ExcepcionAtomo, ExcepcionContexto {
+            if (aridad < 0) {
+                // Parámetros no estándar: convierte la lista de args a una lista LISP adecuada
+                ExpresionLisp listaArgs = simbolo.NULO;
+                for (int i = args.size() - 1; i >= 0; i--) {
+                    listaArgs = new par(args.get(i), listaArgs);
+                }
+                contexto marco = cierreLexico.extender(parametros, listaArgs);
+                continuarEvaluacion(marco, llamador);
+                return ejecutar(marco, interprete);
             }
 
-            // Crea un nuevo contexto extendido con los parámetros enlazados a los argumentos
-            contexto nuevoContexto = cierreLexico.extender(parametros, listaArgs);
+            verificarAridad(args.size());
+            contexto marco = crearMarco(llamador);
+            try {
+                ExpresionLisp parametro = parametros;
+                for (ExpresionLisp arg : args) {
+                    marco.establecer((simbolo) parametro.primero(), arg);
+                    parametro = parametro.resto();
+                }
+                return ejecutar(marco, interprete);
+            } finally {
+                liberarMarco(marco);
+            }
+        }
+
+        /**
+         * Llama a la función evaluando los argumentos sin evaluar en el contexto del llamador.
+         * Solo se usa cuando la lista de parámetros es propia (aridad conocida).
+         *
+         * @param listaArgs las formas de los argumentos
+         * @param ctx el contexto del llamador
+         * @param interprete el intérprete que ejecuta la función
+         * @return el resultado de evaluar la función
+         */
+        ExpresionLisp llamar(ExpresionLisp listaArgs, contexto ctx, Interprete interprete) throws ExcepcionLisp, ExcepcionAtomo, ExcepcionContexto {
+            contexto marco = crearMarco(ctx);
+            try {
+                ExpresionLisp parametro = parametros;
+                int recibidos = 0;
+                while (listaArgs != simbolo.NULO) {
+                    if (recibidos == aridad) {
+                        throw new ExcepcionContexto("Demasiados argumentos");
+                    }
+                    marco.establecer((simbolo) parametro.primero(), interprete.evaluar(listaArgs.primero(), ctx));
+                    parametro = parametro.resto();
+                    listaArgs = listaArgs.resto();
+                    recibidos++;
+                }
+                verificarAridad(recibidos);
+                return ejecutar(marco, interprete);
+            } finally {
+                liberarMarco(marco);
+            }
+        }
+
+        /**
+         * Evalúa el cuerpo en el marco de la llamada, registrándola si hay un perfilador
+         * activo y, si supera el umbral de duración, como evento JFR.
+         */
+        private ExpresionLisp ejecutar(contexto marco, Interprete interprete) throws ExcepcionLisp, ExcepcionAtomo, ExcepcionContexto {
+            MetricasInterprete.llamadas.increment();
+            ExpresionLisp cuerpo = optimizador.estaActivo() ? cuerpoOptimizado : this.cuerpo;
+            Perfilador perfilador = marco.perfilador;
+            EventosJfr.Llamada evento = new EventosJfr.Llamada();
+            if (perfilador == null && !evento.isEnabled()) {
+                return interprete.evaluar(cuerpo, marco);
+            }
+            if (perfilador != null) {
+                perfilador.entrar(this, nombre);
+            }
+            evento.begin();
+            try {
+                return interprete.evaluar(cuerpo, marco);
+            } finally {
+                evento.end();
+                if (evento.shouldCommit()) {
+                    evento.funcion = nombre;
+                    evento.forma = EventosJfr.prefijo(cuerpo);
+                    evento.commit();
+                }
+                if (perfilador != null) {
+                    perfilador.salir();
+                }
+            }
+        }
+
+        private void verificarAridad(int recibidos) throws ExcepcionContexto {
+            if (recibidos < aridad) {
+                throw new ExcepcionContexto("Faltan argumentos");
+            }
+            if (recibidos > aridad) {
+                throw new ExcepcionContexto("Demasiados argumentos");
+            }
+        }
+
+        private contexto crearMarco(contexto llamador) throws ExcepcionLimite {
+            contexto marco = reciclable ? contexto.obtenerMarco(cierreLexico, aridad) : new contexto(cierreLexico, aridad);
+            try {
+                continuarEvaluacion(marco, llamador);
+            } catch (ExcepcionLimite e) {
+                liberarMarco(marco);
+                throw e;
+            }
+            return marco;
+        }
+
+        /**
+         * Pasa al marco de la llamada el presupuesto y la capa de quien llama, y una profundidad más.
+         * El perfilador solo se pasa si la llamada ocurre en el hilo dueño del perfilador.
+         */
+        private void continuarEvaluacion(contexto marco, contexto llamador) throws ExcepcionLimite {
+            if (llamador == null) {
+                marco.presupuesto = null;
+                marco.profundidad = 1;
+                marco.perfilador = null;
+                return;
+            }
+            Perfilador perfilador = llamador.perfilador;
+            marco.presupuesto = llamador.presupuesto;
+            marco.capa = llamador.capa;
+            marco.profundidad = llamador.profundidad + 1;
+            marco.perfilador = perfilador != null && perfilador.hilo == Thread.currentThread() ? perfilador : null;
+            if (marco.presupuesto != null) {
+                marco.presupuesto.verificarProfundidad(marco.profundidad);
+            }
+        }
 
-            // Evalúa el cuerpo de la función en el nuevo contexto
-            return interprete.evaluar(cuerpo, nuevoContexto);
+        private void liberarMarco(contexto marco) {
+            if (reciclable) {
+                contexto.liberarMarco(marco);
+            }
         }
 
         @Override
@@ -533,11 +1491,16 @@ public void repl() {
     /**
      * Método principal que inicia el intérprete.
      *
-     * @param args argumentos de la línea de comandos (no utilizados)
+     * @param args argumentos de la línea de comandos: opcionalmente --imagen archivo
      */
     public static void main(String[] args) {
         try {
-            Interprete interprete = new Interprete();
+            Interprete interprete;
+            if (args.length == 2 && args[0].equals("--imagen")) {
+                interprete = desdeImagen(Path.of(args[1]), System.in, System.out);
+            } else {
+                interprete = new Interprete();
+            }
             interprete.repl();
         } catch (ExcepcionLisp e) {
             System.err.println("Error al iniciar el intérprete: " + e.getMessage());
@@ -0,0 +1,168 @@
+package lisp;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Contadores del intérprete expuestos por JMX.
+ * Los contadores son LongAdder, repartidos entre celdas por hilo, de modo que
+ * actualizarlos desde varios hilos a la vez no los convierte en un punto de contención.
+ * Los contadores son globales a la JVM, como las tablas de números y símbolos.
+ */
+public final class MetricasInterprete implements MetricasInterpreteMXBean {
+    /** Nombre con que se registra el MBean */
+    public static final String NOMBRE = "lisp:type=Interprete";
+
+    /** La única instancia */
+    public static final MetricasInterprete INSTANCIA = new MetricasInterprete();
+
+    static final LongAdder formas = new LongAdder();
+    static final LongAdder llamadas = new LongAdder();
+    static final LongAdder numerosReutilizados = new LongAdder();
+    static final LongAdder numerosCreados = new LongAdder();
+    static final LongAdder contextos = new LongAdder();
+    static final LongAdder marcosReciclados = new LongAdder();
+    static final LongAdder formasAnalizadas = new LongAdder();
+    static final LongAdder caracteresAnalizados = new LongAdder();
+    static final LongAdder nanosAnalisis = new LongAdder();
+    static final LongAdder errores = new LongAdder();
+
+    /** Llamadas a funciones incorporadas por operador */
+    private static final Map<simbolo, LongAdder> primitivas = new ConcurrentHashMap<>();
+
+    /** Indica si el MBean ya se intentó registrar */
+    private static volatile boolean registrado;
+
+    private MetricasInterprete() {
+    }
+
+    /**
+     * Registra el MBean en el servidor de la plataforma, si no se registró antes.
+     * Un fallo del registro no impide usar el intérprete.
+     */
+    static void registrar() {
+        if (registrado) {
+            return;
+        }
+        synchronized (MetricasInterprete.class) {
+            if (registrado) {
+                return;
+            }
+            registrado = true;
+            try {
+                MBeanServer servidor = ManagementFactory.getPlatformMBeanServer();
+                ObjectName nombre = new ObjectName(NOMBRE);
+                if (!servidor.isRegistered(nombre)) {
+                    servidor.registerMBean(INSTANCIA, nombre);
+                }
+            } catch (JMException | SecurityException e) {
+                System.err.println("No se pudo registrar el MBean del intérprete: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Cuenta una llamada a una función incorporada.
+     *
+     * @param op el operador llamado
+     */
+    static void contarPrimitiva(simbolo op) {
+        contadorPrimitiva(op).increment();
+    }
+
+    /**
+     * Obtiene el contador de llamadas de una función incorporada, para quien quiera
+     * incrementarlo sin buscarlo en cada llamada.
+     *
+     * @param op el operador
+     * @return el contador de llamadas del operador
+     */
+    static LongAdder contadorPrimitiva(simbolo op) {
+        LongAdder contador = primitivas.get(op);
+        if (contador == null) {
+            contador = primitivas.computeIfAbsent(op, s -> new LongAdder());
+        }
+        return contador;
+    }
+
+    @Override
+    public long getFormasEvaluadas() {
+        return formas.sum();
+    }
+
+    @Override
+    public long getLlamadasFunciones() {
+        return llamadas.sum();
+    }
+
+    @Override
+    public Map<String, Long> getLlamadasPrimitivas() {
+        Map<String, Long> resultado = new TreeMap<>();
+        primitivas.forEach((op, contador) -> resultado.put(op.obtenerNombre(), contador.sum()));
+        return resultado;
+    }
+
+    @Override
+    public double getTasaAciertosCacheNumeros() {
+        long reutilizados = numerosReutilizados.sum();
+        long busquedas = reutilizados + numerosCreados.sum();
+        return busquedas == 0 ? 1.0 : (double) reutilizados / busquedas;
+    }
+
+    @Override
+    public long getTamanoTablaSimbolos() {
+        return simbolo.tamanoTabla();
+    }
+
+    @Override
+    public long getContextosCreados() {
+        return contextos.sum();
+    }
+
+    @Override
+    public long getMarcosReciclados() {
+        return marcosReciclados.sum();
+    }
+
+    @Override
+    public long getFormasAnalizadas() {
+        return formasAnalizadas.sum();
+    }
+
+    @Override
+    public long getCaracteresAnalizados() {
+        return caracteresAnalizados.sum();
+    }
+
+    @Override
+    public double getCaracteresAnalizadosPorSegundo() {
+        long nanos = nanosAnalisis.sum();
+        return nanos == 0 ? 0.0 : caracteresAnalizados.sum() * 1e9 / nanos;
+    }
+
+    @Override
+    public long getErrores() {
+        return errores.sum();
+    }
+
+    @Override
+    public void reiniciar() {
+        formas.reset();
+        llamadas.reset();
+        numerosReutilizados.reset();
+        numerosCreados.reset();
+        contextos.reset();
+        marcosReciclados.reset();
+        formasAnalizadas.reset();
+        caracteresAnalizados.reset();
+        nanosAnalisis.reset();
+        errores.reset();
+        primitivas.values().forEach(LongAdder::reset);
+    }
+}
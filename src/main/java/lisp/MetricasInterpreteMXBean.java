@@ -0,0 +1,47 @@
+package lisp;
+
+import java.util.Map;
+
+/**
+ * Interfaz de gestión JMX con los contadores del intérprete.
+ * Se registra en el servidor de MBeans de la plataforma como {@code lisp:type=Interprete}.
+ */
+public interface MetricasInterpreteMXBean {
+    /** @return las formas de nivel superior evaluadas */
+    long getFormasEvaluadas();
+
+    /** @return las llamadas a funciones definidas por el usuario */
+    long getLlamadasFunciones();
+
+    /** @return las llamadas a funciones incorporadas, por nombre de operador */
+    Map<String, Long> getLlamadasPrimitivas();
+
+    /** @return la proporción de números obtenidos de la tabla de números pequeños, sin crear una instancia */
+    double getTasaAciertosCacheNumeros();
+
+    /** @return los símbolos internados */
+    long getTamanoTablaSimbolos();
+
+    /** @return los contextos creados, sin contar los marcos reciclados */
+    long getContextosCreados();
+
+    /** @return los marcos de llamada reutilizados desde la reserva del hilo */
+    long getMarcosReciclados();
+
+    /** @return las formas leídas por el analizador */
+    long getFormasAnalizadas();
+
+    /** @return los caracteres leídos por el analizador */
+    long getCaracteresAnalizados();
+
+    /** @return los caracteres leídos por segundo de análisis */
+    double getCaracteresAnalizadosPorSegundo();
+
+    /** @return los errores de análisis y las formas de nivel superior que terminaron con error */
+    long getErrores();
+
+    /**
+     * Pone a cero todos los contadores.
+     */
+    void reiniciar();
+}
@@ -0,0 +1,408 @@
+package lisp;
+
+import Excepciones.ExcepcionLisp;
+
+import java.util.Set;
+
+/**
+ * Pasada de optimización que se aplica a las formas antes de evaluarlas.
+ * Pliega las llamadas a funciones incorporadas puras cuyos argumentos son constantes,
+ * simplifica las cláusulas de COND con condición constante y sustituye las constantes
+ * citadas con QUOTE por su valor. Las formas no se modifican: se devuelve una copia
+ * con las partes optimizadas, compartiendo lo que no cambia.
+ *
+ * Una llamada solo se pliega si el operador no está ligado localmente y, en el contexto
+ * de la forma, sigue enlazado a la propia función incorporada. En cuanto se ve una forma
+ * que reasigna con SET (o redefine con DEFUN o DEFMACRO) uno de esos símbolos, el
+ * optimizador se desactiva y las funciones vuelven a evaluar su cuerpo original.
+ * Los argumentos de las llamadas a macros no se optimizan, porque la macro los recibe
+ * como formas; tampoco los de las llamadas a operadores aún sin definir, que podrían
+ * definirse después como macros. Ligar una macro a un símbolo que ya era una función
+ * desactiva el optimizador, como una reasignación.
+ */
+final class Optimizador {
+    /**
+     * Evalúa una llamada a una función incorporada con argumentos constantes.
+     */
+    interface Evaluador {
+        ExpresionLisp evaluar(ExpresionLisp forma) throws ExcepcionLisp;
+    }
+
+    /** Funciones incorporadas sin efectos cuyo resultado depende solo de sus argumentos */
+    private static final Set<simbolo> PURAS = Set.of(
+            simbolo.SUMA, simbolo.SUMAR, simbolo.RESTA, simbolo.RESTAR,
+            simbolo.MULTIPLICA, simbolo.MULTIPLICAR, simbolo.DIVIDE, simbolo.DIVIDIR,
+            simbolo.MENOR, simbolo.MENOR_QUE, simbolo.MAYOR, simbolo.MAYOR_QUE,
+            simbolo.IGUAL, simbolo.ES_IGUAL_VALOR, simbolo.ES_IGUAL, simbolo.ES_IGUAL_REF,
+            simbolo.ES_ATOMO, simbolo.ES_LISTA, simbolo.LONGITUD_CADENA);
+
+    /** Evalúa las llamadas plegables */
+    private final Evaluador evaluador;
+
+    /** Indica si el optimizador sigue activo (ningún símbolo protegido se ha reasignado) */
+    private volatile boolean activo = true;
+
+    /**
+     * Crea un optimizador que pliega llamadas con el evaluador dado.
+     *
+     * @param evaluador el evaluador de las llamadas plegables
+     */
+    Optimizador(Evaluador evaluador) {
+        this.evaluador = evaluador;
+    }
+
+    /**
+     * Indica si el optimizador está activo.
+     *
+     * @return false si algún símbolo protegido se ha reasignado
+     */
+    boolean estaActivo() {
+        return activo;
+    }
+
+    /**
+     * Comprueba si reasignar un símbolo invalida las optimizaciones, y en ese caso
+     * desactiva el optimizador.
+     *
+     * @param sym el símbolo reasignado
+     */
+    void reasignado(simbolo sym) {
+        if (activo && esProtegido(sym)) {
+            activo = false;
+        }
+    }
+
+    /**
+     * Desactiva el optimizador, como si se hubiera reasignado un símbolo protegido.
+     */
+    void desactivar() {
+        activo = false;
+    }
+
+    /**
+     * Comprueba si ligar una macro a un símbolo invalida las optimizaciones, y en ese caso
+     * desactiva el optimizador: los argumentos de las llamadas a ese símbolo pueden estar
+     * ya optimizados en cuerpos de funciones definidas antes.
+     *
+     * @param sym el símbolo al que se liga la macro
+     * @param ctx el contexto donde se liga
+     */
+    void ligadaMacro(simbolo sym, contexto ctx) {
+        if (activo && esFuncion(ctx.buscar(sym))) {
+            activo = false;
+        }
+    }
+
+    /**
+     * Optimiza una forma de nivel superior.
+     *
+     * @param forma la forma a optimizar
+     * @param ctx el contexto en que se evaluará
+     * @return la forma optimizada, o la misma forma si no hay nada que optimizar
+     */
+    ExpresionLisp optimizar(ExpresionLisp forma, contexto ctx) {
+        if (!activo || forma.esAtomo()) {
+            return forma;
+        }
+        buscarReasignaciones(forma);
+        return activo ? optimizar(forma, ctx, simbolo.NULO) : forma;
+    }
+
+    /**
+     * Optimiza el cuerpo de una función, con sus parámetros ligados localmente.
+     *
+     * @param cuerpo el cuerpo de la función
+     * @param parametros la lista de parámetros
+     * @param ctx el contexto donde se define la función
+     * @return el cuerpo optimizado, o el mismo cuerpo si no hay nada que optimizar
+     */
+    ExpresionLisp optimizarCuerpo(ExpresionLisp cuerpo, ExpresionLisp parametros, contexto ctx) {
+        if (!activo || cuerpo.esAtomo()) {
+            return cuerpo;
+        }
+        buscarReasignaciones(cuerpo);
+        if (!activo) {
+            return cuerpo;
+        }
+        ExpresionLisp ligados = simbolo.NULO;
+        for (ExpresionLisp p = parametros; p instanceof par celda; p = celda.resto()) {
+            ligados = new par(celda.primero(), ligados);
+        }
+        return optimizar(cuerpo, ctx, ligados);
+    }
+
+    /**
+     * Optimiza una forma con los símbolos locales dados.
+     *
+     * @param forma la forma
+     * @param ctx el contexto de definición, para resolver los símbolos no locales
+     * @param ligados la lista de símbolos ligados localmente
+     * @return la forma optimizada
+     */
+    private ExpresionLisp optimizar(ExpresionLisp forma, contexto ctx, ExpresionLisp ligados) {
+        if (!(forma instanceof par lista) || !esListaPropia(forma)) {
+            return forma;
+        }
+        ExpresionLisp cabeza = lista.primero();
+        ExpresionLisp args = lista.resto();
+        if (!(cabeza instanceof simbolo op)) {
+            return optimizarElementos(forma, ctx, ligados);
+        }
+
+        // Las formas especiales se reconocen por el símbolo, como en Interprete.evaluar
+        if (op == simbolo.CITAR) {
+            if (args instanceof par arg && arg.resto() == simbolo.NULO
+                    && (arg.primero().esNumero() || arg.primero().esCadena())) {
+                return arg.primero();
+            }
+            return forma;
+        } else if (op == simbolo.DEFUN || op == simbolo.DEFMACRO) {
+            // El cuerpo se optimiza al definir la función o la macro
+            return forma;
+        } else if (op == simbolo.ASIGNAR) {
+            if (args instanceof par var && var.resto() instanceof par valor) {
+                ExpresionLisp nuevoValor = optimizarElementos(valor, ctx, ligados);
+                return nuevoValor == valor ? forma : new par(op, new par(var.primero(), nuevoValor));
+            }
+            return forma;
+        } else if (op == simbolo.CONDICIONAL) {
+            return optimizarCondicional(forma, ctx, ligados);
+        } else if (op == simbolo.ENLAZAR || op == simbolo.ENLAZAR_SECUENCIAL) {
+            return optimizarEnlace(forma, op == simbolo.ENLAZAR_SECUENCIAL, ctx, ligados);
+        } else if (op == simbolo.REPETIR || op == simbolo.PARA_CADA) {
+            return optimizarIteracion(forma, ctx, ligados);
+        } else if (op == simbolo.FUTURO || op == simbolo.PERFILAR || op == simbolo.MIENTRAS) {
+            return reconstruir(forma, op, optimizarElementos(args, ctx, ligados));
+        }
+
+        // Las macros reciben sus argumentos sin evaluar: se dejan tal como están escritos,
+        // también si el operador aún no está definido, porque podría definirse como macro
+        if (!estaLigado(op, ligados) && !esFuncion(ctx.buscar(op))) {
+            return forma;
+        }
+
+        // Aplicación: se optimizan los argumentos y, si es posible, se pliega la llamada
+        ExpresionLisp nuevosArgs = optimizarElementos(args, ctx, ligados);
+        if (PURAS.contains(op) && esIncorporada(op, ctx, ligados) && sonConstantes(nuevosArgs, ctx, ligados)) {
+            try {
+                return comoConstante(evaluador.evaluar(new par(op, nuevosArgs)));
+            } catch (ExcepcionLisp e) {
+                // El error se producirá, como siempre, al evaluar la forma
+            }
+        }
+        return reconstruir(forma, op, nuevosArgs);
+    }
+
+    /**
+     * Simplifica un COND: descarta las cláusulas con condición constante falsa y
+     * termina en la primera con condición constante verdadera.
+     */
+    private ExpresionLisp optimizarCondicional(ExpresionLisp forma, contexto ctx, ExpresionLisp ligados) {
+        ExpresionLisp[] clausulas = elementos(((par) forma).resto());
+        ExpresionLisp[] nuevas = new ExpresionLisp[clausulas.length];
+        int cantidad = 0;
+        for (ExpresionLisp clausula : clausulas) {
+            if (!(clausula instanceof par celda) || !(celda.resto() instanceof par resultado) || !esListaPropia(clausula)) {
+                return forma;
+            }
+            ExpresionLisp condicion = celda.primero() == simbolo.VERDADERO
+                    ? simbolo.VERDADERO : optimizar(celda.primero(), ctx, ligados);
+            boolean constante = condicion == simbolo.VERDADERO || sonConstantes(new par(condicion, simbolo.NULO), ctx, ligados);
+            if (constante && esFalso(condicion)) {
+                continue;
+            }
+            ExpresionLisp nuevoResultado = optimizar(resultado.primero(), ctx, ligados);
+            if (constante) {
+                if (cantidad == 0) {
+                    return nuevoResultado;
+                }
+                nuevas[cantidad++] = new par(simbolo.VERDADERO, new par(nuevoResultado, resultado.resto()));
+                break;
+            }
+            nuevas[cantidad++] = condicion == celda.primero() && nuevoResultado == resultado.primero()
+                    ? clausula : new par(condicion, new par(nuevoResultado, resultado.resto()));
+        }
+        if (cantidad == 0) {
+            return simbolo.NULO;
+        }
+        ExpresionLisp resultado = simbolo.NULO;
+        for (int i = cantidad - 1; i >= 0; i--) {
+            resultado = new par(nuevas[i], resultado);
+        }
+        return new par(simbolo.CONDICIONAL, resultado);
+    }
+
+    /**
+     * Optimiza un LET o LET*: los valores iniciales y el cuerpo, con las variables ligadas.
+     */
+    private ExpresionLisp optimizarEnlace(ExpresionLisp forma, boolean secuencial, contexto ctx, ExpresionLisp ligados) {
+        par lista = (par) forma;
+        if (!(lista.resto() instanceof par args) || !esListaPropia(args.primero())) {
+            return forma;
+        }
+        ExpresionLisp[] enlaces = elementos(args.primero());
+        ExpresionLisp interiores = ligados;
+        for (int i = 0; i < enlaces.length; i++) {
+            ExpresionLisp enlace = enlaces[i];
+            if (enlace instanceof simbolo var) {
+                interiores = new par(var, interiores);
+            } else if (enlace instanceof par celda && celda.primero() instanceof simbolo var && esListaPropia(enlace)) {
+                ExpresionLisp inicial = celda.resto();
+                if (inicial != simbolo.NULO) {
+                    enlaces[i] = new par(var, optimizarElementos(inicial, ctx, secuencial ? interiores : ligados));
+                }
+                interiores = new par(var, interiores);
+            } else {
+                return forma;
+            }
+        }
+        ExpresionLisp nuevosEnlaces = simbolo.NULO;
+        for (int i = enlaces.length - 1; i >= 0; i--) {
+            nuevosEnlaces = new par(enlaces[i], nuevosEnlaces);
+        }
+        return new par(lista.primero(), new par(nuevosEnlaces, optimizarElementos(args.resto(), ctx, interiores)));
+    }
+
+    /**
+     * Optimiza un DOTIMES o DOLIST: el valor de la especificación fuera del bucle y
+     * la forma de resultado y el cuerpo con la variable ligada.
+     */
+    private ExpresionLisp optimizarIteracion(ExpresionLisp forma, contexto ctx, ExpresionLisp ligados) {
+        par lista = (par) forma;
+        if (!(lista.resto() instanceof par args) || !(args.primero() instanceof par especificacion)
+                || !(especificacion.primero() instanceof simbolo var) || !(especificacion.resto() instanceof par valor)
+                || !esListaPropia(especificacion)) {
+            return forma;
+        }
+        ExpresionLisp interiores = new par(var, ligados);
+        ExpresionLisp nuevaEspecificacion = new par(var, new par(optimizar(valor.primero(), ctx, ligados),
+                optimizarElementos(valor.resto(), ctx, interiores)));
+        return new par(lista.primero(), new par(nuevaEspecificacion, optimizarElementos(args.resto(), ctx, interiores)));
+    }
+
+    /**
+     * Optimiza cada elemento de una lista propia, compartiendo la lista si ninguno cambia.
+     */
+    private ExpresionLisp optimizarElementos(ExpresionLisp lista, contexto ctx, ExpresionLisp ligados) {
+        if (!(lista instanceof par celda)) {
+            return lista;
+        }
+        ExpresionLisp primero = optimizar(celda.primero(), ctx, ligados);
+        ExpresionLisp resto = optimizarElementos(celda.resto(), ctx, ligados);
+        return primero == celda.primero() && resto == celda.resto() ? lista : new par(primero, resto);
+    }
+
+    /**
+     * Construye (op . args), o devuelve la forma original si args no cambió.
+     */
+    private static ExpresionLisp reconstruir(ExpresionLisp forma, simbolo op, ExpresionLisp args) {
+        return args == ((par) forma).resto() ? forma : new par(op, args);
+    }
+
+    /**
+     * Indica si un símbolo sigue enlazado a la función incorporada del mismo nombre.
+     */
+    private static boolean esIncorporada(simbolo op, contexto ctx, ExpresionLisp ligados) {
+        return !estaLigado(op, ligados) && ctx.buscar(op) == op;
+    }
+
+    /**
+     * Indica si el valor de un operador recibe sus argumentos evaluados: está definido
+     * y no es una macro.
+     */
+    private static boolean esFuncion(ExpresionLisp valor) {
+        return valor != null && !(valor instanceof macro);
+    }
+
+    /**
+     * Indica si un símbolo está ligado localmente.
+     */
+    private static boolean estaLigado(simbolo sym, ExpresionLisp ligados) {
+        for (ExpresionLisp l = ligados; l instanceof par celda; l = celda.resto()) {
+            if (celda.primero() == sym) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Indica si todas las formas de una lista se evalúan siempre al mismo valor.
+     */
+    private static boolean sonConstantes(ExpresionLisp formas, contexto ctx, ExpresionLisp ligados) {
+        for (ExpresionLisp l = formas; l instanceof par celda; l = celda.resto()) {
+            ExpresionLisp forma = celda.primero();
+            boolean constante = forma.esNumero() || forma.esCadena()
+                    || ((forma == simbolo.NULO || forma == simbolo.VERDADERO) && esIncorporada((simbolo) forma, ctx, ligados))
+                    || (forma instanceof par cita && cita.primero() == simbolo.CITAR
+                        && cita.resto() instanceof par arg && arg.resto() == simbolo.NULO);
+            if (!constante) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Indica si una forma constante se evalúa a NIL.
+     */
+    private static boolean esFalso(ExpresionLisp constante) {
+        return constante == simbolo.NULO
+                || (constante instanceof par cita && ((par) cita.resto()).primero() == simbolo.NULO);
+    }
+
+    /**
+     * Convierte el resultado de una llamada plegada en una forma que se evalúa a él.
+     */
+    private static ExpresionLisp comoConstante(ExpresionLisp valor) {
+        if (valor.esNumero() || valor.esCadena() || valor == simbolo.NULO || valor == simbolo.VERDADERO) {
+            return valor;
+        }
+        return new par(simbolo.CITAR, new par(valor, simbolo.NULO));
+    }
+
+    /**
+     * Desactiva el optimizador si la forma contiene un SET o DEFUN sobre un símbolo protegido.
+     */
+    private void buscarReasignaciones(ExpresionLisp forma) {
+        while (activo && forma instanceof par celda) {
+            ExpresionLisp cabeza = celda.primero();
+            if ((cabeza == simbolo.ASIGNAR || cabeza == simbolo.DEFUN || cabeza == simbolo.DEFMACRO)
+                    && celda.resto() instanceof par args) {
+                ExpresionLisp objetivo = args.primero() instanceof par cabecera ? cabecera.primero() : args.primero();
+                if (objetivo instanceof simbolo sym) {
+                    reasignado(sym);
+                }
+            }
+            buscarReasignaciones(cabeza);
+            forma = celda.resto();
+        }
+    }
+
+    /**
+     * Indica si un símbolo es una función plegable o una de las constantes T y NIL.
+     */
+    private static boolean esProtegido(simbolo sym) {
+        return PURAS.contains(sym) || sym == simbolo.NULO || sym == simbolo.VERDADERO;
+    }
+
+    private static boolean esListaPropia(ExpresionLisp lista) {
+        while (lista instanceof par celda) {
+            lista = celda.resto();
+        }
+        return lista == simbolo.NULO;
+    }
+
+    private static ExpresionLisp[] elementos(ExpresionLisp lista) {
+        int cantidad = 0;
+        for (ExpresionLisp l = lista; l instanceof par celda; l = celda.resto()) {
+            cantidad++;
+        }
+        ExpresionLisp[] resultado = new ExpresionLisp[cantidad];
+        int i = 0;
+        for (ExpresionLisp l = lista; l instanceof par celda; l = celda.resto()) {
+            resultado[i++] = celda.primero();
+        }
+        return resultado;
+    }
+}
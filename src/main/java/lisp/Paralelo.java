@@ -0,0 +1,196 @@
+package lisp;
+
+import Excepciones.ExcepcionLisp;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Operaciones paralelas sobre arreglos de expresiones, ejecutadas en un ForkJoinPool.
+ * El arreglo se divide en tramos contiguos que se procesan en paralelo y cuyos
+ * resultados se recomponen en el orden original. Los arreglos pequeños se procesan
+ * en el hilo que llama, sin pagar el coste de repartir el trabajo.
+ *
+ * <p>Las operaciones no deben escribir en estado compartido: el intérprete evalúa cada
+ * aplicación de una función LISP en su propia capa (ver contexto.abrirCapa), de modo
+ * que sus SET a variables globales no llegan al contexto de quien llama.</p>
+ */
+final class Paralelo {
+    /** Tamaño mínimo de un tramo; por debajo de este tamaño no se divide el trabajo */
+    static final int UMBRAL_SECUENCIAL = 64;
+
+    /** El grupo de hilos donde se ejecutan las tareas */
+    private static final ForkJoinPool grupo = ForkJoinPool.commonPool();
+
+    private Paralelo() {
+    }
+
+    /**
+     * Operación que transforma un elemento.
+     */
+    interface Operacion {
+        ExpresionLisp aplicar(ExpresionLisp elemento) throws ExcepcionLisp;
+    }
+
+    /**
+     * Operación que combina dos valores; debe ser asociativa.
+     */
+    interface Combinacion {
+        ExpresionLisp combinar(ExpresionLisp a, ExpresionLisp b) throws ExcepcionLisp;
+    }
+
+    /**
+     * Aplica una operación a cada elemento, en paralelo.
+     *
+     * @param elementos los elementos de entrada
+     * @param operacion la operación a aplicar
+     * @return un arreglo con los resultados, en el mismo orden que los elementos
+     * @throws ExcepcionLisp si la operación falla sobre algún elemento
+     */
+    static ExpresionLisp[] mapear(ExpresionLisp[] elementos, Operacion operacion) throws ExcepcionLisp {
+        ExpresionLisp[] resultados = new ExpresionLisp[elementos.length];
+        ejecutar(elementos.length, new Trabajo() {
+            @Override
+            public ExpresionLisp procesar(int desde, int hasta) throws ExcepcionLisp {
+                for (int i = desde; i < hasta; i++) {
+                    resultados[i] = operacion.aplicar(elementos[i]);
+                }
+                return null;
+            }
+
+            @Override
+            public ExpresionLisp unir(ExpresionLisp izquierda, ExpresionLisp derecha) {
+                return null;
+            }
+        });
+        return resultados;
+    }
+
+    /**
+     * Combina todos los elementos con una operación asociativa, en paralelo.
+     * Cada tramo se reduce por separado y los resultados parciales se combinan
+     * de izquierda a derecha, de modo que el orden de los operandos se conserva.
+     *
+     * @param elementos los elementos a combinar
+     * @param combinacion la operación asociativa
+     * @param inicial el valor con el que se combina el resultado por la izquierda
+     * @return el resultado de la reducción, o el valor inicial si no hay elementos
+     * @throws ExcepcionLisp si la operación falla
+     */
+    static ExpresionLisp reducir(ExpresionLisp[] elementos, Combinacion combinacion, ExpresionLisp inicial) throws ExcepcionLisp {
+        if (elementos.length == 0) {
+            return inicial;
+        }
+        ExpresionLisp total = ejecutar(elementos.length, new Trabajo() {
+            @Override
+            public ExpresionLisp procesar(int desde, int hasta) throws ExcepcionLisp {
+                ExpresionLisp acumulado = elementos[desde];
+                for (int i = desde + 1; i < hasta; i++) {
+                    acumulado = combinacion.combinar(acumulado, elementos[i]);
+                }
+                return acumulado;
+            }
+
+            @Override
+            public ExpresionLisp unir(ExpresionLisp izquierda, ExpresionLisp derecha) throws ExcepcionLisp {
+                return combinacion.combinar(izquierda, derecha);
+            }
+        });
+        return combinacion.combinar(inicial, total);
+    }
+
+    /**
+     * Calcula el tamaño de tramo para repartir el trabajo entre los hilos disponibles.
+     *
+     * @param cantidad el número de elementos
+     * @return el tamaño de tramo
+     */
+    private static int tamanoTramo(int cantidad) {
+        return Math.max(UMBRAL_SECUENCIAL, cantidad / (grupo.getParallelism() * 4));
+    }
+
+    /**
+     * Ejecuta un trabajo sobre el rango [0, cantidad): en el hilo actual si cabe en
+     * un tramo, o repartido en el grupo si no.
+     *
+     * @param cantidad el número de elementos
+     * @param trabajo el trabajo a ejecutar
+     * @return el resultado del trabajo
+     * @throws ExcepcionLisp si el trabajo falla
+     */
+    private static ExpresionLisp ejecutar(int cantidad, Trabajo trabajo) throws ExcepcionLisp {
+        int tramo = tamanoTramo(cantidad);
+        if (cantidad <= tramo) {
+            return trabajo.procesar(0, cantidad);
+        }
+        try {
+            return grupo.invoke(new Tarea(trabajo, 0, cantidad, tramo));
+        } catch (Fallo e) {
+            throw e.causa;
+        }
+    }
+
+    /**
+     * Trabajo divisible en rangos de índices.
+     */
+    private interface Trabajo {
+        /**
+         * Procesa secuencialmente el rango [desde, hasta).
+         */
+        ExpresionLisp procesar(int desde, int hasta) throws ExcepcionLisp;
+
+        /**
+         * Une los resultados de dos rangos contiguos, en orden.
+         */
+        ExpresionLisp unir(ExpresionLisp izquierda, ExpresionLisp derecha) throws ExcepcionLisp;
+    }
+
+    /**
+     * Tarea que divide un rango hasta el tamaño de tramo y une los resultados en orden.
+     */
+    private static final class Tarea extends RecursiveTask<ExpresionLisp> {
+        private static final long serialVersionUID = 1L;
+
+        private final transient Trabajo trabajo;
+        private final int desde;
+        private final int hasta;
+        private final int tramo;
+
+        Tarea(Trabajo trabajo, int desde, int hasta, int tramo) {
+            this.trabajo = trabajo;
+            this.desde = desde;
+            this.hasta = hasta;
+            this.tramo = tramo;
+        }
+
+        @Override
+        protected ExpresionLisp compute() {
+            try {
+                if (hasta - desde <= tramo) {
+                    return trabajo.procesar(desde, hasta);
+                }
+                int medio = (desde + hasta) >>> 1;
+                Tarea derecha = new Tarea(trabajo, medio, hasta, tramo);
+                derecha.fork();
+                ExpresionLisp izquierda = new Tarea(trabajo, desde, medio, tramo).compute();
+                return trabajo.unir(izquierda, derecha.join());
+            } catch (ExcepcionLisp e) {
+                throw new Fallo(e);
+            }
+        }
+    }
+
+    /**
+     * Transporta una ExcepcionLisp a través de los hilos del grupo.
+     */
+    private static final class Fallo extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final ExcepcionLisp causa;
+
+        Fallo(ExcepcionLisp causa) {
+            super(causa.getMessage(), causa, false, false);
+            this.causa = causa;
+        }
+    }
+}
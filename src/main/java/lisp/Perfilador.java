@@ -0,0 +1,179 @@
+package lisp;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Perfilador de llamadas a funciones definidas por el usuario.
+ * Registra, por función, el número de llamadas, el tiempo inclusivo y exclusivo, la
+ * profundidad máxima de recursión y los bytes asignados por el hilo durante la llamada.
+ * Un perfilador pertenece al hilo que lo crea; las llamadas hechas desde otros hilos
+ * (por ejemplo, en PMAP) no se registran. Sin perfilador, el intérprete no mide nada.
+ */
+public class Perfilador {
+    /** Acceso a la memoria asignada por hilo, o null si la JVM no lo permite */
+    private static final com.sun.management.ThreadMXBean hilos = obtenerHilos();
+
+    /** El hilo cuyas llamadas se registran */
+    final Thread hilo = Thread.currentThread();
+
+    /** Estadísticas por función, en orden de primera llamada */
+    private final Map<ExpresionLisp, Estadistica> estadisticas = new IdentityHashMap<>();
+
+    /** Llamadas en curso, de la más externa a la más interna */
+    private final List<Llamada> pila = new ArrayList<>();
+
+    /**
+     * Estadísticas acumuladas de una función.
+     */
+    public static final class Estadistica {
+        private final String nombre;
+        private long llamadas;
+        private long nanosInclusivos;
+        private long nanosExclusivos;
+        private long bytesAsignados;
+        private int profundidadActual;
+        private int profundidadMaxima;
+
+        private Estadistica(String nombre) {
+            this.nombre = nombre;
+        }
+
+        /** @return el nombre de la función */
+        public String obtenerNombre() {
+            return nombre;
+        }
+
+        /** @return el número de llamadas */
+        public long obtenerLlamadas() {
+            return llamadas;
+        }
+
+        /** @return el tiempo total dentro de la función, incluidas sus llamadas, en nanosegundos */
+        public long obtenerNanosInclusivos() {
+            return nanosInclusivos;
+        }
+
+        /** @return el tiempo total dentro de la función, sin sus llamadas, en nanosegundos */
+        public long obtenerNanosExclusivos() {
+            return nanosExclusivos;
+        }
+
+        /** @return los bytes asignados durante la función, incluidas sus llamadas */
+        public long obtenerBytesAsignados() {
+            return bytesAsignados;
+        }
+
+        /** @return la profundidad máxima de recursión de la función */
+        public int obtenerProfundidadMaxima() {
+            return profundidadMaxima;
+        }
+    }
+
+    /**
+     * Una llamada en curso.
+     */
+    private static final class Llamada {
+        private final Estadistica estadistica;
+        private final long inicio;
+        private final long bytesInicio;
+        private long nanosHijas;
+
+        private Llamada(Estadistica estadistica, long inicio, long bytesInicio) {
+            this.estadistica = estadistica;
+            this.inicio = inicio;
+            this.bytesInicio = bytesInicio;
+        }
+    }
+
+    /**
+     * Registra la entrada a una función.
+     *
+     * @param funcion la función llamada
+     * @param nombre el nombre de la función
+     */
+    void entrar(ExpresionLisp funcion, String nombre) {
+        Estadistica estadistica = estadisticas.computeIfAbsent(funcion, f -> new Estadistica(nombre));
+        estadistica.llamadas++;
+        estadistica.profundidadActual++;
+        estadistica.profundidadMaxima = Math.max(estadistica.profundidadMaxima, estadistica.profundidadActual);
+        pila.add(new Llamada(estadistica, System.nanoTime(), bytesAsignados()));
+    }
+
+    /**
+     * Registra la salida de la función más interna en curso.
+     */
+    void salir() {
+        long fin = System.nanoTime();
+        Llamada llamada = pila.remove(pila.size() - 1);
+        Estadistica estadistica = llamada.estadistica;
+        long inclusivo = fin - llamada.inicio;
+
+        estadistica.nanosExclusivos += inclusivo - llamada.nanosHijas;
+        estadistica.profundidadActual--;
+        // En recursión, el tiempo y la memoria inclusivos se cuentan solo en la llamada más externa
+        if (estadistica.profundidadActual == 0) {
+            estadistica.nanosInclusivos += inclusivo;
+            estadistica.bytesAsignados += bytesAsignados() - llamada.bytesInicio;
+        }
+        if (!pila.isEmpty()) {
+            pila.get(pila.size() - 1).nanosHijas += inclusivo;
+        }
+    }
+
+    /**
+     * Obtiene las estadísticas registradas, ordenadas por tiempo exclusivo descendente.
+     *
+     * @return la lista de estadísticas por función
+     */
+    public List<Estadistica> resultados() {
+        List<Estadistica> resultados = new ArrayList<>(estadisticas.values());
+        resultados.sort(Comparator.comparingLong(Estadistica::obtenerNanosExclusivos).reversed());
+        return resultados;
+    }
+
+    /**
+     * Imprime un informe tabulado de las estadísticas registradas.
+     *
+     * @param salida el flujo de salida donde se imprimirá el informe
+     */
+    public void imprimirInforme(PrintStream salida) {
+        salida.printf("%-24s %10s %12s %12s %8s %14s%n",
+                "Función", "Llamadas", "Incl. (ms)", "Excl. (ms)", "Prof.", "Bytes");
+        for (Estadistica e : resultados()) {
+            salida.printf("%-24s %10d %12.3f %12.3f %8d %14s%n",
+                    e.nombre, e.llamadas, e.nanosInclusivos / 1e6, e.nanosExclusivos / 1e6,
+                    e.profundidadMaxima, hilos == null ? "-" : Long.toString(e.bytesAsignados));
+        }
+    }
+
+    /**
+     * Obtiene los bytes asignados hasta ahora por el hilo actual.
+     *
+     * @return los bytes asignados, o 0 si la JVM no permite medirlos
+     */
+    private static long bytesAsignados() {
+        return hilos == null ? 0 : hilos.getCurrentThreadAllocatedBytes();
+    }
+
+    /**
+     * Obtiene el bean de hilos si permite medir la memoria asignada por hilo.
+     *
+     * @return el bean de hilos, o null si la medición no está disponible
+     */
+    private static com.sun.management.ThreadMXBean obtenerHilos() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean
+                && bean.isThreadAllocatedMemorySupported()) {
+            if (!bean.isThreadAllocatedMemoryEnabled()) {
+                bean.setThreadAllocatedMemoryEnabled(true);
+            }
+            return bean;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,176 @@
+package lisp;
+
+import Excepciones.ExcepcionLimite;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Presupuesto de una evaluación: número máximo de pasos, profundidad máxima de llamadas
+ * y plazo de tiempo, además de la posibilidad de cancelarla desde otro hilo.
+ * Cada paso solo decrementa un contador local; cada cierto número de pasos se toma una
+ * nueva porción de la reserva común de pasos y se consultan el reloj y la marca de
+ * cancelación. Sin presupuesto, el intérprete no hace ninguna de estas comprobaciones.
+ *
+ * <p>Las operaciones paralelas (PMAP, PFILTER, PREDUCE) y los futuros comparten el
+ * presupuesto de quien los crea: cada evaluación en paralelo recibe su propio objeto
+ * (ver porcion()), que toma sus pasos de la misma reserva, con una operación atómica por
+ * porción, y devuelve los que no usó al terminar. Así el total de pasos no supera el
+ * límite aunque las evaluaciones corran a la vez. TOUCH espera a un futuro como mucho
+ * hasta el plazo.</p>
+ */
+public class Presupuesto {
+    /** Valor que indica que un límite no se aplica */
+    public static final int SIN_LIMITE = 0;
+
+    /** Número de pasos de cada porción, y por tanto entre dos consultas del reloj y de la cancelación */
+    private static final int INTERVALO_REVISION = 1024;
+
+    /** Pasos aún no repartidos, comunes al presupuesto original y sus porciones */
+    private final AtomicLong reserva;
+    /**
+     * Pasos de la porción actual que quedan por consumir; solo los usa el hilo de la
+     * evaluación, que al agotarlos toma otra porción y revisa el reloj y la cancelación
+     */
+    private long porcion;
+    /** El presupuesto original, que guarda la marca de cancelación; él mismo si no es una porción */
+    private final Presupuesto original;
+    /** Profundidad máxima de llamadas, o SIN_LIMITE */
+    private final int profundidadMaxima;
+    /** Instante límite según System.nanoTime(), o SIN_LIMITE */
+    private final long plazoNanos;
+    /** Marca de cancelación, escrita desde cualquier hilo; solo se usa la del original */
+    private volatile boolean cancelado;
+
+    /**
+     * Crea un presupuesto. Un valor SIN_LIMITE (o negativo) desactiva el límite correspondiente.
+     * El plazo empieza a contar al crear el presupuesto.
+     *
+     * @param pasosMaximos número máximo de pasos de evaluación
+     * @param profundidadMaxima número máximo de llamadas a funciones anidadas
+     * @param plazoMilisegundos tiempo máximo de evaluación, en milisegundos
+     */
+    public Presupuesto(long pasosMaximos, int profundidadMaxima, long plazoMilisegundos) {
+        this.reserva = new AtomicLong(pasosMaximos > 0 ? pasosMaximos : Long.MAX_VALUE);
+        this.original = this;
+        this.profundidadMaxima = Math.max(profundidadMaxima, 0);
+        this.plazoNanos = plazoMilisegundos > 0
+                ? System.nanoTime() + plazoMilisegundos * 1_000_000L
+                : SIN_LIMITE;
+    }
+
+    /**
+     * Crea una porción de un presupuesto, con sus mismos límites y su misma reserva.
+     *
+     * @param original el presupuesto original
+     */
+    private Presupuesto(Presupuesto original) {
+        this.reserva = original.reserva;
+        this.original = original;
+        this.profundidadMaxima = original.profundidadMaxima;
+        this.plazoNanos = original.plazoNanos;
+    }
+
+    /**
+     * Crea el presupuesto de una evaluación que corre en paralelo con las que usan este.
+     * Los pasos de todas salen de la misma reserva, y cancelar cualquiera las cancela todas.
+     *
+     * @return un presupuesto para usar solo desde el hilo de la otra evaluación
+     */
+    Presupuesto porcion() {
+        return new Presupuesto(original);
+    }
+
+    /**
+     * Devuelve a la reserva los pasos de la porción actual que no se llegaron a consumir.
+     * Se llama cuando termina la evaluación que usa este presupuesto.
+     */
+    void devolver() {
+        if (porcion > 0) {
+            reserva.addAndGet(porcion);
+            porcion = 0;
+        }
+    }
+
+    /**
+     * Cancela la evaluación que usa este presupuesto. Puede llamarse desde cualquier hilo;
+     * la evaluación termina con ExcepcionLimite en su siguiente revisión.
+     */
+    public void cancelar() {
+        original.cancelado = true;
+    }
+
+    /**
+     * Indica si el presupuesto fue cancelado.
+     *
+     * @return true si se llamó a cancelar()
+     */
+    public boolean estaCancelado() {
+        return original.cancelado;
+    }
+
+    /**
+     * Consume un paso de evaluación.
+     *
+     * @throws ExcepcionLimite si se agotaron los pasos, venció el plazo o se canceló
+     */
+    void paso() throws ExcepcionLimite {
+        if (--porcion < 0) {
+            tomarPorcion();
+        }
+    }
+
+    /**
+     * Revisa el reloj y la cancelación y toma de la reserva la siguiente porción de pasos,
+     * que cuenta ya el paso en curso.
+     *
+     * @throws ExcepcionLimite si la reserva está vacía, venció el plazo o se canceló
+     */
+    private void tomarPorcion() throws ExcepcionLimite {
+        porcion = 0;
+        revisar();
+        long disponibles = reserva.getAndUpdate(r -> r - Math.min(r, INTERVALO_REVISION));
+        if (disponibles <= 0) {
+            throw new ExcepcionLimite("Límite de pasos de evaluación agotado");
+        }
+        porcion = Math.min(disponibles, INTERVALO_REVISION) - 1;
+    }
+
+    /**
+     * Comprueba la profundidad de una llamada a función.
+     *
+     * @param profundidad la profundidad de la llamada
+     * @throws ExcepcionLimite si supera la profundidad máxima
+     */
+    void verificarProfundidad(int profundidad) throws ExcepcionLimite {
+        if (profundidadMaxima != SIN_LIMITE && profundidad > profundidadMaxima) {
+            throw new ExcepcionLimite("Profundidad máxima de llamadas excedida: " + profundidadMaxima);
+        }
+    }
+
+    /**
+     * Calcula cuánto puede esperarse antes de volver a consultar el presupuesto.
+     *
+     * @param maximoNanos la espera máxima, en nanosegundos
+     * @return el menor entre maximoNanos y el tiempo que falta para el plazo, nunca negativo
+     */
+    long esperaPermitida(long maximoNanos) {
+        if (plazoNanos == SIN_LIMITE) {
+            return maximoNanos;
+        }
+        return Math.max(0, Math.min(maximoNanos, plazoNanos - System.nanoTime()));
+    }
+
+    /**
+     * Consulta la marca de cancelación y el reloj.
+     *
+     * @throws ExcepcionLimite si se canceló o venció el plazo
+     */
+    void revisar() throws ExcepcionLimite {
+        if (original.cancelado) {
+            throw new ExcepcionLimite("Evaluación cancelada");
+        }
+        if (plazoNanos != SIN_LIMITE && System.nanoTime() - plazoNanos > 0) {
+            throw new ExcepcionLimite("Plazo de evaluación vencido");
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package lisp;
+
+import Excepciones.ExcepcionLisp;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Servidor REPL de múltiples sesiones.
+ * Cada conexión se atiende en su propio hilo virtual con un intérprete independiente
+ * (su propio analizador y contexto de sesión). Todas las sesiones comparten el entorno
+ * sellado de funciones incorporadas, construido una sola vez por el proceso.
+ */
+public class ServidorRepl implements Closeable {
+    /** Puerto usado por defecto cuando no se indica otro */
+    public static final int PUERTO_POR_DEFECTO = 4321;
+
+    /** El socket que acepta las conexiones */
+    private final ServerSocket servidor;
+
+    /** El hilo que acepta conexiones, o null si el servidor no se ha iniciado */
+    private Thread aceptador;
+
+    /**
+     * Crea un servidor que escucha en la interfaz local en el puerto indicado.
+     *
+     * @param puerto el puerto a usar, o 0 para elegir uno libre
+     * @throws IOException si no se puede abrir el puerto
+     */
+    public ServidorRepl(int puerto) throws IOException {
+        this.servidor = new ServerSocket(puerto, 0, InetAddress.getLoopbackAddress());
+    }
+
+    /**
+     * Obtiene el puerto en el que escucha el servidor.
+     *
+     * @return el puerto local
+     */
+    public int obtenerPuerto() {
+        return servidor.getLocalPort();
+    }
+
+    /**
+     * Empieza a aceptar conexiones en segundo plano.
+     */
+    public synchronized void iniciar() {
+        if (aceptador == null) {
+            aceptador = Thread.ofVirtual().name("repl-aceptador").start(this::aceptarConexiones);
+        }
+    }
+
+    /**
+     * Acepta conexiones hasta que el servidor se cierra, lanzando una sesión por conexión.
+     */
+    private void aceptarConexiones() {
+        long sesiones = 0;
+        while (!servidor.isClosed()) {
+            try {
+                Socket conexion = servidor.accept();
+                Thread.ofVirtual().name("repl-sesion-" + ++sesiones).start(() -> atender(conexion));
+            } catch (SocketException e) {
+                break; // El servidor se cerró
+            } catch (IOException e) {
+                System.err.println("Error al aceptar conexión: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Ejecuta una sesión REPL sobre una conexión y la cierra al terminar.
+     *
+     * @param conexion la conexión del cliente
+     */
+    private void atender(Socket conexion) {
+        try (conexion) {
+            PrintStream salida = new PrintStream(conexion.getOutputStream(), true, StandardCharsets.UTF_8);
+            Interprete interprete = new Interprete(conexion.getInputStream(), salida);
+            interprete.repl();
+        } catch (ExcepcionLisp e) {
+            MetricasInterprete.errores.increment();
+            System.err.println("Error en la sesión: " + e.getMessage());
+        } catch (IOException e) {
+            System.err.println("Error en la sesión: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Cierra el servidor. Las sesiones abiertas continúan hasta que su cliente se desconecta.
+     *
+     * @throws IOException si hay un error al cerrar el socket
+     */
+    @Override
+    public void close() throws IOException {
+        servidor.close();
+    }
+
+    /**
+     * Método principal que inicia el servidor y espera indefinidamente.
+     *
+     * @param args opcionalmente, el puerto en el que escuchar
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int puerto = args.length > 0 ? Integer.parseInt(args[0]) : PUERTO_POR_DEFECTO;
+        ServidorRepl servidor = new ServidorRepl(puerto);
+        servidor.iniciar();
+        System.out.println("Servidor LISP escuchando en localhost:" + servidor.obtenerPuerto());
+        servidor.aceptador.join();
+    }
+}
@@ -4,6 +4,8 @@ import Excepciones.ExcepcionLisp;
 import Excepciones.ExcepcionSimbolo;
 
 import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Analizador sintáctico para expresiones LISP.
@@ -43,10 +45,46 @@ public class analizador {
     /**
      * Analiza una expresión LISP desde la entrada.
      *
+     * Cada forma completa se registra como evento JFR y en las métricas del intérprete;
+     * los errores de sintaxis se cuentan entre los errores.
+     *
      * @return La expresión S analizada, o null al final de la entrada
      * @throws ExcepcionLisp si hay un error de sintaxis
      */
     public ExpresionLisp analizar() throws ExcepcionLisp {
+        EventosJfr.Analisis evento = new EventosJfr.Analisis();
+        evento.begin();
+        long inicio = tokenizador.lector.caracteres;
+        long nanos = System.nanoTime();
+        ExpresionLisp expresion;
+        try {
+            expresion = analizarExpresion();
+        } catch (ExcepcionLisp e) {
+            MetricasInterprete.errores.increment();
+            throw e;
+        }
+        evento.end();
+        if (expresion != null) {
+            MetricasInterprete.formasAnalizadas.increment();
+            MetricasInterprete.caracteresAnalizados.add(tokenizador.lector.caracteres - inicio);
+            MetricasInterprete.nanosAnalisis.add(System.nanoTime() - nanos);
+        }
+        if (expresion != null && evento.shouldCommit()) {
+            evento.funcion = EventosJfr.nombreFuncion(expresion);
+            evento.forma = EventosJfr.prefijo(expresion);
+            evento.caracteres = tokenizador.lector.caracteres - inicio;
+            evento.commit();
+        }
+        return expresion;
+    }
+
+    /**
+     * Analiza la siguiente expresión LISP de la entrada.
+     *
+     * @return La expresión S analizada, o null al final de la entrada
+     * @throws ExcepcionLisp si hay un error de sintaxis
+     */
+    private ExpresionLisp analizarExpresion() throws ExcepcionLisp {
         String token = tokenizador.siguienteToken();
         if (token == null) {
             return null;
@@ -65,7 +103,7 @@ public class analizador {
         return switch (token) {
             case "(" -> analizarLista();
             case ")" -> throw new ExcepcionLisp("Paréntesis de cierre inesperado");
-            case "'" -> new par(simbolo.CITAR, new par(analizar(), simbolo.NULO));
+            case "'" -> new par(simbolo.CITAR, new par(analizarExpresion(), simbolo.NULO));
             case "\"" -> analizarCadena();
             default -> analizarAtomo(token);
         };
@@ -86,14 +124,7 @@ public class analizador {
             while ((c = tokenizador.lectorRaw().read()) != -1) {
                 char ch = (char) c;
                 if (escape) {
-                    switch (ch) {
-                        case 'n' -> sb.append('\n');
-                        case 't' -> sb.append('\t');
-                        case 'r' -> sb.append('\r');
-                        case '"' -> sb.append('"');
-                        case '\\' -> sb.append('\\');
-                        default -> sb.append(ch);
-                    }
+                    sb.append(caracterEscapado(ch));
                     escape = false;
                 } else if (ch == '\\') {
                     escape = true;
@@ -109,40 +140,65 @@ public class analizador {
         }
     }
 
+    /**
+     * Traduce el carácter que sigue a una barra invertida dentro de una cadena.
+     *
+     * @param ch el carácter escapado
+     * @return el carácter que representa
+     */
+    static char caracterEscapado(char ch) {
+        return switch (ch) {
+            case 'n' -> '\n';
+            case 't' -> '\t';
+            case 'r' -> '\r';
+            default -> ch;
+        };
+    }
+
     /**
      * Analiza una lista de expresiones LISP.
+     * Las formas de código se construyen con pares comunes: el evaluador las recorre con
+     * resto(), y una lista de arreglo crearía una vista por cada paso del recorrido.
      *
      * @return la expresión LISP que representa la lista
      * @throws ExcepcionLisp si hay un error de sintaxis
      */
     private ExpresionLisp analizarLista() throws ExcepcionLisp {
-        String token = tokenizador.siguienteToken();
-        if (token == null) {
-            throw new ExcepcionLisp("Fin de entrada inesperado, falta un paréntesis de cierre");
+        List<ExpresionLisp> elementos = new ArrayList<>();
+        ExpresionLisp cola = simbolo.NULO;
+        while (true) {
+            String token = tokenizador.siguienteToken();
+            if (token == null) {
+                throw new ExcepcionLisp("Fin de entrada inesperado, falta un paréntesis de cierre");
+            }
+            if (token.equals(")")) {
+                break;
+            }
+            if (token.equals(".") && !elementos.isEmpty()) {
+                cola = analizarExpresion();
+                token = tokenizador.siguienteToken();
+                if (token == null || !token.equals(")")) {
+                    throw new ExcepcionLisp("Se esperaba un paréntesis de cierre después del par punteado");
+                }
+                break;
+            }
+            elementos.add(analizarToken(token));
         }
-
-        if (token.equals(")")) {
-            return simbolo.NULO;
-        }
-
-        ExpresionLisp primero = analizarToken(token);
-        token = tokenizador.siguienteToken();
-        if (token == null) {
-            throw new ExcepcionLisp("Fin de entrada inesperado, falta un paréntesis de cierre");
+        ExpresionLisp lista = cola;
+        for (int i = elementos.size() - 1; i >= 0; i--) {
+            lista = new par(elementos.get(i), lista);
         }
+        return lista;
+    }
 
-        if (token.equals(".")) {
-            ExpresionLisp resto = analizar();
-            token = tokenizador.siguienteToken();
-            if (!token.equals(")")) {
-                throw new ExcepcionLisp("Se esperaba un paréntesis de cierre después del par punteado");
-            }
-            return new par(primero, resto);
-        } else {
-            tokenizador.devolver(token);
-            ExpresionLisp resto = analizarLista();
-            return new par(primero, resto);
-        }
+    /**
+     * Verifica si un carácter es un delimitador en la sintaxis LISP.
+     *
+     * @param c el carácter a verificar
+     * @return true si el carácter es un delimitador
+     */
+    static boolean esDelimitador(char c) {
+        return Character.isWhitespace(c) || c == '(' || c == ')' || c == '\'' || c == ';' || c == '"';
     }
 
     /**
@@ -152,7 +208,7 @@ public class analizador {
      * @return la expresión LISP que representa el átomo
      * @throws ExcepcionLisp si hay un error al crear el átomo
      */
-    private ExpresionLisp analizarAtomo(String token) throws ExcepcionLisp {
+    static ExpresionLisp analizarAtomo(String token) throws ExcepcionLisp {
         try {
             long valor = Long.parseLong(token);
             return numero.obtenerValor(valor);
@@ -170,7 +226,7 @@ public class analizador {
      */
     private static class Tokenizador {
         /** El lector que proporciona la entrada */
-        private final BufferedReader lector;
+        private final LectorContado lector;
         /** Token guardado para devolución */
         private String tokenDevuelto = null;
 
@@ -180,9 +236,7 @@ public class analizador {
          * @param lector el lector de entrada a utilizar
          */
         public Tokenizador(Reader lector) {
-            this.lector = lector instanceof BufferedReader ?
-                    (BufferedReader) lector :
-                    new BufferedReader(lector);
+            this.lector = new LectorContado(lector);
         }
 
         /**
@@ -262,15 +316,50 @@ public class analizador {
             }
             if (c != -1) lector.reset();
         }
+    }
 
-        /**
-         * Verifica si un carácter es un delimitador en la sintaxis LISP.
-         *
-         * @param c el carácter a verificar
-         * @return true si el carácter es un delimitador
-         */
-        private boolean esDelimitador(char c) {
-            return Character.isWhitespace(c) || c == '(' || c == ')' || c == '\'' || c == ';' || c == '"';
+    /**
+     * Lector con búfer que lleva la cuenta de los caracteres consumidos,
+     * descontando los que se devuelven con reset().
+     */
+    private static final class LectorContado extends BufferedReader {
+        /** Caracteres consumidos hasta ahora */
+        private long caracteres;
+        /** Caracteres consumidos al marcar la posición */
+        private long marca;
+
+        LectorContado(Reader lector) {
+            super(lector);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int c = super.read();
+            if (c != -1) {
+                caracteres++;
+            }
+            return c;
+        }
+
+        @Override
+        public String readLine() throws IOException {
+            String linea = super.readLine();
+            if (linea != null) {
+                caracteres += linea.length() + 1;
+            }
+            return linea;
+        }
+
+        @Override
+        public void mark(int limite) throws IOException {
+            super.mark(limite);
+            marca = caracteres;
+        }
+
+        @Override
+        public void reset() throws IOException {
+            super.reset();
+            caracteres = marca;
         }
     }
-}
\ No newline at end of file
+}
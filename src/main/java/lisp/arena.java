@@ -0,0 +1,265 @@
+package lisp;
+
+import Excepciones.ExcepcionLisp;
+
+import java.io.PrintStream;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Arena de celdas cons fuera del heap, para datos inmutables de gran tamaño.
+ * Cada celda ocupa dos palabras de 64 bits (primero y resto) en memoria reservada con la
+ * API de memoria externa de Java, de modo que el recolector de basura no la recorre. Cada
+ * palabra lleva una etiqueta en sus dos bits bajos:
+ * <ul>
+ *   <li>00: número entero de 62 bits, guardado en los bits altos</li>
+ *   <li>01: índice de otra celda de la arena</li>
+ *   <li>10: índice en la tabla de objetos del heap (símbolos, cadenas, números grandes...)</li>
+ *   <li>11: NIL</li>
+ * </ul>
+ * Las listas copiadas se leen a través de vistas parArena, que se comportan como par, de
+ * modo que CAR, CDR, EQUAL y el resto de funciones incorporadas las recorren sin cambios.
+ * La memoria se libera al cerrar la arena; leer una vista después lanza Cerrada.
+ * Las copias deben hacerse desde un solo hilo a la vez; las lecturas, desde cualquiera.
+ */
+public class arena extends atomo implements AutoCloseable {
+    /** Celdas por bloque de memoria (512 KiB por bloque) */
+    private static final int BITS_BLOQUE = 15;
+    private static final long MASCARA_BLOQUE = (1L << BITS_BLOQUE) - 1;
+
+    /** Etiquetas de las palabras */
+    private static final long ETIQUETA_NUMERO = 0;
+    private static final long ETIQUETA_CELDA = 1;
+    private static final long ETIQUETA_OBJETO = 2;
+    private static final long NIL = 3;
+
+    /** Límites de los enteros que caben en una palabra */
+    private static final long MINIMO_INMEDIATO = Long.MIN_VALUE >> 2;
+    private static final long MAXIMO_INMEDIATO = Long.MAX_VALUE >> 2;
+
+    private final Arena memoria = Arena.ofShared();
+
+    /** Bloques de celdas; se reemplaza el arreglo al crecer para que los lectores no se bloqueen */
+    private volatile MemorySegment[] bloques = new MemorySegment[0];
+
+    /** Cantidad de celdas usadas */
+    private long celdas;
+
+    /** Objetos del heap referenciados desde las celdas, e índice de cada uno */
+    private volatile ExpresionLisp[] objetos = new ExpresionLisp[16];
+    private int cantidadObjetos;
+    private final Map<ExpresionLisp, Integer> indiceObjetos = new IdentityHashMap<>();
+
+    private volatile boolean cerrada;
+
+    /**
+     * Copia una expresión en la arena.
+     * Las listas y árboles se copian en celdas de la arena, con los elementos de cada
+     * lista en celdas consecutivas; los átomos se devuelven sin copiar. Las celdas que ya
+     * están en esta arena no se vuelven a copiar.
+     *
+     * @param valor la expresión a copiar
+     * @return una vista sobre la copia, o el mismo átomo
+     * @throws ExcepcionLisp si la arena está cerrada
+     */
+    public synchronized ExpresionLisp copiar(ExpresionLisp valor) throws ExcepcionLisp {
+        if (cerrada) {
+            throw new ExcepcionLisp("La arena está cerrada");
+        }
+        if (!(valor instanceof par) || esPropia(valor)) {
+            return valor;
+        }
+        return new parArena(this, copiarLista((par) valor));
+    }
+
+    /**
+     * Copia la espina de una lista en celdas consecutivas.
+     *
+     * @param lista la primera celda de la lista
+     * @return el índice de la primera celda copiada
+     */
+    private long copiarLista(par lista) {
+        List<par> espina = new ArrayList<>();
+        ExpresionLisp actual = lista;
+        while (actual instanceof par celda && !esPropia(celda)) {
+            espina.add(celda);
+            actual = celda.resto();
+        }
+        long primera = reservar(espina.size());
+        long cola = codificar(actual);
+        for (int i = espina.size() - 1; i >= 0; i--) {
+            long celda = primera + i;
+            escribir(celda, 0, codificar(espina.get(i).primero()));
+            escribir(celda, 1, cola);
+            cola = (celda << 2) | ETIQUETA_CELDA;
+        }
+        return primera;
+    }
+
+    /**
+     * Codifica un valor como palabra etiquetada, copiando antes las listas.
+     */
+    private long codificar(ExpresionLisp valor) {
+        if (valor == simbolo.NULO) {
+            return NIL;
+        }
+        if (valor instanceof parArena vista && vista.arena == this) {
+            return (vista.celda << 2) | ETIQUETA_CELDA;
+        }
+        if (valor instanceof par lista) {
+            return (copiarLista(lista) << 2) | ETIQUETA_CELDA;
+        }
+        if (valor instanceof numero n && n.obtenerValor() >= MINIMO_INMEDIATO && n.obtenerValor() <= MAXIMO_INMEDIATO) {
+            return n.obtenerValor() << 2;
+        }
+        Integer indice = indiceObjetos.get(valor);
+        if (indice == null) {
+            indice = cantidadObjetos;
+            if (indice == objetos.length) {
+                objetos = Arrays.copyOf(objetos, indice * 2);
+            }
+            objetos[indice] = valor;
+            cantidadObjetos++;
+            indiceObjetos.put(valor, indice);
+        }
+        return ((long) indice << 2) | ETIQUETA_OBJETO;
+    }
+
+    /**
+     * Decodifica una palabra etiquetada.
+     */
+    private ExpresionLisp decodificar(long palabra) {
+        long etiqueta = palabra & 3;
+        if (etiqueta == ETIQUETA_NUMERO) {
+            return numero.obtenerValor(palabra >> 2);
+        }
+        if (etiqueta == ETIQUETA_CELDA) {
+            return new parArena(this, palabra >>> 2);
+        }
+        if (etiqueta == ETIQUETA_OBJETO) {
+            ExpresionLisp[] actuales = objetos;
+            int indice = (int) (palabra >>> 2);
+            if (indice >= actuales.length) {
+                throw new Cerrada();
+            }
+            return actuales[indice];
+        }
+        return simbolo.NULO;
+    }
+
+    /**
+     * Reserva celdas consecutivas, añadiendo bloques si hace falta.
+     *
+     * @param cantidad el número de celdas
+     * @return el índice de la primera celda reservada
+     */
+    private long reservar(int cantidad) {
+        long primera = celdas;
+        celdas += cantidad;
+        int necesarios = (int) ((celdas + MASCARA_BLOQUE) >>> BITS_BLOQUE);
+        if (necesarios > bloques.length) {
+            MemorySegment[] nuevos = Arrays.copyOf(bloques, necesarios);
+            for (int i = bloques.length; i < necesarios; i++) {
+                nuevos[i] = memoria.allocate((MASCARA_BLOQUE + 1) * 2 * Long.BYTES, Long.BYTES);
+            }
+            bloques = nuevos;
+        }
+        return primera;
+    }
+
+    private void escribir(long celda, int campo, long palabra) {
+        bloques[(int) (celda >>> BITS_BLOQUE)].setAtIndex(ValueLayout.JAVA_LONG, ((celda & MASCARA_BLOQUE) << 1) + campo, palabra);
+    }
+
+    /**
+     * Lee uno de los campos de una celda.
+     *
+     * @param celda el índice de la celda
+     * @param campo 0 para el primero, 1 para el resto
+     * @return el valor del campo
+     * @throws Cerrada si la arena está cerrada
+     */
+    ExpresionLisp leer(long celda, int campo) {
+        MemorySegment[] actuales = bloques;
+        int bloque = (int) (celda >>> BITS_BLOQUE);
+        if (cerrada || bloque >= actuales.length) {
+            throw new Cerrada();
+        }
+        long palabra;
+        try {
+            palabra = actuales[bloque].getAtIndex(ValueLayout.JAVA_LONG, ((celda & MASCARA_BLOQUE) << 1) + campo);
+        } catch (IllegalStateException e) {
+            // La arena se cerró desde otro hilo durante la lectura
+            throw new Cerrada();
+        }
+        return decodificar(palabra);
+    }
+
+    /**
+     * Indica si una expresión es una vista sobre esta arena.
+     */
+    private boolean esPropia(ExpresionLisp valor) {
+        return valor instanceof parArena vista && vista.arena == this;
+    }
+
+    /**
+     * Obtiene la cantidad de celdas usadas.
+     *
+     * @return el número de celdas copiadas en la arena
+     */
+    public synchronized long cantidadCeldas() {
+        return celdas;
+    }
+
+    /**
+     * Indica si la arena ya se cerró.
+     *
+     * @return true si la memoria de la arena se liberó
+     */
+    public boolean estaCerrada() {
+        return cerrada;
+    }
+
+    /**
+     * Libera la memoria de la arena. Cerrar una arena cerrada no tiene efecto.
+     */
+    @Override
+    public synchronized void close() {
+        if (cerrada) {
+            return;
+        }
+        cerrada = true;
+        bloques = new MemorySegment[0];
+        objetos = new ExpresionLisp[0];
+        indiceObjetos.clear();
+        memoria.close();
+    }
+
+    /**
+     * Imprime la representación de la arena en el flujo de salida especificado.
+     *
+     * @param salida el flujo de salida donde se imprimirá la arena
+     */
+    @Override
+    public void imprimir(PrintStream salida) {
+        salida.print(cerrada ? "#<ARENA CERRADA>" : "#<ARENA " + cantidadCeldas() + ">");
+    }
+
+    /**
+     * Se lanza al leer una vista de una arena ya cerrada. El intérprete la convierte en
+     * ExcepcionLisp al terminar la forma de nivel superior.
+     */
+    public static final class Cerrada extends IllegalStateException {
+        private static final long serialVersionUID = 1L;
+
+        Cerrada() {
+            super("La arena está cerrada");
+        }
+    }
+}
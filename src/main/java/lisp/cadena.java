@@ -1,14 +1,22 @@
 package lisp;
 
 import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.List;
 
 /**
  * Representa un valor de cadena en el intérprete LISP.
  * Esta clase extiende atomo para manejar cadenas de texto como valores atómicos.
+ * Internamente el contenido puede ser un String plano, una cuerda (concatenación
+ * diferida de fragmentos) o una vista sobre parte de otra cadena. El contenido se
+ * aplana a un String una sola vez, la primera vez que se necesita su valor.
  */
 public class cadena extends atomo {
-    /** El valor de la cadena almacenada */
-    private final String valor;
+    /** Longitud a partir de la cual CONCAT construye una cuerda en lugar de copiar */
+    private static final int UMBRAL_CUERDA = 256;
+
+    /** El contenido de la cadena: String plano, Cuerda o Vista */
+    private CharSequence contenido;
 
     /**
      * Construye un nuevo objeto cadena con el valor especificado.
@@ -16,18 +24,99 @@ public class cadena extends atomo {
      * @param valor la cadena de texto a almacenar
      */
     public cadena(String valor) {
-        this.valor = valor;
+        this.contenido = valor;
+    }
+
+    /**
+     * Construye una cadena a partir de un contenido diferido (cuerda o vista).
+     *
+     * @param contenido el contenido de la cadena
+     */
+    private cadena(CharSequence contenido) {
+        this.contenido = contenido;
     }
 
     /**
      * Obtiene el valor de la cadena almacenada.
+     * Si el contenido es una cuerda o una vista, se aplana y se conserva el resultado.
      *
      * @return el valor de la cadena como String
      */
     public String obtenerValor() {
+        CharSequence actual = contenido;
+        if (actual instanceof String valor) {
+            return valor;
+        }
+        String valor = actual.toString();
+        contenido = valor;
         return valor;
     }
 
+    /**
+     * Obtiene la longitud de la cadena sin aplanar su contenido.
+     *
+     * @return el número de caracteres de la cadena
+     */
+    public int longitud() {
+        return contenido.length();
+    }
+
+    /**
+     * Concatena las representaciones textuales de varias expresiones.
+     * Las cadenas se toman sin comillas; el resto de expresiones se convierten con su
+     * representación impresa. Los resultados largos se construyen como cuerdas, de modo
+     * que acumular una cadena fragmento a fragmento no copia lo ya acumulado.
+     *
+     * @param partes las expresiones a concatenar
+     * @return una nueva cadena con el resultado
+     */
+    public static cadena concatenar(List<ExpresionLisp> partes) {
+        CharSequence[] fragmentos = new CharSequence[partes.size()];
+        long total = 0;
+        for (int i = 0; i < fragmentos.length; i++) {
+            ExpresionLisp parte = partes.get(i);
+            fragmentos[i] = parte.esCadena() ? ((cadena) parte).contenido : parte.toString();
+            total += fragmentos[i].length();
+        }
+
+        if (total < UMBRAL_CUERDA || total > Integer.MAX_VALUE) {
+            StringBuilder resultado = new StringBuilder((int) Math.min(total, Integer.MAX_VALUE));
+            for (CharSequence fragmento : fragmentos) {
+                resultado.append(fragmento);
+            }
+            return new cadena(resultado.toString());
+        }
+
+        CharSequence resultado = "";
+        for (CharSequence fragmento : fragmentos) {
+            if (fragmento.length() == 0) {
+                continue;
+            }
+            resultado = resultado.length() == 0 ? fragmento : new Cuerda(resultado, fragmento);
+        }
+        return new cadena(resultado);
+    }
+
+    /**
+     * Obtiene una subcadena sin copiar caracteres.
+     * El resultado es una vista sobre el contenido aplanado de esta cadena.
+     *
+     * @param inicio índice del primer carácter (inclusivo)
+     * @param fin índice final (exclusivo)
+     * @return una cadena que comparte los caracteres con esta
+     * @throws IndexOutOfBoundsException si los índices están fuera de rango
+     */
+    public cadena subcadena(int inicio, int fin) {
+        if (inicio < 0 || fin > longitud() || inicio > fin) {
+            throw new IndexOutOfBoundsException("Índices fuera de rango: " + inicio + ", " + fin);
+        }
+        CharSequence actual = contenido;
+        if (actual instanceof Vista vista) {
+            return new cadena(new Vista(vista.base, vista.inicio + inicio, vista.inicio + fin));
+        }
+        return new cadena(new Vista(obtenerValor(), inicio, fin));
+    }
+
     /**
      * Indica si esta expresión es una cadena.
      *
@@ -46,7 +135,7 @@ public class cadena extends atomo {
      */
     @Override
     public void imprimir(PrintStream salida) {
-        salida.print("\"" + valor + "\"");
+        salida.print("\"" + obtenerValor() + "\"");
     }
 
     /**
@@ -59,7 +148,7 @@ public class cadena extends atomo {
     public boolean equals(Object obj) {
         if (this == obj) return true;
         if (!(obj instanceof cadena)) return false;
-        return valor.equals(((cadena) obj).valor);
+        return obtenerValor().equals(((cadena) obj).obtenerValor());
     }
 
     /**
@@ -69,6 +158,126 @@ public class cadena extends atomo {
      */
     @Override
     public int hashCode() {
-        return valor.hashCode();
+        return obtenerValor().hashCode();
+    }
+
+    /**
+     * Concatenación diferida de dos fragmentos de texto.
+     * Se aplana de forma iterativa, por lo que admite cuerdas muy profundas.
+     */
+    private static final class Cuerda implements CharSequence {
+        private final CharSequence izquierda;
+        private final CharSequence derecha;
+        private final int longitud;
+
+        /**
+         * Construye una cuerda que representa izquierda seguida de derecha.
+         *
+         * @param izquierda el fragmento inicial
+         * @param derecha el fragmento final
+         */
+        Cuerda(CharSequence izquierda, CharSequence derecha) {
+            this.izquierda = izquierda;
+            this.derecha = derecha;
+            this.longitud = izquierda.length() + derecha.length();
+        }
+
+        @Override
+        public int length() {
+            return longitud;
+        }
+
+        @Override
+        public char charAt(int indice) {
+            CharSequence actual = this;
+            while (actual instanceof Cuerda cuerda) {
+                int longitudIzquierda = cuerda.izquierda.length();
+                if (indice < longitudIzquierda) {
+                    actual = cuerda.izquierda;
+                } else {
+                    indice -= longitudIzquierda;
+                    actual = cuerda.derecha;
+                }
+            }
+            return actual.charAt(indice);
+        }
+
+        @Override
+        public CharSequence subSequence(int inicio, int fin) {
+            return toString().substring(inicio, fin);
+        }
+
+        /**
+         * Aplana la cuerda copiando cada hoja exactamente una vez.
+         *
+         * @return el texto completo de la cuerda
+         */
+        @Override
+        public String toString() {
+            char[] destino = new char[longitud];
+            int posicion = 0;
+            ArrayDeque<CharSequence> pendientes = new ArrayDeque<>();
+            pendientes.push(this);
+            while (!pendientes.isEmpty()) {
+                CharSequence actual = pendientes.pop();
+                if (actual instanceof Cuerda cuerda) {
+                    pendientes.push(cuerda.derecha);
+                    pendientes.push(cuerda.izquierda);
+                } else if (actual instanceof String texto) {
+                    texto.getChars(0, texto.length(), destino, posicion);
+                    posicion += texto.length();
+                } else if (actual instanceof Vista vista) {
+                    vista.base.getChars(vista.inicio, vista.fin, destino, posicion);
+                    posicion += vista.length();
+                } else {
+                    for (int i = 0; i < actual.length(); i++) {
+                        destino[posicion++] = actual.charAt(i);
+                    }
+                }
+            }
+            return new String(destino);
+        }
+    }
+
+    /**
+     * Vista de solo lectura sobre un rango de un String, sin copiar sus caracteres.
+     */
+    private static final class Vista implements CharSequence {
+        private final String base;
+        private final int inicio;
+        private final int fin;
+
+        /**
+         * Construye una vista sobre base[inicio, fin).
+         *
+         * @param base el texto subyacente
+         * @param inicio índice inicial (inclusivo)
+         * @param fin índice final (exclusivo)
+         */
+        Vista(String base, int inicio, int fin) {
+            this.base = base;
+            this.inicio = inicio;
+            this.fin = fin;
+        }
+
+        @Override
+        public int length() {
+            return fin - inicio;
+        }
+
+        @Override
+        public char charAt(int indice) {
+            return base.charAt(inicio + indice);
+        }
+
+        @Override
+        public CharSequence subSequence(int desde, int hasta) {
+            return new Vista(base, inicio + desde, inicio + hasta);
+        }
+
+        @Override
+        public String toString() {
+            return base.substring(inicio, fin);
+        }
     }
-}
\ No newline at end of file
+}
@@ -3,16 +3,60 @@ package lisp;
 import Excepciones.ExcepcionAtomo;
 import Excepciones.ExcepcionContexto;
 
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Representa un contexto de ejecución en LISP que almacena asociaciones entre símbolos y valores.
  * Implementa el sistema de ámbitos léxicos.
  */
 public class contexto {
-    private final Map<simbolo, ExpresionLisp> enlaces;
-    private final contexto padre;
+    /** Número de enlaces a partir del cual un marco compacto pasa a usar un HashMap */
+    private static final int MAXIMO_COMPACTO = 8;
+
+    /** Enlaces del contexto, o null si el contexto es un marco compacto */
+    private Map<simbolo, ExpresionLisp> enlaces;
+    /** Símbolos de un marco compacto, en orden de definición */
+    private simbolo[] nombres;
+    /** Valores de un marco compacto, en la misma posición que su símbolo */
+    private ExpresionLisp[] valores;
+    /** Cantidad de enlaces ocupados en un marco compacto */
+    private int cantidad;
+    /** El contexto padre; solo cambia cuando un marco reciclado se reutiliza */
+    private contexto padre;
+    /** Indica si el contexto es de solo lectura y puede compartirse entre hilos */
+    private boolean sellado;
+    /**
+     * Indica si el contexto es el nivel superior de una evaluación que lanzó otras en
+     * paralelo (FUTURE, PMAP...): sus enlaces están en un ConcurrentHashMap y las demás
+     * evaluaciones lo leen, pero escriben en su propia capa, como en un contexto sellado
+     */
+    private volatile boolean compartido;
+    /** Presupuesto de la evaluación en curso en este contexto, o null si no hay límites */
+    Presupuesto presupuesto;
+    /** Profundidad de llamadas a funciones de la evaluación en curso en este contexto */
+    int profundidad;
+    /** Perfilador de la evaluación en curso en este contexto, o null si no se perfila */
+    Perfilador perfilador;
+    /**
+     * Nivel superior de la evaluación en curso: el contexto global del intérprete, o la
+     * capa del hilo si el contexto global está publicado. Las búsquedas lo consultan antes
+     * que el contexto sellado y SET escribe en él los enlaces globales; null si no hay.
+     */
+    contexto capa;
+    /** Indica si alguna función o macro conserva este contexto como cierre léxico */
+    private boolean capturado;
+    /**
+     * Indica si el contexto es el marco de un DOTIMES o DOLIST: SET solo escribe en él la
+     * variable del bucle y pasa las demás asignaciones al contexto que contiene el bucle
+     */
+    private boolean iteracion;
+
+    /** Marcos compactos liberados, disponibles para reutilizarse en el mismo hilo */
+    private static final ThreadLocal<ReservaMarcos> reservaMarcos = ThreadLocal.withInitial(ReservaMarcos::new);
 
     /**
      * Crea un contexto global (sin padre).
@@ -29,6 +73,213 @@ public class contexto {
     public contexto(contexto padre) {
         this.enlaces = new HashMap<>();
         this.padre = padre;
+        heredarEvaluacion(padre);
+        MetricasInterprete.contextos.increment();
+    }
+
+    /**
+     * Crea un marco compacto hijo del contexto padre, con espacio para la cantidad
+     * de enlaces indicada. Los enlaces se guardan en arreglos y se buscan de forma
+     * lineal, lo que para pocos símbolos es más barato que un HashMap.
+     *
+     * @param padre El contexto padre
+     * @param capacidad El número de enlaces previstos
+     */
+    public contexto(contexto padre, int capacidad) {
+        this.nombres = new simbolo[capacidad];
+        this.valores = new ExpresionLisp[capacidad];
+        this.padre = padre;
+        heredarEvaluacion(padre);
+        MetricasInterprete.contextos.increment();
+    }
+
+    /**
+     * Toma del padre el estado de la evaluación en curso (presupuesto, profundidad, perfilador y capa).
+     * Los marcos de llamada a función lo sustituyen luego por el de quien llama.
+     *
+     * @param padre El contexto padre, o null
+     */
+    private void heredarEvaluacion(contexto padre) {
+        if (padre != null) {
+            this.presupuesto = padre.presupuesto;
+            this.profundidad = padre.profundidad;
+            this.perfilador = padre.perfilador;
+            this.capa = padre.capa;
+        }
+    }
+
+    /**
+     * Crea el marco de un DOTIMES o DOLIST, hijo de este contexto. Las asignaciones con
+     * SET a símbolos que el marco no enlaza se hacen en el contexto que contiene el bucle,
+     * como si el cuerpo se evaluara en él.
+     *
+     * @return el marco del bucle
+     */
+    public contexto marcoIteracion() {
+        contexto marco = new contexto(this);
+        marco.iteracion = true;
+        return marco;
+    }
+
+    /**
+     * Sella el contexto: a partir de este momento no admite nuevos enlaces ni cambios.
+     * Un contexto sellado puede compartirse entre hilos como padre de otros contextos,
+     * siempre que se selle antes de publicarlo a esos hilos; las asignaciones a sus
+     * símbolos crean un enlace en la capa de la evaluación en curso.
+     */
+    public void sellar() {
+        sellado = true;
+    }
+
+    /**
+     * Indica si el contexto está sellado.
+     *
+     * @return true si el contexto es de solo lectura
+     */
+    public boolean estaSellado() {
+        return sellado;
+    }
+
+    /**
+     * Marca este contexto y sus ancestros como capturados por un cierre léxico, de modo
+     * que ninguno vuelva a la reserva de marcos al terminar su llamada.
+     */
+    public void capturar() {
+        for (contexto actual = this; actual != null && !actual.capturado; actual = actual.padre) {
+            actual.capturado = true;
+        }
+    }
+
+    /**
+     * Obtiene un marco compacto de la reserva del hilo actual, o crea uno nuevo si
+     * la reserva está vacía. El marco debe devolverse con liberarMarco() cuando la
+     * evaluación que lo usa termina y ninguna forma puede haberlo capturado.
+     *
+     * @param padre El contexto padre del marco
+     * @param capacidad El número de enlaces previstos
+     * @return Un marco compacto vacío
+     */
+    public static contexto obtenerMarco(contexto padre, int capacidad) {
+        ReservaMarcos reserva = reservaMarcos.get();
+        if (reserva.cantidad == 0) {
+            return new contexto(padre, capacidad);
+        }
+        contexto marco = reserva.marcos[--reserva.cantidad];
+        reserva.marcos[reserva.cantidad] = null;
+        MetricasInterprete.marcosReciclados.increment();
+        marco.padre = padre;
+        marco.heredarEvaluacion(padre);
+        if (marco.nombres.length < capacidad) {
+            marco.nombres = new simbolo[capacidad];
+            marco.valores = new ExpresionLisp[capacidad];
+        }
+        return marco;
+    }
+
+    /**
+     * Devuelve un marco obtenido con obtenerMarco() a la reserva del hilo actual.
+     * Los enlaces se borran para no retener valores más allá de la llamada.
+     *
+     * @param marco El marco a liberar
+     */
+    public static void liberarMarco(contexto marco) {
+        if (marco.enlaces != null || marco.capturado) {
+            // El marco pasó a usar un HashMap, o un cierre léxico lo conserva
+            return;
+        }
+        Arrays.fill(marco.nombres, 0, marco.cantidad, null);
+        Arrays.fill(marco.valores, 0, marco.cantidad, null);
+        marco.cantidad = 0;
+        marco.padre = null;
+        marco.presupuesto = null;
+        marco.perfilador = null;
+        marco.capa = null;
+
+        ReservaMarcos reserva = reservaMarcos.get();
+        if (reserva.cantidad < reserva.marcos.length) {
+            reserva.marcos[reserva.cantidad++] = marco;
+        }
+    }
+
+    /**
+     * Busca la posición de un símbolo en un marco compacto.
+     *
+     * @param simbolo El símbolo a buscar
+     * @return La posición del símbolo, o -1 si no está en el marco
+     */
+    private int posicion(simbolo simbolo) {
+        for (int i = 0; i < cantidad; i++) {
+            if (nombres[i] == simbolo) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Obtiene el contexto padre.
+     *
+     * @return el padre, o null si es un contexto raíz
+     */
+    contexto obtenerPadre() {
+        return padre;
+    }
+
+    /**
+     * Copia los enlaces definidos directamente en este contexto, sin los de sus ancestros.
+     *
+     * @return los enlaces locales, en orden de definición en los marcos compactos
+     */
+    Map<simbolo, ExpresionLisp> enlacesLocales() {
+        if (enlaces != null) {
+            return new LinkedHashMap<>(enlaces);
+        }
+        Map<simbolo, ExpresionLisp> copia = new LinkedHashMap<>();
+        for (int i = 0; i < cantidad; i++) {
+            copia.put(nombres[i], valores[i]);
+        }
+        return copia;
+    }
+
+    /**
+     * Busca el contexto más cercano (este o un ancestro) que enlaza el símbolo.
+     * Si la cadena llega a un contexto sellado o compartido sin pasar por la capa de la evaluación,
+     * la búsqueda sigue por la capa, cuyos enlaces ocultan a los del contexto sellado.
+     *
+     * @param simbolo El símbolo a buscar
+     * @return El contexto que contiene el enlace, o null si no está definido
+     */
+    private contexto contextoDe(simbolo simbolo) {
+        contexto pendiente = capa;
+        for (contexto actual = this; actual != null; actual = actual.padre) {
+            if (actual == pendiente) {
+                pendiente = null;
+            } else if (pendiente != null && (actual.sellado || actual.compartido)) {
+                actual = pendiente;
+                pendiente = null;
+            }
+            if (actual.enlaces == null) {
+                if (actual.posicion(simbolo) >= 0) {
+                    return actual;
+                }
+            } else if (actual.enlaces.containsKey(simbolo)) {
+                return actual;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Obtiene el valor de un símbolo enlazado directamente en este contexto.
+     *
+     * @param simbolo El símbolo a buscar
+     * @return El valor asociado al símbolo en este contexto
+     */
+    private ExpresionLisp valorLocal(simbolo simbolo) {
+        if (enlaces == null) {
+            return valores[posicion(simbolo)];
+        }
+        return enlaces.get(simbolo);
     }
 
     /**
@@ -43,13 +294,11 @@ public class contexto {
             throw new ExcepcionContexto("No se puede obtener un símbolo nulo");
         }
 
-        if (enlaces.containsKey(simbolo)) {
-            return enlaces.get(simbolo);
-        } else if (padre != null) {
-            return padre.obtener(simbolo);
-        } else {
+        contexto encontrado = contextoDe(simbolo);
+        if (encontrado == null) {
             throw new ExcepcionContexto("Símbolo no definido: " + simbolo.obtenerNombre());
         }
+        return encontrado.valorLocal(simbolo);
     }
 
     /**
@@ -63,13 +312,28 @@ public class contexto {
             return null;
         }
 
-        if (enlaces.containsKey(simbolo)) {
-            return enlaces.get(simbolo);
-        } else if (padre != null) {
-            return padre.buscar(simbolo);
-        } else {
-            return null;
+        contexto pendiente = capa;
+        for (contexto actual = this; actual != null; actual = actual.padre) {
+            if (actual == pendiente) {
+                pendiente = null;
+            } else if (pendiente != null && (actual.sellado || actual.compartido)) {
+                // Los enlaces globales de la evaluación están en su capa, delante del contexto sellado
+                actual = pendiente;
+                pendiente = null;
+            }
+            if (actual.enlaces == null) {
+                int i = actual.posicion(simbolo);
+                if (i >= 0) {
+                    return actual.valores[i];
+                }
+            } else {
+                ExpresionLisp valor = actual.enlaces.get(simbolo);
+                if (valor != null || actual.enlaces.containsKey(simbolo)) {
+                    return valor;
+                }
+            }
         }
+        return null;
     }
 
     /**
@@ -82,7 +346,39 @@ public class contexto {
         if (simbolo == null) {
             throw new IllegalArgumentException("No se puede establecer un símbolo nulo");
         }
-        enlaces.put(simbolo, valor);
+        if (sellado) {
+            throw new IllegalStateException("No se puede modificar un contexto sellado: " + simbolo.obtenerNombre());
+        }
+        if (enlaces != null) {
+            enlaces.put(simbolo, valor);
+            return;
+        }
+
+        int i = posicion(simbolo);
+        if (i >= 0) {
+            valores[i] = valor;
+            return;
+        }
+        if (cantidad == nombres.length) {
+            if (cantidad >= MAXIMO_COMPACTO) {
+                // Demasiados enlaces para búsqueda lineal: pasar a un HashMap
+                enlaces = new HashMap<>();
+                for (int j = 0; j < cantidad; j++) {
+                    enlaces.put(nombres[j], valores[j]);
+                }
+                nombres = null;
+                valores = null;
+                cantidad = 0;
+                enlaces.put(simbolo, valor);
+                return;
+            }
+            int nuevaCapacidad = Math.max(1, cantidad * 2);
+            nombres = Arrays.copyOf(nombres, nuevaCapacidad);
+            valores = Arrays.copyOf(valores, nuevaCapacidad);
+        }
+        nombres[cantidad] = simbolo;
+        valores[cantidad] = valor;
+        cantidad++;
     }
 
     /**
@@ -97,13 +393,145 @@ public class contexto {
             throw new ExcepcionContexto("No se puede actualizar un símbolo nulo");
         }
 
-        if (enlaces.containsKey(simbolo)) {
-            enlaces.put(simbolo, valor);
-        } else if (padre != null) {
-            padre.actualizar(simbolo, valor);
-        } else {
+        contexto encontrado = contextoDe(simbolo);
+        if (encontrado == null) {
             throw new ExcepcionContexto("Símbolo no definido: " + simbolo.obtenerNombre());
         }
+        destinoAsignacion(encontrado).establecer(simbolo, valor);
+    }
+
+    /**
+     * Asigna un valor a un símbolo con la semántica de SET: el enlace se define o se
+     * actualiza en este contexto. Los marcos de DOTIMES y DOLIST solo guardan su variable;
+     * el resto de asignaciones pasa al contexto que contiene el bucle. Un contexto sellado,
+     * o compartido por otra evaluación, no se modifica: el enlace se escribe en la capa de
+     * la evaluación.
+     *
+     * @param simbolo El símbolo a asignar
+     * @param valor El valor a asociar
+     */
+    public void asignar(simbolo simbolo, ExpresionLisp valor) {
+        if (simbolo == null) {
+            throw new IllegalArgumentException("No se puede asignar un símbolo nulo");
+        }
+
+        contexto destino = this;
+        while (destino.iteracion && destino.padre != null && !destino.enlaza(simbolo)) {
+            destino = destino.padre;
+        }
+        destinoAsignacion(destino).establecer(simbolo, valor);
+    }
+
+    /**
+     * Indica si el símbolo está enlazado directamente en este contexto.
+     *
+     * @param simbolo El símbolo a buscar
+     * @return true si este contexto, sin contar sus ancestros, enlaza el símbolo
+     */
+    private boolean enlaza(simbolo simbolo) {
+        return enlaces == null ? posicion(simbolo) >= 0 : enlaces.containsKey(simbolo);
+    }
+
+    /**
+     * Elige dónde escribir una asignación dirigida a un contexto.
+     *
+     * @param encontrado el contexto que enlaza el símbolo, o donde SET lo define
+     * @return el mismo contexto, o la capa de la evaluación (o este contexto, si no hay
+     *         capa) cuando el enlace está en un contexto que no puede modificarse
+     */
+    private contexto destinoAsignacion(contexto encontrado) {
+        if (!encontrado.sellado && (!encontrado.compartido || encontrado == capa)) {
+            return encontrado;
+        }
+        return capa != null ? capa : this;
+    }
+
+    /**
+     * Prepara el nivel superior de la evaluación en curso para que otros hilos lo lean
+     * mientras esta evaluación sigue escribiendo en él. Sus enlaces pasan a un
+     * ConcurrentHashMap una sola vez; las siguientes llamadas no copian nada. Debe
+     * llamarse en el hilo de la evaluación, antes de lanzar las demás.
+     *
+     * @return el nivel superior compartido: la capa, o el primer ancestro sellado si no hay capa
+     */
+    contexto compartirNivelSuperior() {
+        contexto superior = capa;
+        if (superior == null) {
+            superior = this;
+            while (!superior.sellado && superior.padre != null) {
+                superior = superior.padre;
+            }
+        }
+        if (!superior.sellado && !superior.compartido) {
+            superior.enlaces = new ConcurrentHashMap<>(superior.enlacesLocales());
+            superior.nombres = null;
+            superior.valores = null;
+            superior.cantidad = 0;
+            superior.compartido = true;
+        }
+        return superior;
+    }
+
+    /**
+     * Crea la capa de una evaluación que corre en paralelo con esta. La capa lee los
+     * enlaces del nivel superior compartido y guarda los que la evaluación asigne, de
+     * modo que sus SET a variables globales no llegan a las demás evaluaciones. Recibe una
+     * porción del presupuesto de este contexto y parte de su profundidad; al terminar la
+     * evaluación debe llamarse a cerrarCapa().
+     *
+     * @param superior el nivel superior obtenido con compartirNivelSuperior()
+     * @return la capa nueva, que es también el contexto donde evaluar
+     */
+    contexto abrirCapa(contexto superior) {
+        contexto nueva = new contexto(superior, 0);
+        nueva.presupuesto = presupuesto == null ? null : presupuesto.porcion();
+        nueva.profundidad = profundidad;
+        nueva.perfilador = perfilador;
+        nueva.capa = nueva;
+        return nueva;
+    }
+
+    /**
+     * Termina la evaluación de una capa creada con abrirCapa(): devuelve al presupuesto
+     * compartido los pasos que la capa tomó y no llegó a usar.
+     */
+    void cerrarCapa() {
+        if (presupuesto != null) {
+            presupuesto.devolver();
+        }
+    }
+
+    /**
+     * Crea una copia de los enlaces locales visibles desde este contexto, para evaluar
+     * una forma en otro hilo. Los contextos de la cadena hasta el nivel superior (marcos
+     * de llamada, LET...) se aplanan en un único contexto nuevo, hijo de la capa dada;
+     * el nivel superior no se copia, sino que se lee a través de la capa.
+     * Los cambios posteriores en este contexto no afectan a la copia, ni al revés.
+     *
+     * @param capaNueva la capa de la otra evaluación, creada con abrirCapa()
+     * @return un contexto independiente con los mismos enlaces visibles, o la propia capa
+     *         si este contexto es el nivel superior
+     */
+    contexto instantanea(contexto capaNueva) {
+        if (this == capa || sellado || compartido) {
+            // En el nivel superior no hay enlaces locales: se evalúa directamente en la capa
+            return capaNueva;
+        }
+        contexto copia = new contexto(capaNueva);
+        for (contexto actual = this; actual != null && actual != capa && !actual.sellado && !actual.compartido;
+             actual = actual.padre) {
+            // Los enlaces interiores ocultan a los exteriores: solo se copia la primera aparición
+            if (actual.enlaces == null) {
+                for (int i = 0; i < actual.cantidad; i++) {
+                    copia.enlaces.putIfAbsent(actual.nombres[i], actual.valores[i]);
+                }
+            } else {
+                for (Map.Entry<simbolo, ExpresionLisp> enlace : actual.enlaces.entrySet()) {
+                    copia.enlaces.putIfAbsent(enlace.getKey(), enlace.getValue());
+                }
+            }
+        }
+        return copia;
     }
 
     /**
@@ -152,4 +580,15 @@ public class contexto {
 
         return nuevoContexto;
     }
+
+    /**
+     * Pila de marcos liberados de un hilo.
+     */
+    private static final class ReservaMarcos {
+        /** Máximo de marcos retenidos por hilo */
+        private static final int CAPACIDAD = 256;
+
+        private final contexto[] marcos = new contexto[CAPACIDAD];
+        private int cantidad;
+    }
 }
@@ -0,0 +1,131 @@
+package lisp;
+
+import Excepciones.ExcepcionLimite;
+import Excepciones.ExcepcionLisp;
+
+import java.io.PrintStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Representa el resultado de una evaluación asíncrona en el intérprete LISP.
+ * El cálculo se ejecuta en su propio hilo virtual; esperar() bloquea hasta que
+ * termina y devuelve su valor o propaga su error como ExcepcionLisp.
+ */
+public class futuro extends atomo {
+    /** Intervalo entre consultas del presupuesto durante una espera limitada */
+    private static final long INTERVALO_ESPERA = TimeUnit.MILLISECONDS.toNanos(10);
+
+    /** El resultado del cálculo, completado por el hilo virtual */
+    private final CompletableFuture<ExpresionLisp> resultado = new CompletableFuture<>();
+
+    /**
+     * Cálculo que se ejecuta de forma asíncrona.
+     */
+    public interface Calculo {
+        /**
+         * Realiza el cálculo.
+         *
+         * @return el valor calculado
+         * @throws ExcepcionLisp si el cálculo falla
+         */
+        ExpresionLisp calcular() throws ExcepcionLisp;
+    }
+
+    /**
+     * Constructor privado; los futuros se crean con iniciar().
+     */
+    private futuro() {
+    }
+
+    /**
+     * Inicia un cálculo en un nuevo hilo virtual.
+     *
+     * @param calculo el cálculo a ejecutar
+     * @return el futuro que recibirá el resultado del cálculo
+     */
+    public static futuro iniciar(Calculo calculo) {
+        futuro f = new futuro();
+        Thread.ofVirtual().name("lisp-futuro").start(() -> f.ejecutar(calculo));
+        return f;
+    }
+
+    /**
+     * Ejecuta el cálculo y guarda su valor o su error.
+     *
+     * @param calculo el cálculo a ejecutar
+     */
+    private void ejecutar(Calculo calculo) {
+        try {
+            resultado.complete(calculo.calcular());
+        } catch (Throwable t) {
+            resultado.completeExceptionally(t);
+        }
+    }
+
+    /**
+     * Espera a que el cálculo termine.
+     *
+     * @return el valor calculado
+     * @throws ExcepcionLisp si el cálculo falló o la espera fue interrumpida
+     */
+    public ExpresionLisp esperar() throws ExcepcionLisp {
+        return esperar(null);
+    }
+
+    /**
+     * Espera a que el cálculo termine sin exceder un presupuesto: la espera se corta
+     * al vencer el plazo o al cancelarse el presupuesto. El cálculo sigue en curso y
+     * puede esperarse de nuevo.
+     *
+     * @param presupuesto el presupuesto de quien espera, o null para esperar sin límite
+     * @return el valor calculado
+     * @throws ExcepcionLimite si se agota el presupuesto de quien espera o el del cálculo
+     * @throws ExcepcionLisp si el cálculo falló o la espera fue interrumpida
+     */
+    public ExpresionLisp esperar(Presupuesto presupuesto) throws ExcepcionLisp {
+        try {
+            if (presupuesto == null) {
+                return resultado.get();
+            }
+            while (true) {
+                presupuesto.revisar();
+                try {
+                    return resultado.get(presupuesto.esperaPermitida(INTERVALO_ESPERA), TimeUnit.NANOSECONDS);
+                } catch (TimeoutException e) {
+                    // Volver a consultar el plazo y la cancelación
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ExcepcionLisp("Espera de FUTURE interrumpida", e);
+        } catch (ExecutionException e) {
+            Throwable causa = e.getCause();
+            if (causa instanceof ExcepcionLimite limite) {
+                throw new ExcepcionLimite("Límite alcanzado en FUTURE: " + limite.getMessage(), limite);
+            }
+            throw new ExcepcionLisp("Error en FUTURE: " + causa.getMessage(), causa);
+        }
+    }
+
+    /**
+     * Indica si el cálculo ya terminó, con éxito o con error.
+     *
+     * @return true si el resultado está disponible
+     */
+    public boolean estaListo() {
+        return resultado.isDone();
+    }
+
+    /**
+     * Imprime la representación del futuro en el flujo de salida especificado.
+     *
+     * @param salida el flujo de salida donde se imprimirá el futuro
+     */
+    @Override
+    public void imprimir(PrintStream salida) {
+        salida.print(estaListo() ? "#<FUTURE listo>" : "#<FUTURE pendiente>");
+    }
+}
@@ -0,0 +1,144 @@
+package lisp;
+
+/**
+ * Lista representada con sus elementos contiguos en un arreglo (codificación CDR).
+ * Cada objeto es una vista desde una posición del arreglo hasta el final: primero() es
+ * el elemento en esa posición y resto() es otra vista una posición más adelante, o la
+ * cola de la lista al llegar al final (NIL en las listas propias). Como las listas son
+ * inmutables, el arreglo nunca cambia y varias vistas pueden compartirlo.
+ *
+ * <p>Frente a una cadena de pares, la lista ocupa la mitad de memoria, se recorre en
+ * orden de memoria y permite conocer su longitud y acceder a un elemento en tiempo
+ * constante. LIST, par.crearLista y las funciones que devuelven listas de datos (MAPCAR,
+ * PMAP...) las construyen así; CONS sigue creando un par que apunta a la lista. Los
+ * analizadores y el lector FASL no: el evaluador recorre el código con resto(), que en
+ * una lista de arreglo crea una vista en cada paso.</p>
+ */
+final class listaArreglo extends par {
+    /** Los elementos de la lista completa */
+    private final ExpresionLisp[] elementos;
+
+    /** Posición del primer elemento de esta vista */
+    private final int inicio;
+
+    /** Lo que sigue al último elemento: NIL, u otro valor en una lista punteada */
+    private final ExpresionLisp cola;
+
+    /**
+     * Construye una vista sobre un arreglo de elementos.
+     *
+     * @param elementos los elementos; el arreglo pasa a ser de la lista y no debe modificarse
+     * @param inicio la posición del primer elemento, menor que elementos.length
+     * @param cola lo que sigue al último elemento
+     */
+    private listaArreglo(ExpresionLisp[] elementos, int inicio, ExpresionLisp cola) {
+        this.elementos = elementos;
+        this.inicio = inicio;
+        this.cola = cola;
+    }
+
+    /**
+     * Crea una lista con los elementos dados, sin copiarlos.
+     *
+     * @param elementos los elementos; el arreglo pasa a ser de la lista y no debe modificarse
+     * @param cola lo que sigue al último elemento (NIL para una lista propia)
+     * @return la lista, o la cola si no hay elementos
+     */
+    static ExpresionLisp crear(ExpresionLisp[] elementos, ExpresionLisp cola) {
+        return elementos.length == 0 ? cola : new listaArreglo(elementos, 0, cola);
+    }
+
+    @Override
+    public ExpresionLisp primero() {
+        return elementos[inicio];
+    }
+
+    @Override
+    public ExpresionLisp resto() {
+        int siguiente = inicio + 1;
+        return siguiente < elementos.length ? new listaArreglo(elementos, siguiente, cola) : cola;
+    }
+
+    /**
+     * Verifica si la vista es una lista propia, mirando solo su cola.
+     *
+     * @return true si la lista termina en NIL
+     */
+    @Override
+    public boolean esLista() {
+        return cola == simbolo.NULO || (cola instanceof par resto && resto.esLista());
+    }
+
+    /**
+     * Calcula la longitud en tiempo constante cuando la lista termina en NIL.
+     *
+     * @return la longitud de la lista, o -1 si no es una lista propia
+     */
+    @Override
+    public int longitud() {
+        int propios = elementos.length - inicio;
+        if (cola == simbolo.NULO) {
+            return propios;
+        }
+        int restantes = cola instanceof par resto ? resto.longitud() : -1;
+        return restantes < 0 ? -1 : propios + restantes;
+    }
+
+    /**
+     * Obtiene un elemento por su posición, en tiempo constante dentro del arreglo.
+     *
+     * @param indice la posición del elemento, desde 0
+     * @return el elemento, o null si la lista tiene menos elementos
+     */
+    @Override
+    ExpresionLisp elemento(long indice) {
+        int propios = elementos.length - inicio;
+        if (indice < propios) {
+            return elementos[inicio + (int) indice];
+        }
+        return cola instanceof par resto ? resto.elemento(indice - propios) : null;
+    }
+
+    /**
+     * Copia los elementos de la vista en un arreglo nuevo.
+     *
+     * @return los elementos desde el inicio de la vista, o null si la lista no es propia
+     */
+    @Override
+    ExpresionLisp[] copiarElementos() {
+        if (cola != simbolo.NULO) {
+            return super.copiarElementos();
+        }
+        ExpresionLisp[] copia = new ExpresionLisp[elementos.length - inicio];
+        System.arraycopy(elementos, inicio, copia, 0, copia.length);
+        return copia;
+    }
+
+    /**
+     * Obtiene la cantidad de elementos guardados en el arreglo desde esta vista.
+     *
+     * @return los elementos antes de la cola
+     */
+    int cantidadPropia() {
+        return elementos.length - inicio;
+    }
+
+    /**
+     * Obtiene lo que sigue al último elemento del arreglo.
+     *
+     * @return NIL, u otro valor en una lista punteada
+     */
+    ExpresionLisp cola() {
+        return cola;
+    }
+
+    @Override
+    boolean esMismaCelda(par otra) {
+        return otra instanceof listaArreglo lista && lista.elementos == elementos && lista.inicio == inicio;
+    }
+
+    @Override
+    Celda claveCelda() {
+        return new Celda(elementos, inicio);
+    }
+}
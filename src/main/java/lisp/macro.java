@@ -0,0 +1,94 @@
+package lisp;
+
+import java.io.PrintStream;
+
+/**
+ * Representa una macro definida con DEFMACRO en el intérprete LISP.
+ * Una macro es una función que recibe las formas de sus argumentos sin evaluar y
+ * devuelve la forma que se evalúa en su lugar (su expansión). Cada llamada a la macro
+ * se expande una sola vez: la expansión se guarda en la propia forma de la llamada y
+ * se reutiliza mientras el símbolo siga enlazado a la misma macro.
+ */
+public class macro extends atomo {
+    /** El nombre con que se definió la macro */
+    private final String nombre;
+
+    /** La función que calcula la expansión a partir de las formas de los argumentos */
+    private final ExpresionLisp expansor;
+
+    /**
+     * Construye una macro.
+     *
+     * @param nombre el nombre de la macro
+     * @param expansor la función que calcula la expansión
+     */
+    public macro(String nombre, ExpresionLisp expansor) {
+        this.nombre = nombre;
+        this.expansor = expansor;
+    }
+
+    /**
+     * Obtiene el nombre de la macro.
+     *
+     * @return el nombre con que se definió
+     */
+    public String obtenerNombre() {
+        return nombre;
+    }
+
+    /**
+     * Obtiene la función que calcula la expansión.
+     *
+     * @return el expansor de la macro
+     */
+    public ExpresionLisp obtenerExpansor() {
+        return expansor;
+    }
+
+    /**
+     * Obtiene la expansión guardada en una llamada, si la calculó esta macro.
+     *
+     * @param llamada la forma de la llamada
+     * @return la expansión guardada, o null si no hay o la calculó otra macro
+     */
+    ExpresionLisp expansionGuardada(par llamada) {
+        if (llamada.ranura instanceof Expansion expansion && expansion.macro == this) {
+            return expansion.forma;
+        }
+        return null;
+    }
+
+    /**
+     * Guarda en una llamada la expansión calculada por esta macro.
+     *
+     * @param llamada la forma de la llamada
+     * @param forma la expansión
+     */
+    void guardarExpansion(par llamada, ExpresionLisp forma) {
+        llamada.ranura = new Expansion(this, forma);
+    }
+
+    /**
+     * Imprime la representación de la macro en el flujo de salida especificado.
+     *
+     * @param salida el flujo de salida donde se imprimirá la macro
+     */
+    @Override
+    public void imprimir(PrintStream salida) {
+        salida.print("#<MACRO " + nombre + ">");
+    }
+
+    /**
+     * Expansión de una llamada, junto con la macro que la calculó. Al redefinir la macro
+     * el símbolo pasa a otra instancia y las expansiones guardadas dejan de coincidir.
+     */
+    private static final class Expansion {
+        private final macro macro;
+        private final ExpresionLisp forma;
+
+        Expansion(macro macro, ExpresionLisp forma) {
+            this.macro = macro;
+            this.forma = forma;
+        }
+    }
+}
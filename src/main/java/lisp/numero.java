@@ -1,17 +1,23 @@
 package lisp;
 
 import java.io.PrintStream;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.Map;
 
 /**
  * Representa un valor numérico en el intérprete LISP.
- * Esta clase implementa un sistema de caché para números frecuentemente utilizados
- * y extiende la clase atomo para manejar valores numéricos.
+ * Esta clase reutiliza las instancias de los números pequeños, los más frecuentes,
+ * y extiende la clase atomo para manejar valores numéricos. Los demás números se crean
+ * en cada operación y el recolector los libera cuando dejan de usarse; EQ los compara
+ * por valor, así que no hace falta internarlos.
  */
 public class numero extends atomo {
-    /** Caché de números para reutilización de instancias */
-    private static final Map<Long, numero> cacheNumeros = new ConcurrentHashMap<>();
+    /** Menor valor de la tabla de números pequeños */
+    private static final int MINIMO_PEQUENO = -128;
+
+    /** Mayor valor (exclusivo) de la tabla de números pequeños */
+    private static final int MAXIMO_PEQUENO = 1024;
+
+    /** Números pequeños precreados, accesibles sin crear un Long para la búsqueda */
+    private static final numero[] numerosPequenos = crearNumerosPequenos();
 
     /** Instancia constante que representa el número cero */
     public static final numero CERO = obtenerValor(0);
@@ -34,13 +40,31 @@ public class numero extends atomo {
 
     /**
      * Obtiene una instancia de número para el valor especificado.
-     * Utiliza un sistema de caché para reutilizar instancias de números comunes.
+     * Los números pequeños se toman de una tabla; los demás se crean sin internarlos.
      *
      * @param valor el valor numérico deseado
      * @return una instancia de número que representa el valor dado
      */
     public static numero obtenerValor(long valor) {
-        return cacheNumeros.computeIfAbsent(valor, numero::new);
+        if (valor >= MINIMO_PEQUENO && valor < MAXIMO_PEQUENO) {
+            MetricasInterprete.numerosReutilizados.increment();
+            return numerosPequenos[(int) valor - MINIMO_PEQUENO];
+        }
+        MetricasInterprete.numerosCreados.increment();
+        return new numero(valor);
+    }
+
+    /**
+     * Crea la tabla de números pequeños usada por obtenerValor().
+     *
+     * @return un arreglo con una instancia por cada valor del rango
+     */
+    private static numero[] crearNumerosPequenos() {
+        numero[] numeros = new numero[MAXIMO_PEQUENO - MINIMO_PEQUENO];
+        for (int i = 0; i < numeros.length; i++) {
+            numeros[i] = new numero(i + MINIMO_PEQUENO);
+        }
+        return numeros;
     }
 
     /**
@@ -72,6 +96,16 @@ public class numero extends atomo {
         salida.print(valor);
     }
 
+    /**
+     * Devuelve una representación en cadena del número.
+     *
+     * @return el valor numérico en base diez
+     */
+    @Override
+    public String toString() {
+        return Long.toString(valor);
+    }
+
     /**
      * Compara este número con otro objeto para determinar la igualdad.
      *
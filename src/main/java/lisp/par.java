@@ -7,7 +7,9 @@ import java.io.PrintStream;
 /**
  * Representa una celda cons (par) en LISP, que es el bloque básico de construcción para las listas.
  * Esta clase implementa la estructura de datos fundamental que permite crear listas enlazadas
- * y árboles de expresiones en LISP.
+ * y árboles de expresiones en LISP. Las subclases pueden ser vistas sobre otra representación
+ * de las celdas (por ejemplo, parArena); por eso los métodos de esta clase acceden a los
+ * elementos solo a través de primero() y resto().
  */
 public class par extends ExpresionLisp {
     /** El primer elemento del par */
@@ -16,6 +18,13 @@ public class par extends ExpresionLisp {
     /** El segundo elemento del par (resto de la lista) */
     private final ExpresionLisp resto;
 
+    /**
+     * Dato que el intérprete asocia a esta forma al evaluarla, como la expansión de una
+     * llamada a macro. Solo se guardan objetos inmutables, por lo que varios hilos pueden
+     * leerlo y reemplazarlo sin sincronización.
+     */
+    Object ranura;
+
     /**
      * Construye un nuevo par con los elementos especificados.
      *
@@ -27,6 +36,14 @@ public class par extends ExpresionLisp {
         this.resto = resto;
     }
 
+    /**
+     * Construye un par sin elementos propios, para las subclases que son vistas sobre
+     * otra representación y redefinen primero() y resto().
+     */
+    par() {
+        this(null, null);
+    }
+
     /**
      * Obtiene el primer elemento del par.
      *
@@ -54,11 +71,107 @@ public class par extends ExpresionLisp {
      * @return una nueva lista LISP que contiene los elementos especificados
      */
     public static ExpresionLisp crearLista(ExpresionLisp... elementos) {
-        ExpresionLisp resultado = simbolo.NULO;
-        for (int i = elementos.length - 1; i >= 0; i--) {
-            resultado = new par(elementos[i], resultado);
+        return listaArreglo.crear(elementos.clone(), simbolo.NULO);
+    }
+
+    /**
+     * Copia los elementos de una lista LISP propia en un arreglo.
+     *
+     * @param lista la lista a copiar (NIL o una cadena de pares terminada en NIL)
+     * @return un arreglo con los elementos de la lista, en orden
+     * @throws ExcepcionLisp si la expresión no es una lista propia
+     */
+    public static ExpresionLisp[] aArreglo(ExpresionLisp lista) throws ExcepcionLisp {
+        if (lista == simbolo.NULO) {
+            return new ExpresionLisp[0];
+        }
+        ExpresionLisp[] elementos = lista instanceof par p ? p.copiarElementos() : null;
+        if (elementos == null) {
+            throw new ExcepcionLisp("Se esperaba una lista propia: " + lista);
+        }
+        return elementos;
+    }
+
+    /**
+     * Copia los elementos de la lista que empieza en este par.
+     *
+     * @return un arreglo nuevo con los elementos, o null si no es una lista propia
+     */
+    ExpresionLisp[] copiarElementos() {
+        int longitud = longitud();
+        if (longitud < 0) {
+            return null;
+        }
+        ExpresionLisp[] elementos = new ExpresionLisp[longitud];
+        par actual = this;
+        for (int i = 0; i < longitud; i++) {
+            elementos[i] = actual.primero();
+            if (actual.resto() instanceof par siguiente) {
+                actual = siguiente;
+            }
+        }
+        return elementos;
+    }
+
+    /**
+     * Obtiene un elemento de la lista por su posición.
+     *
+     * @param indice la posición del elemento, desde 0
+     * @return el elemento, o null si la lista tiene menos elementos
+     */
+    ExpresionLisp elemento(long indice) {
+        ExpresionLisp actual = this;
+        while (indice > 0 && actual instanceof par celda) {
+            actual = celda.resto();
+            indice--;
         }
-        return resultado;
+        return actual instanceof par celda ? celda.primero() : null;
+    }
+
+    /**
+     * Indica si otro par designa la misma celda que este. Para los pares comunes es la
+     * identidad; las vistas (listaArreglo, parArena) la redefinen, porque dos vistas
+     * distintas pueden designar la misma celda.
+     *
+     * @param otra el otro par
+     * @return true si ambos designan la misma celda
+     */
+    boolean esMismaCelda(par otra) {
+        return this == otra;
+    }
+
+    /**
+     * Identifica la celda que designa una vista, de modo que dos vistas de la misma celda
+     * den claves iguales (equals). Los pares comunes devuelven null: los identifica el
+     * propio objeto.
+     *
+     * @return la clave de la celda, o null si el par no es una vista
+     */
+    Celda claveCelda() {
+        return null;
+    }
+
+    /**
+     * Posición de una celda dentro del almacén que la guarda (el arreglo de una lista de
+     * arreglo o una arena). El almacén se compara por identidad.
+     *
+     * @param almacen el objeto que guarda la celda
+     * @param posicion la posición de la celda en el almacén
+     */
+    record Celda(Object almacen, long posicion) {
+    }
+
+    /**
+     * Compara dos expresiones por identidad, como EQ. Los números no se internan, así
+     * que se comparan por valor.
+     *
+     * @param a la primera expresión
+     * @param b la segunda expresión
+     * @return true si son el mismo objeto, vistas de la misma celda o números iguales
+     */
+    static boolean mismaCelda(ExpresionLisp a, ExpresionLisp b) {
+        return a == b || (a instanceof par x && b instanceof par y && x.esMismaCelda(y))
+                || (a instanceof numero x && b instanceof numero y && x.obtenerValor() == y.obtenerValor());
     }
 
     /**
@@ -109,9 +222,9 @@ public class par extends ExpresionLisp {
     @Override
     public void imprimir(PrintStream salida) {
         salida.print("(");
-        primero.imprimir(salida);
+        primero().imprimir(salida);
 
-        ExpresionLisp restoLista = resto;
+        ExpresionLisp restoLista = resto();
         while (!(restoLista.esAtomo()) && restoLista != simbolo.NULO) {
             salida.print(" ");
             try {
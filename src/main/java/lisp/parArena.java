@@ -0,0 +1,58 @@
+package lisp;
+
+/**
+ * Vista de una celda cons guardada en una arena fuera del heap.
+ * Se comporta como un par inmutable: primero() y resto() leen la celda de la arena y
+ * devuelven números, átomos u otras vistas. Las vistas son objetos ligeros y de vida
+ * corta; dos vistas de la misma celda son la misma lista para EQ.
+ */
+final class parArena extends par {
+    /** La arena que guarda la celda */
+    final arena arena;
+
+    /** El índice de la celda en la arena */
+    final long celda;
+
+    /**
+     * Construye una vista sobre una celda.
+     *
+     * @param arena la arena que guarda la celda
+     * @param celda el índice de la celda
+     */
+    parArena(arena arena, long celda) {
+        this.arena = arena;
+        this.celda = celda;
+    }
+
+    /**
+     * Obtiene el primer elemento de la celda.
+     *
+     * @return el primer elemento
+     * @throws arena.Cerrada si la arena está cerrada
+     */
+    @Override
+    public ExpresionLisp primero() {
+        return arena.leer(celda, 0);
+    }
+
+    /**
+     * Obtiene el resto de la celda.
+     *
+     * @return el resto de la lista
+     * @throws arena.Cerrada si la arena está cerrada
+     */
+    @Override
+    public ExpresionLisp resto() {
+        return arena.leer(celda, 1);
+    }
+
+    @Override
+    boolean esMismaCelda(par otra) {
+        return otra instanceof parArena vista && vista.arena == arena && vista.celda == celda;
+    }
+
+    @Override
+    Celda claveCelda() {
+        return new Celda(arena, celda);
+    }
+}
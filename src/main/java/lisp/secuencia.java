@@ -0,0 +1,226 @@
+package lisp;
+
+import Excepciones.ExcepcionLisp;
+
+import java.io.PrintStream;
+
+/**
+ * Secuencia perezosa en el intérprete LISP.
+ * Una secuencia no guarda sus elementos: describe cómo producirlos (un rango de números,
+ * o una transformación de otra secuencia o lista) y los genera uno a uno al recorrerla.
+ * Las transformaciones encadenadas se fusionan: cada elemento atraviesa toda la cadena
+ * antes de pedir el siguiente, sin construir listas intermedias, de modo que recorrer
+ * una secuencia de millones de elementos usa memoria constante.
+ *
+ * <p>Las secuencias son inmutables y pueden recorrerse varias veces; cada recorrido vuelve
+ * a generar los elementos. Las funciones de LAZY-MAP y LAZY-FILTER se aplican durante el
+ * recorrido, con el contexto de quien lo hace.</p>
+ */
+public class secuencia extends atomo {
+    /**
+     * Aplica una función LISP a un argumento; lo proporciona quien recorre la secuencia.
+     */
+    interface Aplicador {
+        ExpresionLisp aplicar(ExpresionLisp funcion, ExpresionLisp argumento) throws ExcepcionLisp;
+    }
+
+    /**
+     * Recorrido de una secuencia o lista.
+     */
+    interface Cursor {
+        /**
+         * Produce el siguiente elemento.
+         *
+         * @return el elemento, o null al terminar
+         * @throws ExcepcionLisp si falla la función que produce el elemento
+         */
+        ExpresionLisp siguiente() throws ExcepcionLisp;
+    }
+
+    /**
+     * Abre un recorrido de la secuencia.
+     */
+    private interface Fuente {
+        Cursor abrir(Aplicador aplicador) throws ExcepcionLisp;
+    }
+
+    /** Cómo producir los elementos */
+    private final Fuente fuente;
+
+    private secuencia(Fuente fuente) {
+        this.fuente = fuente;
+    }
+
+    /**
+     * Crea un rango de números. Si el paso es negativo, el rango desciende.
+     *
+     * @param inicio el primer número
+     * @param fin el límite (exclusivo), o null para un rango infinito
+     * @param paso la diferencia entre números consecutivos, distinta de cero
+     * @return la secuencia de números
+     * @throws ExcepcionLisp si el paso es cero
+     */
+    static secuencia rango(long inicio, Long fin, long paso) throws ExcepcionLisp {
+        if (paso == 0) {
+            throw new ExcepcionLisp("RANGE requiere un paso distinto de cero");
+        }
+        return new secuencia(aplicador -> new Cursor() {
+            private long actual = inicio;
+            private boolean agotado;
+
+            @Override
+            public ExpresionLisp siguiente() {
+                if (agotado || (fin != null && (paso > 0 ? actual >= fin : actual <= fin))) {
+                    return null;
+                }
+                long valor = actual;
+                // Un rango que alcanza el límite de long termina en lugar de desbordarse
+                agotado = paso > 0 ? valor > Long.MAX_VALUE - paso : valor < Long.MIN_VALUE - paso;
+                actual = valor + paso;
+                return numero.obtenerValor(valor);
+            }
+        });
+    }
+
+    /**
+     * Crea la secuencia de los resultados de aplicar una función a cada elemento.
+     *
+     * @param funcion la función a aplicar
+     * @param base la secuencia o lista de origen
+     * @return la secuencia transformada
+     * @throws ExcepcionLisp si la base no es una secuencia ni una lista
+     */
+    static secuencia mapear(ExpresionLisp funcion, ExpresionLisp base) throws ExcepcionLisp {
+        verificarRecorrible(base, "LAZY-MAP");
+        return new secuencia(aplicador -> {
+            Cursor origen = recorrer(base, aplicador);
+            return () -> {
+                ExpresionLisp elemento = origen.siguiente();
+                return elemento == null ? null : aplicador.aplicar(funcion, elemento);
+            };
+        });
+    }
+
+    /**
+     * Crea la secuencia de los elementos que cumplen un predicado.
+     *
+     * @param predicado la función que decide si se conserva cada elemento
+     * @param base la secuencia o lista de origen
+     * @return la secuencia filtrada
+     * @throws ExcepcionLisp si la base no es una secuencia ni una lista
+     */
+    static secuencia filtrar(ExpresionLisp predicado, ExpresionLisp base) throws ExcepcionLisp {
+        verificarRecorrible(base, "LAZY-FILTER");
+        return new secuencia(aplicador -> {
+            Cursor origen = recorrer(base, aplicador);
+            return () -> {
+                ExpresionLisp elemento;
+                while ((elemento = origen.siguiente()) != null) {
+                    if (aplicador.aplicar(predicado, elemento) != simbolo.NULO) {
+                        return elemento;
+                    }
+                }
+                return null;
+            };
+        });
+    }
+
+    /**
+     * Crea la secuencia de los primeros elementos de otra.
+     *
+     * @param cantidad el número máximo de elementos
+     * @param base la secuencia o lista de origen
+     * @return la secuencia truncada
+     * @throws ExcepcionLisp si la cantidad es negativa o la base no es recorrible
+     */
+    static secuencia tomar(long cantidad, ExpresionLisp base) throws ExcepcionLisp {
+        if (cantidad < 0) {
+            throw new ExcepcionLisp("TAKE requiere una cantidad no negativa");
+        }
+        verificarRecorrible(base, "TAKE");
+        return new secuencia(aplicador -> {
+            Cursor origen = recorrer(base, aplicador);
+            return new Cursor() {
+                private long restantes = cantidad;
+
+                @Override
+                public ExpresionLisp siguiente() throws ExcepcionLisp {
+                    if (restantes == 0) {
+                        return null;
+                    }
+                    restantes--;
+                    return origen.siguiente();
+                }
+            };
+        });
+    }
+
+    /**
+     * Abre un recorrido sobre una secuencia o una lista.
+     *
+     * @param valor la secuencia, la lista o NIL
+     * @param aplicador aplica las funciones de las transformaciones perezosas
+     * @return el cursor del recorrido
+     * @throws ExcepcionLisp si el valor no es una secuencia ni una lista
+     */
+    static Cursor recorrer(ExpresionLisp valor, Aplicador aplicador) throws ExcepcionLisp {
+        if (valor instanceof secuencia s) {
+            return s.fuente.abrir(aplicador);
+        }
+        if (valor != simbolo.NULO && !(valor instanceof par)) {
+            throw new ExcepcionLisp("Se esperaba una secuencia o una lista: " + valor);
+        }
+        return new Cursor() {
+            private ExpresionLisp actual = valor;
+            /** Posición dentro del arreglo cuando actual es una lista de arreglo */
+            private int indice;
+
+            @Override
+            public ExpresionLisp siguiente() throws ExcepcionLisp {
+                // Las listas de arreglo se recorren por índice, sin crear una vista por elemento
+                while (actual instanceof listaArreglo lista) {
+                    if (indice < lista.cantidadPropia()) {
+                        return lista.elemento(indice++);
+                    }
+                    actual = lista.cola();
+                    indice = 0;
+                }
+                if (!(actual instanceof par celda)) {
+                    if (actual != simbolo.NULO) {
+                        throw new ExcepcionLisp("Se esperaba una lista propia");
+                    }
+                    return null;
+                }
+                actual = celda.resto();
+                return celda.primero();
+            }
+        };
+    }
+
+    /**
+     * Indica si un valor puede recorrerse como secuencia.
+     *
+     * @param valor el valor
+     * @return true si es una secuencia, una lista o NIL
+     */
+    static boolean esRecorrible(ExpresionLisp valor) {
+        return valor instanceof secuencia || valor instanceof par || valor == simbolo.NULO;
+    }
+
+    private static void verificarRecorrible(ExpresionLisp valor, String operacion) throws ExcepcionLisp {
+        if (!esRecorrible(valor)) {
+            throw new ExcepcionLisp(operacion + " requiere una secuencia o una lista");
+        }
+    }
+
+    /**
+     * Imprime la representación de la secuencia en el flujo de salida especificado.
+     * Los elementos no se generan al imprimir.
+     *
+     * @param salida el flujo de salida donde se imprimirá la secuencia
+     */
+    @Override
+    public void imprimir(PrintStream salida) {
+        salida.print("#<SECUENCIA>");
+    }
+}
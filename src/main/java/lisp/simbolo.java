@@ -3,6 +3,8 @@ package lisp;
 import Excepciones.ExcepcionSimbolo;
 
 import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.Map;
 
@@ -36,8 +38,18 @@ public class simbolo extends atomo {
     public static final simbolo CITAR = inicializarSimbolo("QUOTE");
     public static final simbolo ASIGNAR = inicializarSimbolo("SET");
     public static final simbolo DEFUN = inicializarSimbolo("DEFUN");
+    public static final simbolo DEFMACRO = inicializarSimbolo("DEFMACRO");
     public static final simbolo CONDICIONAL = inicializarSimbolo("COND");
 
+    /** Formas especiales de enlace local */
+    public static final simbolo ENLAZAR = inicializarSimbolo("LET");
+    public static final simbolo ENLAZAR_SECUENCIAL = inicializarSimbolo("LET*");
+
+    /** Formas especiales de iteración */
+    public static final simbolo MIENTRAS = inicializarSimbolo("WHILE");
+    public static final simbolo REPETIR = inicializarSimbolo("DOTIMES");
+    public static final simbolo PARA_CADA = inicializarSimbolo("DOLIST");
+
     /** Funciones estándar */
     public static final simbolo PRIMERO = inicializarSimbolo("CAR");
     public static final simbolo RESTO = inicializarSimbolo("CDR");
@@ -48,10 +60,14 @@ public class simbolo extends atomo {
     public static final simbolo ES_IGUAL = inicializarSimbolo("EQUAL");
     public static final simbolo ES_LISTA = inicializarSimbolo("LIST?");
     public static final simbolo IMPRIMIR = inicializarSimbolo("PRINT");
+    public static final simbolo ENESIMO = inicializarSimbolo("NTH");
+    public static final simbolo MAPEAR = inicializarSimbolo("MAPCAR");
+    public static final simbolo FILTRAR = inicializarSimbolo("FILTER");
 
     /** Operaciones con cadenas */
     public static final simbolo CONCATENAR = inicializarSimbolo("CONCAT");
     public static final simbolo LONGITUD_CADENA = inicializarSimbolo("LENGTH");
+    public static final simbolo SUBCADENA = inicializarSimbolo("SUBSTRING");
 
     /** Operadores aritméticos */
     public static final simbolo SUMA = inicializarSimbolo("+");
@@ -71,6 +87,41 @@ public class simbolo extends atomo {
     public static final simbolo IGUAL = inicializarSimbolo("=");
     public static final simbolo ES_IGUAL_VALOR = inicializarSimbolo("EQUAL?");
 
+    /** Evaluación asíncrona */
+    public static final simbolo FUTURO = inicializarSimbolo("FUTURE");
+    public static final simbolo ESPERAR = inicializarSimbolo("TOUCH");
+
+    /** Perfilado de llamadas */
+    public static final simbolo PERFILAR = inicializarSimbolo("PROFILE");
+
+    /** Operaciones paralelas sobre listas */
+    public static final simbolo MAPEAR_PARALELO = inicializarSimbolo("PMAP");
+    public static final simbolo REDUCIR_PARALELO = inicializarSimbolo("PREDUCE");
+    public static final simbolo FILTRAR_PARALELO = inicializarSimbolo("PFILTER");
+
+    /** Operaciones con tablas hash */
+    public static final simbolo CREAR_HASH = inicializarSimbolo("MAKE-HASH");
+    public static final simbolo OBTENER_HASH = inicializarSimbolo("GETHASH");
+    public static final simbolo PONER_HASH = inicializarSimbolo("PUTHASH");
+    public static final simbolo QUITAR_HASH = inicializarSimbolo("REMHASH");
+    public static final simbolo CONTAR_HASH = inicializarSimbolo("HASH-COUNT");
+
+    /** Carga de archivos y código precompilado */
+    public static final simbolo COMPILAR_ARCHIVO = inicializarSimbolo("COMPILE-FILE");
+    public static final simbolo CARGAR = inicializarSimbolo("LOAD");
+
+    /** Arenas de celdas fuera del heap */
+    public static final simbolo CREAR_ARENA = inicializarSimbolo("MAKE-ARENA");
+    public static final simbolo COPIAR_ARENA = inicializarSimbolo("ARENA-COPY");
+    public static final simbolo CERRAR_ARENA = inicializarSimbolo("ARENA-CLOSE");
+
+    /** Secuencias perezosas */
+    public static final simbolo RANGO = inicializarSimbolo("RANGE");
+    public static final simbolo MAPEAR_PEREZOSO = inicializarSimbolo("LAZY-MAP");
+    public static final simbolo FILTRAR_PEREZOSO = inicializarSimbolo("LAZY-FILTER");
+    public static final simbolo TOMAR = inicializarSimbolo("TAKE");
+    public static final simbolo REDUCIR = inicializarSimbolo("REDUCE");
+
     /** El nombre del símbolo */
     private final String nombre;
 
@@ -97,6 +148,24 @@ public class simbolo extends atomo {
         return tablaSimbolo.computeIfAbsent(nombre.toUpperCase(), simbolo::new);
     }
 
+    /**
+     * Obtiene la cantidad de símbolos internados.
+     *
+     * @return el tamaño de la tabla de símbolos
+     */
+    static long tamanoTabla() {
+        return tablaSimbolo.size();
+    }
+
+    /**
+     * Obtiene una copia de todos los símbolos internados.
+     *
+     * @return los símbolos de la tabla
+     */
+    static List<simbolo> todos() {
+        return new ArrayList<>(tablaSimbolo.values());
+    }
+
     /**
      * Obtiene el nombre del símbolo.
      *
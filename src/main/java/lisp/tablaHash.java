@@ -0,0 +1,305 @@
+package lisp;
+
+import Excepciones.ExcepcionLisp;
+
+import java.io.PrintStream;
+
+/**
+ * Representa una tabla hash en el intérprete LISP.
+ * Utiliza direccionamiento abierto con sondeo lineal sobre dos arreglos paralelos
+ * (claves y valores), sin nodos intermedios por entrada. Los símbolos, al estar
+ * internados, se comparan por identidad; los números se comparan por su valor
+ * primitivo sin crear objetos envoltorio; las cadenas se comparan por contenido.
+ */
+public class tablaHash extends atomo {
+    /** Capacidad mínima de los arreglos internos (siempre potencia de dos) */
+    private static final int CAPACIDAD_MINIMA = 8;
+
+    /** Capacidad máxima de los arreglos internos, la mayor potencia de dos que cabe en un int */
+    private static final int CAPACIDAD_MAXIMA = 1 << 30;
+
+    /** Mayor número de entradas para el que se reserva espacio por adelantado; más allá la tabla crece al llenarse */
+    static final int ENTRADAS_INICIALES_MAXIMAS = 1 << 20;
+
+    /** Constante multiplicativa para el hash de Fibonacci */
+    private static final long DISPERSION = 0x9E3779B97F4A7C15L;
+
+    /** Claves almacenadas; null indica una ranura libre */
+    private ExpresionLisp[] claves;
+
+    /** Valores asociados a cada clave, en la misma posición */
+    private ExpresionLisp[] valores;
+
+    /** Cantidad de entradas ocupadas */
+    private int cantidad;
+
+    /** Número de bits usados para indexar los arreglos */
+    private int bits;
+
+    /**
+     * Construye una tabla hash vacía con la capacidad mínima.
+     */
+    public tablaHash() {
+        this(CAPACIDAD_MINIMA);
+    }
+
+    /**
+     * Construye una tabla hash vacía preparada para el número de entradas indicado,
+     * hasta ENTRADAS_INICIALES_MAXIMAS.
+     *
+     * @param entradasEsperadas número de entradas que se espera almacenar
+     */
+    public tablaHash(int entradasEsperadas) {
+        int entradas = Math.min(entradasEsperadas, ENTRADAS_INICIALES_MAXIMAS);
+        int capacidad = CAPACIDAD_MINIMA;
+        while (capacidad * 2 / 3 < entradas) {
+            capacidad <<= 1;
+        }
+        inicializar(capacidad);
+    }
+
+    /**
+     * Reserva los arreglos internos con la capacidad indicada.
+     *
+     * @param capacidad la nueva capacidad, potencia de dos
+     */
+    private void inicializar(int capacidad) {
+        this.claves = new ExpresionLisp[capacidad];
+        this.valores = new ExpresionLisp[capacidad];
+        this.bits = Integer.numberOfTrailingZeros(capacidad);
+        this.cantidad = 0;
+    }
+
+    /**
+     * Obtiene el valor asociado a una clave.
+     *
+     * @param clave la clave a buscar
+     * @return el valor asociado, o null si la clave no está en la tabla
+     * @throws ExcepcionLisp si el tipo de la clave no es soportado
+     */
+    public ExpresionLisp obtener(ExpresionLisp clave) throws ExcepcionLisp {
+        verificarClave(clave);
+        if (clave.esNumero()) {
+            return obtener(((numero) clave).obtenerValor());
+        }
+        int i = buscarRanura(clave, hashDe(clave));
+        return claves[i] == null ? null : valores[i];
+    }
+
+    /**
+     * Obtiene el valor asociado a una clave numérica sin crear un objeto numero.
+     *
+     * @param clave la clave numérica a buscar
+     * @return el valor asociado, o null si la clave no está en la tabla
+     */
+    public ExpresionLisp obtener(long clave) {
+        int mascara = claves.length - 1;
+        int i = indice(Long.hashCode(clave));
+        ExpresionLisp actual;
+        while ((actual = claves[i]) != null) {
+            if (actual.esNumero() && ((numero) actual).obtenerValor() == clave) {
+                return valores[i];
+            }
+            i = (i + 1) & mascara;
+        }
+        return null;
+    }
+
+    /**
+     * Asocia un valor a una clave, reemplazando el valor anterior si existía.
+     *
+     * @param clave la clave
+     * @param valor el valor a asociar
+     * @throws ExcepcionLisp si el tipo de la clave no es soportado o la tabla está llena
+     */
+    public void poner(ExpresionLisp clave, ExpresionLisp valor) throws ExcepcionLisp {
+        verificarClave(clave);
+        int i = buscarRanura(clave, hashDe(clave));
+        if (claves[i] != null) {
+            valores[i] = valor;
+            return;
+        }
+        if ((long) (cantidad + 1) * 3 > (long) claves.length * 2) {
+            if (claves.length == CAPACIDAD_MAXIMA) {
+                throw new ExcepcionLisp("La tabla hash alcanzó su capacidad máxima");
+            }
+            redimensionar(claves.length << 1);
+            i = buscarRanura(clave, hashDe(clave));
+        }
+        claves[i] = clave;
+        valores[i] = valor;
+        cantidad++;
+    }
+
+    /**
+     * Elimina la entrada asociada a una clave.
+     * Las entradas siguientes del mismo grupo se desplazan hacia atrás para
+     * no dejar marcas de borrado en la tabla.
+     *
+     * @param clave la clave a eliminar
+     * @return true si la clave estaba en la tabla
+     * @throws ExcepcionLisp si el tipo de la clave no es soportado
+     */
+    public boolean quitar(ExpresionLisp clave) throws ExcepcionLisp {
+        verificarClave(clave);
+        int hueco = buscarRanura(clave, hashDe(clave));
+        if (claves[hueco] == null) {
+            return false;
+        }
+
+        int mascara = claves.length - 1;
+        int i = hueco;
+        while (true) {
+            i = (i + 1) & mascara;
+            ExpresionLisp actual = claves[i];
+            if (actual == null) {
+                break;
+            }
+            int ideal = indice(hashDe(actual));
+            // Mover la entrada si su posición ideal no está entre el hueco y su posición actual
+            if (((i - ideal) & mascara) >= ((i - hueco) & mascara)) {
+                claves[hueco] = actual;
+                valores[hueco] = valores[i];
+                hueco = i;
+            }
+        }
+        claves[hueco] = null;
+        valores[hueco] = null;
+        cantidad--;
+        return true;
+    }
+
+    /**
+     * Obtiene la cantidad de entradas almacenadas.
+     *
+     * @return el número de entradas en la tabla
+     */
+    public int cantidad() {
+        return cantidad;
+    }
+
+    /**
+     * Copia las entradas de la tabla.
+     *
+     * @return un arreglo con cada clave seguida de su valor
+     */
+    ExpresionLisp[] entradas() {
+        ExpresionLisp[] resultado = new ExpresionLisp[cantidad * 2];
+        int j = 0;
+        for (int i = 0; i < claves.length; i++) {
+            if (claves[i] != null) {
+                resultado[j++] = claves[i];
+                resultado[j++] = valores[i];
+            }
+        }
+        return resultado;
+    }
+
+    /**
+     * Busca la ranura que contiene la clave o, si no está, la primera ranura libre de su grupo.
+     *
+     * @param clave la clave a buscar
+     * @param hash el hash de la clave
+     * @return el índice de la ranura encontrada
+     */
+    private int buscarRanura(ExpresionLisp clave, int hash) {
+        int mascara = claves.length - 1;
+        int i = indice(hash);
+        ExpresionLisp actual;
+        while ((actual = claves[i]) != null && !sonClavesIguales(actual, clave)) {
+            i = (i + 1) & mascara;
+        }
+        return i;
+    }
+
+    /**
+     * Reubica todas las entradas en arreglos de la capacidad indicada.
+     *
+     * @param capacidad la nueva capacidad, potencia de dos
+     */
+    private void redimensionar(int capacidad) {
+        ExpresionLisp[] clavesAnteriores = claves;
+        ExpresionLisp[] valoresAnteriores = valores;
+        int cantidadAnterior = cantidad;
+        inicializar(capacidad);
+
+        int mascara = capacidad - 1;
+        for (int j = 0; j < clavesAnteriores.length; j++) {
+            ExpresionLisp clave = clavesAnteriores[j];
+            if (clave != null) {
+                int i = indice(hashDe(clave));
+                while (claves[i] != null) {
+                    i = (i + 1) & mascara;
+                }
+                claves[i] = clave;
+                valores[i] = valoresAnteriores[j];
+            }
+        }
+        cantidad = cantidadAnterior;
+    }
+
+    /**
+     * Convierte un hash en un índice de los arreglos mediante hash de Fibonacci.
+     *
+     * @param hash el hash de la clave
+     * @return el índice inicial de sondeo
+     */
+    private int indice(int hash) {
+        return (int) ((hash * DISPERSION) >>> (64 - bits));
+    }
+
+    /**
+     * Calcula el hash de una clave según su tipo.
+     *
+     * @param clave la clave
+     * @return el hash de la clave
+     */
+    private static int hashDe(ExpresionLisp clave) {
+        if (clave.esSimbolo()) {
+            return System.identityHashCode(clave);
+        }
+        if (clave.esNumero()) {
+            return Long.hashCode(((numero) clave).obtenerValor());
+        }
+        return clave.hashCode();
+    }
+
+    /**
+     * Compara dos claves según las reglas de la tabla.
+     *
+     * @param a la clave almacenada
+     * @param b la clave buscada
+     * @return true si ambas claves son equivalentes
+     */
+    private static boolean sonClavesIguales(ExpresionLisp a, ExpresionLisp b) {
+        if (a == b) {
+            return true;
+        }
+        if (a.esNumero() && b.esNumero()) {
+            return ((numero) a).obtenerValor() == ((numero) b).obtenerValor();
+        }
+        return a.esCadena() && a.equals(b);
+    }
+
+    /**
+     * Verifica que una expresión pueda usarse como clave de una tabla hash.
+     *
+     * @param clave la clave a verificar
+     * @throws ExcepcionLisp si la clave no es un símbolo, número o cadena
+     */
+    private static void verificarClave(ExpresionLisp clave) throws ExcepcionLisp {
+        if (!clave.esSimbolo() && !clave.esNumero() && !clave.esCadena()) {
+            throw new ExcepcionLisp("Las claves de una tabla hash deben ser símbolos, números o cadenas: " + clave);
+        }
+    }
+
+    /**
+     * Imprime la representación de la tabla hash en el flujo de salida especificado.
+     *
+     * @param salida el flujo de salida donde se imprimirá la tabla
+     */
+    @Override
+    public void imprimir(PrintStream salida) {
+        salida.print("#<HASH " + cantidad + ">");
+    }
+}
@@ -2,6 +2,10 @@ import Excepciones.ExcepcionLisp;
 import lisp.*;
 import org.junit.jupiter.api.Test;
 import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 import static org.junit.jupiter.api.Assertions.*;
 
 class AnalizadorTest {
@@ -85,4 +89,43 @@ class AnalizadorTest {
         assertTrue(resultado instanceof par);
     }
 
-}
\ No newline at end of file
+    @Test
+    void testAnalizadorIncremental() throws ExcepcionLisp {
+        String programa = "(DEFUN (F X) (COND ((< X 1) \"a\\\"ñ\") (T '(X . -12)))) ; comentario\nSIMBOLO 42 'A (1 (2 3) . 4)";
+        List<String> esperadas = new ArrayList<>();
+        analizador lector = new analizador(new StringReader(programa));
+        ExpresionLisp forma;
+        while ((forma = lector.analizar()) != null) {
+            esperadas.add(forma.toString());
+        }
+        assertEquals(5, esperadas.size());
+
+        // Cortar la entrada en cualquier punto, también a mitad de un carácter UTF-8
+        byte[] bytes = programa.getBytes(StandardCharsets.UTF_8);
+        for (int corte = 0; corte <= bytes.length; corte++) {
+            List<String> formas = new ArrayList<>();
+            AnalizadorIncremental incremental = new AnalizadorIncremental(f -> formas.add(f.toString()));
+            incremental.alimentar(ByteBuffer.wrap(bytes, 0, corte));
+            incremental.alimentar(ByteBuffer.wrap(bytes, corte, bytes.length - corte));
+            incremental.terminar();
+            assertEquals(esperadas, formas, "corte en " + corte);
+        }
+
+        // Cada forma se entrega en cuanto se cierra
+        List<ExpresionLisp> recibidas = new ArrayList<>();
+        AnalizadorIncremental incremental = new AnalizadorIncremental(recibidas::add);
+        incremental.alimentar("(+ 1 (* 2");
+        assertTrue(recibidas.isEmpty());
+        assertTrue(incremental.enCurso());
+        incremental.alimentar(" 3)) (LIST");
+        assertEquals(1, recibidas.size());
+        assertEquals("(+ 1 (* 2 3))", recibidas.get(0).toString());
+
+        // Los errores de sintaxis descartan la forma en curso
+        assertThrows(ExcepcionLisp.class, incremental::terminar);
+        assertFalse(incremental.enCurso());
+        assertThrows(ExcepcionLisp.class, () -> incremental.alimentar(")"));
+        incremental.alimentar("\"sin cerrar");
+        assertThrows(ExcepcionLisp.class, incremental::terminar);
+    }
+}
@@ -0,0 +1,37 @@
+import lisp.*;
+import org.junit.jupiter.api.Test;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.*;
+
+class CadenaTest {
+    @Test
+    void testConcatenarAcumulado() {
+        cadena acumulado = new cadena("");
+        StringBuilder esperado = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            acumulado = cadena.concatenar(List.of(acumulado, new cadena("x"), numero.obtenerValor(i)));
+            esperado.append('x').append(i);
+        }
+        assertEquals(esperado.length(), acumulado.longitud());
+        assertEquals(esperado.toString(), acumulado.obtenerValor());
+    }
+
+    @Test
+    void testConcatenarSimbolosYListas() {
+        cadena resultado = cadena.concatenar(List.of(
+                new cadena("a"), simbolo.inicializarSimbolo("B"),
+                par.crearLista(numero.obtenerValor(1), numero.obtenerValor(2))));
+        assertEquals("aB(1 2)", resultado.obtenerValor());
+    }
+
+    @Test
+    void testSubcadena() {
+        cadena texto = new cadena("Hola Mundo");
+        cadena mundo = texto.subcadena(5, 10);
+        assertEquals(5, mundo.longitud());
+        assertEquals("Mundo", mundo.obtenerValor());
+        assertEquals("und", mundo.subcadena(1, 4).obtenerValor());
+        assertEquals(new cadena("Mundo"), mundo);
+        assertThrows(IndexOutOfBoundsException.class, () -> texto.subcadena(3, 11));
+    }
+}
@@ -36,4 +36,55 @@ public class ContextoTest {
         contexto nuevoCtx = ctx.extender(parametros, argumentos);
         assertEquals(arg, nuevoCtx.obtener(param));
     }
+
+    @Test
+    public void testAsignar() throws ExcepcionContexto {
+        contexto padre = new contexto();
+        simbolo existente = simbolo.inicializarSimbolo("X");
+        simbolo nuevo = simbolo.inicializarSimbolo("Y");
+        padre.establecer(existente, numero.obtenerValor(1));
+
+        contexto hijo = new contexto(padre);
+        hijo.asignar(existente, numero.obtenerValor(2));
+        hijo.asignar(nuevo, numero.obtenerValor(3));
+
+        assertEquals(numero.obtenerValor(1), padre.obtener(existente));
+        assertEquals(numero.obtenerValor(2), hijo.obtener(existente));
+        assertNull(padre.buscar(nuevo));
+        assertEquals(numero.obtenerValor(3), hijo.obtener(nuevo));
+    }
+
+    @Test
+    public void testAsignarEnMarcoIteracion() throws ExcepcionContexto {
+        contexto padre = new contexto();
+        simbolo variable = simbolo.inicializarSimbolo("I");
+        simbolo externo = simbolo.inicializarSimbolo("TOTAL");
+
+        contexto marco = padre.marcoIteracion();
+        marco.establecer(variable, numero.obtenerValor(0));
+        marco.asignar(variable, numero.obtenerValor(1));
+        marco.asignar(externo, numero.obtenerValor(2));
+
+        assertNull(padre.buscar(variable));
+        assertEquals(numero.obtenerValor(1), marco.obtener(variable));
+        assertEquals(numero.obtenerValor(2), padre.obtener(externo));
+    }
+
+    @Test
+    public void testMarcoCompacto() throws ExcepcionContexto {
+        contexto global = new contexto();
+        simbolo externo = simbolo.inicializarSimbolo("EXTERNO");
+        global.establecer(externo, numero.obtenerValor(0));
+
+        // Superar la capacidad inicial obliga a crecer y luego a pasar a un HashMap
+        contexto marco = new contexto(global, 1);
+        for (int i = 0; i < 20; i++) {
+            marco.establecer(simbolo.inicializarSimbolo("V" + i), numero.obtenerValor(i));
+        }
+        for (int i = 0; i < 20; i++) {
+            assertEquals(numero.obtenerValor(i), marco.obtener(simbolo.inicializarSimbolo("V" + i)));
+        }
+        assertEquals(numero.obtenerValor(0), marco.obtener(externo));
+        assertThrows(ExcepcionContexto.class, () -> marco.obtener(simbolo.inicializarSimbolo("NO-DEFINIDO")));
+    }
 }
\ No newline at end of file
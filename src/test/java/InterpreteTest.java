@@ -1,9 +1,24 @@
+import Excepciones.ExcepcionLimite;
 import Excepciones.ExcepcionLisp;
 import lisp.*;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 import static org.junit.jupiter.api.Assertions.*;
 
 class InterpreteTest {
@@ -80,5 +95,747 @@ class InterpreteTest {
         assertTrue(quoted instanceof par);
     }
 
+    @Test
+    void testTablasHash() throws ExcepcionLisp {
+        interprete.evaluar("(SET tabla (MAKE-HASH))");
+        interprete.evaluar("(PUTHASH 'a 1 tabla)");
+        interprete.evaluar("(PUTHASH 2 \"dos\" tabla)");
+        assertEquals(1, ((numero)interprete.evaluar("(GETHASH 'a tabla)")).obtenerValor());
+        assertEquals("dos", ((cadena)interprete.evaluar("(GETHASH 2 tabla)")).obtenerValor());
+        assertEquals(simbolo.NULO, interprete.evaluar("(GETHASH 'b tabla)"));
+        assertEquals(2, ((numero)interprete.evaluar("(HASH-COUNT tabla)")).obtenerValor());
+        assertEquals(simbolo.VERDADERO, interprete.evaluar("(REMHASH 'a tabla)"));
+        assertEquals(1, ((numero)interprete.evaluar("(HASH-COUNT tabla)")).obtenerValor());
+    }
+
+    @Test
+    void testCadenas() throws ExcepcionLisp {
+        assertEquals("ab3", ((cadena)interprete.evaluar("(CONCAT \"a\" \"b\" 3)")).obtenerValor());
+        assertEquals("Mundo", ((cadena)interprete.evaluar("(SUBSTRING \"Hola Mundo\" 5)")).obtenerValor());
+        assertEquals("ol", ((cadena)interprete.evaluar("(SUBSTRING \"Hola Mundo\" 1 3)")).obtenerValor());
+        assertEquals(2, ((numero)interprete.evaluar("(LENGTH (SUBSTRING \"Hola\" 2))")).obtenerValor());
+        assertThrows(ExcepcionLisp.class, () -> interprete.evaluar("(SUBSTRING \"Hola\" 2 9)"));
+    }
+
+    @Test
+    void testIteracion() throws ExcepcionLisp {
+        interprete.evaluar("(SET suma 0)");
+        interprete.evaluar("(DOTIMES (i 10) (SET suma (+ suma i)))");
+        assertEquals(45, ((numero)interprete.evaluar("suma")).obtenerValor());
+        assertEquals(5, ((numero)interprete.evaluar("(DOTIMES (i 5 i))")).obtenerValor());
+
+        interprete.evaluar("(SET total 0)");
+        assertEquals(simbolo.NULO, interprete.evaluar("(DOLIST (x '(1 2 3)) (SET total (+ total x)))"));
+        assertEquals(6, ((numero)interprete.evaluar("total")).obtenerValor());
+
+        interprete.evaluar("(SET n 3)");
+        interprete.evaluar("(SET pasos 0)");
+        interprete.evaluar("(WHILE (> n 0) (SET n (- n 1)) (SET pasos (+ pasos 1)))");
+        assertEquals(3, ((numero)interprete.evaluar("pasos")).obtenerValor());
+
+        assertThrows(ExcepcionLisp.class, () -> interprete.evaluar("(DOTIMES (i 'a))"));
+    }
+
+    @Test
+    void testLet() throws ExcepcionLisp {
+        assertEquals(3, ((numero)interprete.evaluar("(LET ((a 1) (b 2)) (+ a b))")).obtenerValor());
+        assertEquals(simbolo.NULO, interprete.evaluar("(LET (c) c)"));
+
+        // LET evalúa los valores en el contexto exterior, LET* de forma secuencial
+        interprete.evaluar("(SET a 10)");
+        assertEquals(11, ((numero)interprete.evaluar("(LET ((a 1) (b (+ a 1))) b)")).obtenerValor());
+        assertEquals(2, ((numero)interprete.evaluar("(LET* ((a 1) (b (+ a 1))) b)")).obtenerValor());
+        assertEquals(10, ((numero)interprete.evaluar("a")).obtenerValor());
+
+        // SET dentro de LET modifica el enlace local
+        assertEquals(5, ((numero)interprete.evaluar("(LET ((a 1)) (SET a 5) a)")).obtenerValor());
+        assertEquals(10, ((numero)interprete.evaluar("a")).obtenerValor());
+    }
+
+    @Test
+    void testMarcosDeLlamada() throws ExcepcionLisp {
+        interprete.evaluar("(DEFUN (suma3 a b c) (+ a b c))");
+        assertEquals(6, ((numero)interprete.evaluar("(suma3 1 2 3)")).obtenerValor());
+        assertThrows(ExcepcionLisp.class, () -> interprete.evaluar("(suma3 1 2)"));
+        assertThrows(ExcepcionLisp.class, () -> interprete.evaluar("(suma3 1 2 3 4)"));
+        // Un error en la llamada anterior no debe dejar marcos en mal estado
+        assertEquals(15, ((numero)interprete.evaluar("(suma3 4 5 6)")).obtenerValor());
+
+        // Una función que crea un cierre conserva su propio marco
+        interprete.evaluar("(DEFUN (sumador x) (LET ((d (DEFUN (interna y) (+ x y)))) interna))");
+        interprete.evaluar("(SET suma5 (sumador 5))");
+        interprete.evaluar("(sumador 100)");
+        assertEquals(6, ((numero)interprete.evaluar("(suma5 1)")).obtenerValor());
+    }
+
+    @Test
+    void testEvaluacionConcurrente() throws Exception {
+        interprete.evaluar("(DEFUN (fib n) (COND ((< n 2) n) (T (+ (fib (- n 1)) (fib (- n 2))))))");
+        interprete.evaluar("(SET base 1000)");
+        interprete.publicar();
+
+        ExecutorService hilos = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Long>> resultados = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                long propio = i;
+                resultados.add(hilos.submit(() -> {
+                    // Cada hilo escribe en su propia capa sobre las definiciones publicadas
+                    interprete.evaluar("(SET propio " + propio + ")");
+                    long fib = ((numero) interprete.evaluar("(fib 15)")).obtenerValor();
+                    long valor = ((numero) interprete.evaluar("(+ base propio)")).obtenerValor();
+                    interprete.descartarCapa();
+                    return fib * 10000 + valor;
+                }));
+            }
+            for (int i = 0; i < resultados.size(); i++) {
+                assertEquals(610 * 10000 + 1000 + i, resultados.get(i).get());
+            }
+        } finally {
+            hilos.shutdown();
+        }
+        // Las asignaciones de los hilos no llegan al contexto global publicado
+        assertThrows(ExcepcionLisp.class, () -> interprete.evaluar("propio"));
+    }
+
+    @Test
+    void testOperacionesParalelas() throws ExcepcionLisp {
+        interprete.evaluar("(DEFUN (cuadrado x) (* x x))");
+        interprete.evaluar("(DEFUN (par? x) (= (* (/ x 2) 2) x))");
+        interprete.evaluar("(SET numeros NIL)");
+        interprete.evaluar("(DOTIMES (i 1000) (SET numeros (CONS (- 1000 i) numeros)))");
+
+        assertEquals("(1 4 9)", interprete.evaluar("(PMAP cuadrado '(1 2 3))").toString());
+        ExpresionLisp cuadrados = interprete.evaluar("(PMAP cuadrado numeros)");
+        assertEquals(1000, ((par)cuadrados).longitud());
+        assertEquals(1000000, ((numero)interprete.evaluar("(CAR (PMAP cuadrado (LIST 1000)))")).obtenerValor());
+
+        assertEquals(500500, ((numero)interprete.evaluar("(PREDUCE + numeros 0)")).obtenerValor());
+        assertEquals(7, ((numero)interprete.evaluar("(PREDUCE + NIL 7)")).obtenerValor());
+        assertEquals(500, ((par)interprete.evaluar("(PFILTER par? numeros)")).longitud());
+        assertEquals("(2 4)", interprete.evaluar("(PFILTER par? '(1 2 3 4 5))").toString());
+
+        // Los errores en los hilos de trabajo llegan como ExcepcionLisp
+        assertThrows(ExcepcionLisp.class, () -> interprete.evaluar("(PMAP cuadrado (CONS 'a numeros))"));
+    }
+
+    @Test
+    void testFuturos() throws ExcepcionLisp {
+        interprete.evaluar("(DEFUN (fib n) (COND ((< n 2) n) (T (+ (fib (- n 1)) (fib (- n 2))))))");
+        interprete.evaluar("(SET f1 (FUTURE (fib 15)))");
+        interprete.evaluar("(SET f2 (FUTURE (fib 10)))");
+        assertEquals(665, ((numero)interprete.evaluar("(+ (TOUCH f1) (TOUCH f2))")).obtenerValor());
+        assertEquals(3, ((numero)interprete.evaluar("(TOUCH 3)")).obtenerValor());
+
+        // El futuro ve una copia del contexto tomada al crearlo
+        assertEquals(1, ((numero)interprete.evaluar("(LET ((x 1)) (LET ((f (FUTURE x))) (SET x 2) (TOUCH f)))")).obtenerValor());
+
+        interprete.evaluar("(SET malo (FUTURE (+ 1 'a)))");
+        ExcepcionLisp error = assertThrows(ExcepcionLisp.class, () -> interprete.evaluar("(TOUCH malo)"));
+        assertTrue(error.getMessage().contains("+ requiere argumentos numéricos"));
+    }
+
+    @Test
+    void testPresupuesto() throws Exception {
+        interprete.evaluar("(DEFUN (infinita n) (infinita (+ n 1)))");
+        interprete.evaluar("(DEFUN (fib n) (COND ((< n 2) n) (T (+ (fib (- n 1)) (fib (- n 2))))))");
+
+        ExcepcionLimite pasos = assertThrows(ExcepcionLimite.class,
+                () -> interprete.evaluar("(WHILE T)", new Presupuesto(10000, Presupuesto.SIN_LIMITE, Presupuesto.SIN_LIMITE)));
+        assertTrue(pasos.getMessage().contains("pasos"));
+
+        ExcepcionLimite profundidad = assertThrows(ExcepcionLimite.class,
+                () -> interprete.evaluar("(infinita 0)", new Presupuesto(Presupuesto.SIN_LIMITE, 500, Presupuesto.SIN_LIMITE)));
+        assertTrue(profundidad.getMessage().contains("Profundidad"));
+
+        assertThrows(ExcepcionLimite.class,
+                () -> interprete.evaluar("(WHILE T)", new Presupuesto(Presupuesto.SIN_LIMITE, Presupuesto.SIN_LIMITE, 50)));
+
+        // Cancelación desde otro hilo
+        Presupuesto cancelable = new Presupuesto(Presupuesto.SIN_LIMITE, Presupuesto.SIN_LIMITE, Presupuesto.SIN_LIMITE);
+        Thread cancelador = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException ignorada) {
+                Thread.currentThread().interrupt();
+            }
+            cancelable.cancelar();
+        });
+        cancelador.start();
+        ExcepcionLimite cancelada = assertThrows(ExcepcionLimite.class, () -> interprete.evaluar("(WHILE T)", cancelable));
+        assertTrue(cancelada.getMessage().contains("cancelada"));
+        cancelador.join();
+
+        // Sin presupuesto la recursión sin fin termina como error del intérprete, no de la JVM
+        assertThrows(ExcepcionLimite.class, () -> interprete.evaluar("(infinita 0)"));
+
+        // Un presupuesto suficiente no cambia el resultado, y el intérprete sigue utilizable
+        assertEquals(610, ((numero)interprete.evaluar("(fib 15)", new Presupuesto(1_000_000, 100, 10_000))).obtenerValor());
+        assertEquals(55, ((numero)interprete.evaluar("(fib 10)")).obtenerValor());
+    }
+
+    @Test
+    void testPerfilador() throws ExcepcionLisp {
+        interprete.evaluar("(DEFUN (FIB N) (COND ((< N 2) N) (T (+ (FIB (- N 1)) (FIB (- N 2))))))");
+        interprete.evaluar("(DEFUN (DOBLE X) (* 2 X))");
+
+        Perfilador perfilador = new Perfilador();
+        assertEquals(110, ((numero) interprete.perfilar("(DOBLE (FIB 10))", perfilador)).obtenerValor());
+        List<Perfilador.Estadistica> resultados = perfilador.resultados();
+        assertEquals(2, resultados.size());
+        Perfilador.Estadistica fib = resultados.stream()
+                .filter(e -> e.obtenerNombre().equals("FIB")).findFirst().orElseThrow();
+        assertEquals(177, fib.obtenerLlamadas());
+        assertEquals(10, fib.obtenerProfundidadMaxima());
+        assertTrue(fib.obtenerNanosInclusivos() >= fib.obtenerNanosExclusivos());
+
+        // Sin perfilador no se registra nada
+        interprete.evaluar("(FIB 5)");
+        assertEquals(177, fib.obtenerLlamadas());
+
+        assertEquals(55, ((numero) interprete.evaluar("(PROFILE (FIB 10))")).obtenerValor());
+        assertTrue(outputStream.toString().contains("FIB"));
+    }
+
+    @Test
+    void testEventosJfr() throws Exception {
+        interprete.evaluar("(DEFUN (CUADRADO X) (* X X))");
+        Path archivo = Files.createTempFile("lisp", ".jfr");
+        try (Recording grabacion = new Recording()) {
+            grabacion.enable("lisp.Forma");
+            grabacion.enable("lisp.Llamada").withThreshold(Duration.ZERO);
+            grabacion.enable("lisp.Analisis");
+            grabacion.start();
+            interprete.evaluar("(CUADRADO 12)");
+            grabacion.stop();
+            grabacion.dump(archivo);
+        }
+
+        List<RecordedEvent> eventos = RecordingFile.readAllEvents(archivo);
+        Files.delete(archivo);
+        assertTrue(eventos.stream().anyMatch(e -> e.getEventType().getName().equals("lisp.Forma")
+                && "CUADRADO".equals(e.getString("funcion"))
+                && e.getString("forma").equals("(CUADRADO 12)")));
+        assertTrue(eventos.stream().anyMatch(e -> e.getEventType().getName().equals("lisp.Llamada")
+                && "CUADRADO".equals(e.getString("funcion"))));
+        assertTrue(eventos.stream().anyMatch(e -> e.getEventType().getName().equals("lisp.Analisis")
+                && e.getLong("caracteres") == 13));
+    }
+
+    @Test
+    void testMetricas() throws Exception {
+        MetricasInterprete metricas = MetricasInterprete.INSTANCIA;
+        long formas = metricas.getFormasEvaluadas();
+        long errores = metricas.getErrores();
+        long llamadas = metricas.getLlamadasFunciones();
+
+        interprete.evaluar("(DEFUN (SUMA3 X) (+ X 3))");
+        interprete.evaluar("(SUMA3 4)");
+        assertThrows(ExcepcionLisp.class, () -> interprete.evaluar("(CAR 5)"));
+
+        assertTrue(metricas.getFormasEvaluadas() >= formas + 3);
+        assertTrue(metricas.getErrores() >= errores + 1);
+        assertTrue(metricas.getLlamadasFunciones() >= llamadas + 1);
+        assertTrue(metricas.getLlamadasPrimitivas().getOrDefault("+", 0L) >= 1);
+        assertTrue(metricas.getTamanoTablaSimbolos() > 0);
+        double tasa = metricas.getTasaAciertosCacheNumeros();
+        assertTrue(tasa > 0.0 && tasa <= 1.0);
+        assertTrue(metricas.getFormasAnalizadas() >= 3);
+
+        MBeanServer servidor = ManagementFactory.getPlatformMBeanServer();
+        ObjectName nombre = new ObjectName(MetricasInterprete.NOMBRE);
+        assertTrue(servidor.isRegistered(nombre));
+        assertTrue((Long) servidor.getAttribute(nombre, "FormasEvaluadas") >= formas + 3);
+    }
+
+    @Test
+    void testPlegadoDeConstantes() throws ExcepcionLisp {
+        assertEquals(46, ((numero) interprete.evaluar("(SET x (+ 10 (* 3 3) 2 (+ 20 (- 10 5))))")).obtenerValor());
+
+        // El cuerpo plegado ya no llama a *
+        interprete.evaluar("(DEFUN (G) (* 6 7))");
+        long antes = MetricasInterprete.INSTANCIA.getLlamadasPrimitivas().getOrDefault("*", 0L);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(42, ((numero) interprete.evaluar("(G)")).obtenerValor());
+        }
+        assertEquals(antes, MetricasInterprete.INSTANCIA.getLlamadasPrimitivas().getOrDefault("*", 0L));
+
+        // COND con condiciones constantes, QUOTE de constantes y errores diferidos
+        assertEquals("b", ((cadena) interprete.evaluar("(COND ((> 1 2) \"a\") ((< 1 2) \"b\") (T \"c\"))")).obtenerValor());
+        assertEquals(simbolo.NULO, interprete.evaluar("(COND ((= 1 2) 3))"));
+        assertEquals(7, ((numero) interprete.evaluar("(+ (QUOTE 3) 4)")).obtenerValor());
+        assertEquals(simbolo.VERDADERO, interprete.evaluar("(EQUAL (QUOTE (1 2)) (QUOTE (1 2)))"));
+        interprete.evaluar("(DEFUN (H) (/ 1 0))");
+        assertThrows(ExcepcionLisp.class, () -> interprete.evaluar("(H)"));
+
+        // Los parámetros y variables locales que sombrean funciones no se pliegan
+        interprete.evaluar("(DEFUN (APLICAR + X) (+ X 1))");
+        assertEquals(3, ((numero) interprete.evaluar("(APLICAR * 3)")).obtenerValor());
+        assertEquals(4, ((numero) interprete.evaluar("(LET ((* +)) (* 2 2))")).obtenerValor());
+
+        // Reasignar una función incorporada desactiva el plegado
+        interprete.evaluar("(DEFUN (F) (+ 10 5))");
+        assertEquals(15, ((numero) interprete.evaluar("(F)")).obtenerValor());
+        interprete.evaluar("(SET + -)");
+        assertEquals(5, ((numero) interprete.evaluar("(F)")).obtenerValor());
+        assertEquals(5, ((numero) interprete.evaluar("(+ 10 5)")).obtenerValor());
+    }
+
+    @Test
+    void testMacros() throws ExcepcionLisp {
+        interprete.evaluar("(DEFMACRO (UNLESS C X) (LIST (QUOTE COND) (LIST C NIL) (LIST T X)))");
+        assertEquals(5, ((numero) interprete.evaluar("(UNLESS (> 1 2) 5)")).obtenerValor());
+        assertEquals(simbolo.NULO, interprete.evaluar("(UNLESS (< 1 2) 5)"));
+
+        // Cada llamada se expande una sola vez
+        interprete.evaluar("(SET CUENTAS (MAKE-HASH))");
+        interprete.evaluar("(PUTHASH 'N 0 CUENTAS)");
+        interprete.evaluar("(DEFMACRO (DOBLE X) (LET ((CUENTA (PUTHASH 'N (+ (GETHASH 'N CUENTAS) 1) CUENTAS))) (LIST (QUOTE *) 2 X)))");
+        interprete.evaluar("(DEFUN (F Y) (DOBLE Y))");
+        assertEquals(6, ((numero) interprete.evaluar("(F 3)")).obtenerValor());
+        assertEquals(8, ((numero) interprete.evaluar("(F 4)")).obtenerValor());
+        assertEquals(1, ((numero) interprete.evaluar("(GETHASH 'N CUENTAS)")).obtenerValor());
+
+        // Redefinir la macro invalida las expansiones guardadas
+        interprete.evaluar("(DEFMACRO (DOBLE X) (LIST (QUOTE *) 3 X))");
+        assertEquals(12, ((numero) interprete.evaluar("(F 4)")).obtenerValor());
+
+        // Los argumentos llegan sin evaluar ni plegar
+        interprete.evaluar("(DEFMACRO (CITAR-FORMA X) (LIST (QUOTE QUOTE) X))");
+        assertEquals("(+ 1 2)", interprete.evaluar("(CITAR-FORMA (+ 1 2))").toString());
+    }
+
+    @Test
+    void testEspecializacion() throws ExcepcionLisp {
+        interprete.evaluar("(DEFUN (SUMAR2 A B) (+ A B))");
+        assertEquals(7, ((numero) interprete.evaluar("(SUMAR2 3 4)")).obtenerValor());
+        assertEquals(9, ((numero) interprete.evaluar("(SUMAR2 4 5)")).obtenerValor());
+
+        // Un argumento no numérico desespecializa la llamada y produce el error de siempre
+        ExcepcionLisp error = assertThrows(ExcepcionLisp.class, () -> interprete.evaluar("(SUMAR2 \"a\" 5)"));
+        assertEquals("+ requiere argumentos numéricos", error.getMessage());
+        assertEquals(11, ((numero) interprete.evaluar("(SUMAR2 5 6)")).obtenerValor());
+
+        interprete.evaluar("(DEFUN (DIVIDIR2 A B) (/ A B))");
+        assertEquals(3, ((numero) interprete.evaluar("(DIVIDIR2 7 2)")).obtenerValor());
+        assertThrows(ExcepcionLisp.class, () -> interprete.evaluar("(DIVIDIR2 7 0)"));
+
+        interprete.evaluar("(DEFUN (COMPARAR A B) (LIST (< A B) (> A B) (= A B)))");
+        assertEquals("(T NIL NIL)", interprete.evaluar("(COMPARAR 1 2)").toString());
+        assertEquals("(NIL NIL T)", interprete.evaluar("(COMPARAR 2 2)").toString());
+    }
+
+    @Test
+    void testImagen() throws Exception {
+        interprete.evaluar("(DEFUN (FACT N) (COND ((< N 2) 1) (T (* N (FACT (- N 1))))))");
+        interprete.evaluar("(SET SUMADOR (LET ((BASE 10)) (DEFUN (SUMAR-BASE X) (+ X BASE)) SUMAR-BASE))");
+        interprete.evaluar("(DEFMACRO (DOBLE X) (LIST (QUOTE +) X X))");
+        interprete.evaluar("(SET COLA (QUOTE (B C)))");
+        interprete.evaluar("(SET LISTAS (LIST (CONS (QUOTE A) COLA) COLA))");
+        interprete.evaluar("(SET TABLA (MAKE-HASH))");
+        interprete.evaluar("(PUTHASH 'clave \"valor\" TABLA)");
+        interprete.evaluar("(PUTHASH -7 'FACT TABLA)");
+
+        Path archivo = Files.createTempFile("interprete", ".img");
+        try {
+            interprete.guardarImagen(archivo);
+            Interprete cargado = Interprete.desdeImagen(archivo, System.in, new PrintStream(new ByteArrayOutputStream()));
+
+            assertEquals(120, ((numero) cargado.evaluar("(FACT 5)")).obtenerValor());
+            assertEquals(15, ((numero) cargado.evaluar("(SUMADOR 5)")).obtenerValor());
+            assertEquals(8, ((numero) cargado.evaluar("(DOBLE 4)")).obtenerValor());
+            assertEquals("\"valor\"", cargado.evaluar("(GETHASH 'clave TABLA)").toString());
+
+            // Los símbolos se vuelven a internar y las colas compartidas siguen siendo el mismo objeto
+            assertSame(simbolo.internamente("FACT"), cargado.evaluar("(GETHASH -7 TABLA)"));
+            assertEquals(simbolo.VERDADERO, cargado.evaluar("(EQ (CDR (CAR LISTAS)) (CAR (CDR LISTAS)))"));
+            assertEquals(simbolo.VERDADERO, cargado.evaluar("(EQ COLA (CAR (CDR LISTAS)))"));
+
+            // Los valores que no pueden guardarse producen un error
+            interprete.evaluar("(SET PENDIENTE (FUTURE (+ 1 2)))");
+            assertThrows(ExcepcionLisp.class, () -> interprete.guardarImagen(archivo));
 
-}
\ No newline at end of file
+            Files.write(archivo, new byte[] {1, 2, 3});
+            assertThrows(ExcepcionLisp.class, () -> Interprete.desdeImagen(archivo, System.in, System.out));
+        } finally {
+            Files.deleteIfExists(archivo);
+        }
+    }
+
+    @Test
+    void testFasl() throws Exception {
+        Path directorio = Files.createTempDirectory("fasl");
+        Path fuente = directorio.resolve("reglas.lisp");
+        Files.writeString(fuente, """
+                ; reglas generadas
+                (DEFUN (CUADRADO X) (* X X))
+                (SET SALUDO "hola, ñandú")
+                (SET DATOS (QUOTE (-300 0 123456789012 (A . B) "x")))
+                """);
+        try {
+            Path compilado = Path.of(((cadena) interprete.evaluar("(COMPILE-FILE \"" + fuente + "\")")).obtenerValor());
+            assertEquals(directorio.resolve("reglas.fasl"), compilado);
+
+            // El FASL produce las mismas formas que el analizador, con los mismos símbolos
+            List<ExpresionLisp> formas;
+            try (var entrada = Files.newInputStream(compilado)) {
+                formas = Fasl.leer(entrada);
+            }
+            assertEquals(3, formas.size());
+            assertEquals("(SET DATOS (QUOTE (-300 0 123456789012 (A . B) \"x\")))", formas.get(2).toString());
+            assertSame(simbolo.internamente("CUADRADO"), formas.get(0).resto().primero().primero());
+
+            // LOAD usa el FASL, que está al día; borrar el fuente no lo impide
+            Files.delete(fuente);
+            assertEquals(simbolo.VERDADERO, interprete.evaluar("(LOAD \"" + fuente + "\")"));
+            assertEquals(49, ((numero) interprete.evaluar("(CUADRADO 7)")).obtenerValor());
+            assertEquals("\"hola, ñandú\"", interprete.evaluar("SALUDO").toString());
+
+            // Un fuente más reciente que el FASL se vuelve a analizar
+            Files.writeString(fuente, "(DEFUN (CUADRADO X) (+ X X))");
+            Files.setLastModifiedTime(compilado, java.nio.file.attribute.FileTime.fromMillis(0));
+            interprete.evaluar("(LOAD \"" + fuente + "\")");
+            assertEquals(14, ((numero) interprete.evaluar("(CUADRADO 7)")).obtenerValor());
+
+            Files.write(compilado, new byte[] {'L', 'I', 'S', 'P'});
+            assertThrows(ExcepcionLisp.class, () -> interprete.evaluar("(LOAD \"" + compilado + "\")"));
+        } finally {
+            Files.deleteIfExists(fuente);
+            Files.deleteIfExists(directorio.resolve("reglas.fasl"));
+            Files.delete(directorio);
+        }
+    }
+
+    @Test
+    void testArena() throws ExcepcionLisp {
+        interprete.evaluar("(SET A (MAKE-ARENA))");
+        interprete.evaluar("(SET ORIGINAL (QUOTE (1 -2 (X \"y\") 9223372036854775807 . FIN)))");
+        interprete.evaluar("(SET COPIA (ARENA-COPY A ORIGINAL))");
+
+        assertEquals(interprete.evaluar("ORIGINAL").toString(), interprete.evaluar("COPIA").toString());
+        assertEquals(simbolo.VERDADERO, interprete.evaluar("(EQUAL COPIA ORIGINAL)"));
+        assertEquals(simbolo.NULO, interprete.evaluar("(EQ COPIA ORIGINAL)"));
+        assertEquals(simbolo.VERDADERO, interprete.evaluar("(EQ (CDR COPIA) (CDR COPIA))"));
+        assertEquals(-2, ((numero) interprete.evaluar("(CAR (CDR COPIA))")).obtenerValor());
+        assertSame(simbolo.internamente("X"), interprete.evaluar("(CAR (CAR (CDR (CDR COPIA))))"));
+        assertEquals(Long.MAX_VALUE, ((numero) interprete.evaluar("(CAR (CDR (CDR (CDR COPIA))))")).obtenerValor());
+
+        // Las listas largas se copian y comparan sin desbordar la pila
+        ExpresionLisp[] elementos = new ExpresionLisp[200_000];
+        for (int i = 0; i < elementos.length; i++) {
+            elementos[i] = numero.obtenerValor(i);
+        }
+        interprete.evaluar("(SET A (MAKE-ARENA))");
+        ExpresionLisp lista = par.crearLista(elementos);
+        arena a = (arena) interprete.evaluar("A");
+        ExpresionLisp vista = a.copiar(lista);
+        assertEquals(200_000, a.cantidadCeldas());
+        assertEquals(200_000, ((par) vista).longitud());
+        assertSame(vista, a.copiar(vista));
+
+        interprete.evaluar("(SET PEQUENA (ARENA-COPY A (QUOTE (1 2 3))))");
+        assertEquals(simbolo.VERDADERO, interprete.evaluar("(ARENA-CLOSE A)"));
+        assertTrue(a.estaCerrada());
+        assertThrows(ExcepcionLisp.class, () -> interprete.evaluar("(CAR PEQUENA)"));
+        assertThrows(ExcepcionLisp.class, () -> interprete.evaluar("(ARENA-COPY A (QUOTE (1)))"));
+        assertThrows(ExcepcionLisp.class, () -> interprete.evaluar("(ARENA-CLOSE 1)"));
+    }
+
+    @Test
+    void testListasArreglo() throws ExcepcionLisp {
+        interprete.evaluar("(SET L (LIST 1 2 3 4))");
+        assertEquals(4, ((numero) interprete.evaluar("(LENGTH L)")).obtenerValor());
+        assertEquals(0, ((numero) interprete.evaluar("(LENGTH NIL)")).obtenerValor());
+        assertEquals(5, ((numero) interprete.evaluar("(LENGTH (CONS 0 L))")).obtenerValor());
+        assertEquals(3, ((numero) interprete.evaluar("(NTH 2 L)")).obtenerValor());
+        assertEquals(simbolo.NULO, interprete.evaluar("(NTH 9 L)"));
+        assertEquals(1, ((numero) interprete.evaluar("(NTH 1 (CONS 0 L))")).obtenerValor());
+        assertThrows(ExcepcionLisp.class, () -> interprete.evaluar("(LENGTH (QUOTE (1 . 2)))"));
+        assertThrows(ExcepcionLisp.class, () -> interprete.evaluar("(NTH -1 L)"));
+
+        // Las vistas de la misma posición son el mismo objeto para EQ
+        assertEquals(simbolo.VERDADERO, interprete.evaluar("(EQ (CDR L) (CDR L))"));
+        assertEquals(simbolo.NULO, interprete.evaluar("(EQ (CDR L) (CDR (CDR L)))"));
+        assertEquals(simbolo.VERDADERO, interprete.evaluar("(EQUAL (CDR L) (QUOTE (2 3 4)))"));
+
+        // Listas punteadas y anidadas del analizador
+        assertEquals("(1 2 . 3)", interprete.evaluar("(QUOTE (1 2 . 3))").toString());
+        assertEquals("(1 (2 3) 4)", interprete.evaluar("(QUOTE (1 . ((2 3) 4)))").toString());
+        assertEquals(3, ((numero) interprete.evaluar("(LENGTH (QUOTE (1 . (2 3))))")).obtenerValor());
+        assertEquals("(4)", interprete.evaluar("(CDR (CDR (CDR L)))").toString());
+    }
+
+    @Test
+    void testSecuenciasPerezosas() throws ExcepcionLisp {
+        interprete.evaluar("(DEFUN (cuadrado x) (* x x))");
+        interprete.evaluar("(DEFUN (par? x) (= (* (/ x 2) 2) x))");
+        assertEquals("#<SECUENCIA>", interprete.evaluar("(RANGE 10)").toString());
+        assertEquals(45, ((numero) interprete.evaluar("(REDUCE + (RANGE 10))")).obtenerValor());
+        assertEquals(30, ((numero) interprete.evaluar("(REDUCE + (RANGE 10 0 -2))")).obtenerValor());
+        assertEquals(7, ((numero) interprete.evaluar("(REDUCE + (RANGE 5 5) 7)")).obtenerValor());
+        assertEquals(simbolo.NULO, interprete.evaluar("(REDUCE + NIL)"));
+        assertEquals(6, ((numero) interprete.evaluar("(REDUCE * '(1 2 3))")).obtenerValor());
+
+        // Las transformaciones se fusionan: cien mil elementos sin listas intermedias
+        assertEquals(333328333350000L, ((numero) interprete.evaluar(
+                "(REDUCE + (LAZY-MAP cuadrado (RANGE 100000)) 0)")).obtenerValor());
+        assertEquals(56, ((numero) interprete.evaluar(
+                "(REDUCE + (TAKE 4 (LAZY-FILTER par? (LAZY-MAP cuadrado (RANGE)))))")).obtenerValor());
+
+        // Las secuencias pueden recorrerse más de una vez
+        interprete.evaluar("(SET pares (LAZY-FILTER par? (RANGE 1 7)))");
+        assertEquals(12, ((numero) interprete.evaluar("(REDUCE + pares)")).obtenerValor());
+        assertEquals(48, ((numero) interprete.evaluar("(REDUCE * pares)")).obtenerValor());
+
+        assertThrows(ExcepcionLisp.class, () -> interprete.evaluar("(RANGE 0 10 0)"));
+        assertThrows(ExcepcionLisp.class, () -> interprete.evaluar("(TAKE -1 (RANGE))"));
+        assertThrows(ExcepcionLisp.class, () -> interprete.evaluar("(LAZY-MAP cuadrado 5)"));
+        assertThrows(ExcepcionLisp.class, () -> interprete.evaluar("(REDUCE + '(1 . 2))"));
+    }
+
+    @Test
+    void testMapcarFilterReduce() throws ExcepcionLisp {
+        interprete.evaluar("(DEFUN (cuadrado x) (* x x))");
+        interprete.evaluar("(DEFUN (par? x) (= (* (/ x 2) 2) x))");
+        assertEquals("(1 4 9)", interprete.evaluar("(MAPCAR cuadrado '(1 2 3))").toString());
+        assertEquals("(2 4)", interprete.evaluar("(FILTER par? '(1 2 3 4 5))").toString());
+        assertEquals("(1 3)", interprete.evaluar("(MAPCAR CAR '((1 2) (3 4)))").toString());
+        assertEquals("((2) (4))", interprete.evaluar("(MAPCAR CDR '((1 2) (3 4)))").toString());
+        assertEquals(simbolo.NULO, interprete.evaluar("(MAPCAR cuadrado NIL)"));
+        assertEquals(simbolo.NULO, interprete.evaluar("(FILTER par? '(1 3))"));
+        assertEquals("(0 2 4)", interprete.evaluar("(FILTER par? (RANGE 6))").toString());
+
+        // Iterativas: listas largas sin desbordar la pila
+        interprete.evaluar("(SET larga (MAPCAR cuadrado (RANGE 200000)))");
+        assertEquals(200000, ((numero) interprete.evaluar("(LENGTH larga)")).obtenerValor());
+        assertEquals(100000, ((numero) interprete.evaluar("(LENGTH (FILTER par? larga))")).obtenerValor());
+        assertEquals(2666646666700000L, ((numero) interprete.evaluar("(REDUCE + larga)")).obtenerValor());
+
+        // Las operaciones incorporadas se llaman directamente y conservan su semántica
+        assertEquals(120, ((numero) interprete.evaluar("(REDUCE * '(1 2 3 4 5))")).obtenerValor());
+        assertEquals(-13, ((numero) interprete.evaluar("(REDUCE - '(1 2 3 4) -3)")).obtenerValor());
+        assertEquals(simbolo.VERDADERO, interprete.evaluar("(REDUCE < '(1 2))"));
+        assertThrows(ExcepcionLisp.class, () -> interprete.evaluar("(REDUCE / '(1 0))"));
+        assertThrows(ExcepcionLisp.class, () -> interprete.evaluar("(MAPCAR cuadrado 5)"));
+        assertThrows(ExcepcionLisp.class, () -> interprete.evaluar("(FILTER par? '(1 . 2))"));
+    }
+
+    @Test
+    void testNumerosGrandesNoInternados() throws ExcepcionLisp {
+        // Los números fuera de la tabla de pequeños se crean sin internar y EQ los compara por valor
+        assertEquals(simbolo.VERDADERO, interprete.evaluar("(EQ 100000 (* 1000 100))"));
+        assertEquals(simbolo.NULO, interprete.evaluar("(EQ 100000 100001)"));
+        assertEquals(simbolo.VERDADERO, interprete.evaluar("(EQ 5 (+ 2 3))"));
+    }
+
+    @Test
+    void testSecuenciaLargaConMemoriaAcotada() throws Exception {
+        // Un intérprete aparte con un heap de 32 MB recorre tres millones de números
+        List<String> comando = new ArrayList<>(List.of(
+                Path.of(System.getProperty("java.home"), "bin", "java").toString(), "-Xmx32m"));
+        if (ManagementFactory.getRuntimeMXBean().getInputArguments().contains("--enable-preview")) {
+            comando.add("--enable-preview");
+        }
+        comando.addAll(List.of("-cp", System.getProperty("java.class.path"), "lisp.Interprete"));
+        Process proceso = new ProcessBuilder(comando).redirectErrorStream(true).start();
+        try (var entrada = proceso.getOutputStream()) {
+            entrada.write("(REDUCE + (RANGE 3000000))\n".getBytes());
+        }
+        String resultado = new String(proceso.getInputStream().readAllBytes());
+        assertEquals(0, proceso.waitFor(), resultado);
+        assertTrue(resultado.contains("=> 4499998500000"), resultado);
+    }
+
+    @Test
+    void testPublicarConFunciones() throws Exception {
+        interprete.evaluar("(SET contador 1)");
+        interprete.evaluar("(DEFUN (inc) (+ contador 1))");
+        interprete.evaluar("(DEFUN (bajo-limite x) (< x LIMITE))");
+        interprete.publicar();
+
+        // SET de nivel superior escribe en la capa del hilo, y las funciones publicadas la ven
+        assertEquals(2, ((numero) interprete.evaluar("(SET contador (inc))")).obtenerValor());
+        assertEquals(2, ((numero) interprete.evaluar("contador")).obtenerValor());
+        assertEquals(3, ((numero) interprete.evaluar("(SET contador (inc))")).obtenerValor());
+
+        // Las funciones publicadas ven los enlaces de la capa del hilo
+        interprete.evaluar("(SET LIMITE 10)");
+        assertEquals(simbolo.VERDADERO, interprete.evaluar("(bajo-limite 5)"));
+
+        // Otro hilo parte de las definiciones publicadas, sin ver la capa de este
+        ExecutorService hilo = Executors.newSingleThreadExecutor();
+        try {
+            assertEquals(2L, hilo.submit(() -> ((numero) interprete.evaluar("(inc)")).obtenerValor()).get());
+            assertThrows(Exception.class, () -> hilo.submit(() -> interprete.evaluar("(bajo-limite 5)")).get());
+        } finally {
+            hilo.shutdown();
+        }
+        assertEquals(3, ((numero) interprete.evaluar("contador")).obtenerValor());
+    }
+
+    @Test
+    void testFuturoAislaGlobales() throws ExcepcionLisp {
+        interprete.evaluar("(SET c 0)");
+        interprete.evaluar("(DEFUN (inc) (+ c 1))");
+
+        // El SET del futuro, directo o desde un bucle, queda en su propia capa
+        assertEquals(1, ((numero) interprete.evaluar("(TOUCH (FUTURE (SET c (inc))))")).obtenerValor());
+        assertEquals(5, ((numero) interprete.evaluar("(TOUCH (FUTURE (SET c 5)))")).obtenerValor());
+        assertEquals(0, ((numero) interprete.evaluar("c")).obtenerValor());
+
+        // Dentro del futuro, la función ve las asignaciones del propio futuro
+        assertEquals(2, ((numero) interprete.evaluar("(TOUCH (FUTURE (DOTIMES (i 2 c) (SET c (inc)))))")).obtenerValor());
+        assertEquals(0, ((numero) interprete.evaluar("c")).obtenerValor());
+
+        // El hilo principal sigue escribiendo en el contexto global mientras corren futuros
+        interprete.evaluar("(SET pendiente (FUTURE (DOTIMES (i 2000) (SET c (inc)))))");
+        interprete.evaluar("(DOTIMES (i 2000) (SET c (inc)))");
+        interprete.evaluar("(TOUCH pendiente)");
+        assertEquals(2000, ((numero) interprete.evaluar("c")).obtenerValor());
+        interprete.evaluar("(SET nueva 7)");
+        assertEquals(8, ((numero) interprete.evaluar("(TOUCH (FUTURE (+ nueva 1)))")).obtenerValor());
+    }
+
+    @Test
+    void testPresupuestoEnFuturos() throws ExcepcionLisp {
+        // El futuro comparte el presupuesto de quien lo crea
+        assertTimeoutPreemptively(Duration.ofSeconds(2), () -> {
+            ExcepcionLimite pasos = assertThrows(ExcepcionLimite.class, () -> interprete.evaluar(
+                    "(TOUCH (FUTURE (WHILE T)))", new Presupuesto(10000, Presupuesto.SIN_LIMITE, 200)));
+            assertTrue(pasos.getMessage().contains("pasos"));
+        });
+
+        // TOUCH deja de esperar al vencer el plazo de quien espera, aunque el futuro no tenga límites
+        interprete.evaluar("(SET lento (FUTURE (DOTIMES (i 2000000) i)))");
+        assertTimeoutPreemptively(Duration.ofSeconds(2), () -> assertThrows(ExcepcionLimite.class,
+                () -> interprete.evaluar("(TOUCH lento)", new Presupuesto(Presupuesto.SIN_LIMITE, Presupuesto.SIN_LIMITE, 20))));
+        assertEquals(simbolo.NULO, interprete.evaluar("(TOUCH lento)"));
+    }
+
+    @Test
+    void testOperacionesParalelasAislanGlobales() throws ExcepcionLisp {
+        interprete.evaluar("(SET visto 0)");
+        interprete.evaluar("(DEFUN (marca x) (+ (SET visto x) visto))");
+        interprete.evaluar("(DEFUN (marca-par x) (= (SET visto x) (* (/ visto 2) 2)))");
+        interprete.evaluar("(DEFUN (suma-marcada a b) (+ (SET visto a) b))");
+        interprete.evaluar("(DEFUN (doble x) (* x 2))");
+        interprete.evaluar("(SET numeros NIL)");
+        interprete.evaluar("(DOTIMES (i 5000) (SET numeros (CONS (- 5000 i) numeros)))");
+
+        // Cada aplicación ve su propio SET, sin interferir con las de los demás hilos
+        assertEquals(simbolo.VERDADERO, interprete.evaluar("(EQUAL (PMAP marca numeros) (MAPCAR doble numeros))"));
+        assertEquals(2500, ((par) interprete.evaluar("(PFILTER marca-par numeros)")).longitud());
+        assertEquals(12502500, ((numero) interprete.evaluar("(PREDUCE suma-marcada numeros 0)")).obtenerValor());
+
+        // Y el contexto de quien llama no cambia
+        assertEquals(0, ((numero) interprete.evaluar("visto")).obtenerValor());
+    }
+
+    @Test
+    void testIgualdadNumericaEspecializada() throws ExcepcionLisp {
+        interprete.evaluar("(DEFUN (iguales? a b) (= a b))");
+        var primitivas = MetricasInterprete.INSTANCIA.getLlamadasPrimitivas();
+        long igualAntes = primitivas.getOrDefault("=", 0L);
+        long equalAntes = primitivas.getOrDefault("EQUAL", 0L);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(simbolo.VERDADERO, interprete.evaluar("(iguales? " + i + " " + i + ")"));
+        }
+        assertEquals(simbolo.NULO, interprete.evaluar("(iguales? 1 2)"));
+
+        // Las comparaciones numéricas pasan por la especialización de =, no por EQUAL
+        primitivas = MetricasInterprete.INSTANCIA.getLlamadasPrimitivas();
+        assertEquals(igualAntes + 11, primitivas.getOrDefault("=", 0L));
+        assertEquals(equalAntes, primitivas.getOrDefault("EQUAL", 0L));
+
+        // Con otros tipos, = conserva la semántica de EQUAL
+        assertEquals(simbolo.VERDADERO, interprete.evaluar("(iguales? '(1 2) '(1 2))"));
+        assertEquals(simbolo.VERDADERO, interprete.evaluar("(iguales? \"a\" \"a\")"));
+        assertEquals(simbolo.NULO, interprete.evaluar("(iguales? 'a 1)"));
+    }
+
+    @Test
+    void testMetricasCuentanErroresDeAnalisis() {
+        MetricasInterprete metricas = MetricasInterprete.INSTANCIA;
+        long errores = metricas.getErrores();
+
+        assertThrows(ExcepcionLisp.class, () -> interprete.evaluar("(+ 1 2"));
+        assertThrows(ExcepcionLisp.class, () -> interprete.evaluar(""));
+        AnalizadorIncremental incremental = new AnalizadorIncremental(forma -> { });
+        assertThrows(ExcepcionLisp.class, () -> incremental.alimentar(")"));
+
+        assertTrue(metricas.getErrores() >= errores + 3);
+    }
+
+    @Test
+    void testMacroDefinidaDespuesDeSuLlamador() throws Exception {
+        interprete.evaluar("(DEFUN (F) (Q (+ 1 2)))");
+        interprete.evaluar("(DEFMACRO (Q X) (LIST (QUOTE QUOTE) X))");
+        assertEquals("(+ 1 2)", interprete.evaluar("(F)").toString());
+
+        interprete.evaluar("(DEFUN (R X) X)");
+        interprete.evaluar("(DEFUN (G) (R (+ 1 2)))");
+        assertEquals("3", interprete.evaluar("(G)").toString());
+        interprete.evaluar("(DEFMACRO (R X) (LIST (QUOTE QUOTE) X))");
+        assertEquals("(+ 1 2)", interprete.evaluar("(G)").toString());
+    }
+
+    @Test
+    void testCapacidadDeTablaHashValidada() throws Exception {
+        assertThrows(ExcepcionLisp.class, () -> interprete.evaluar("(MAKE-HASH 5000000000)"));
+        assertThrows(ExcepcionLisp.class, () -> interprete.evaluar("(MAKE-HASH -1)"));
+        interprete.evaluar("(SET H (MAKE-HASH 100))");
+        interprete.evaluar("(PUTHASH 1 2 H)");
+        assertEquals("2", interprete.evaluar("(GETHASH 1 H)").toString());
+    }
+
+    @Test
+    void testSetEnFuncionNoModificaGlobal() throws Exception {
+        interprete.evaluar("(DEFUN (K X) (SET GLOB X))");
+        interprete.evaluar("(SET GLOB 1)");
+        interprete.evaluar("(K 5)");
+        assertEquals("1", interprete.evaluar("GLOB").toString());
+
+        interprete.evaluar("(DEFUN (SUMAR-HASTA N) (LET ((TOTAL 0)) (DOTIMES (I N) (SET TOTAL (+ TOTAL I))) TOTAL))");
+        assertEquals("10", interprete.evaluar("(SUMAR-HASTA 5)").toString());
+    }
+
+    @Test
+    void testImagenConservaIdentidadDeVistas() throws Exception {
+        interprete.evaluar("(SET L (LIST 1 2 3))");
+        interprete.evaluar("(SET M (CDR L))");
+        interprete.evaluar("(SET P (LET ((A (MAKE-ARENA))) (ARENA-COPY A (QUOTE (4 5 6)))))");
+        interprete.evaluar("(SET Q (CDR P))");
+        assertEquals(simbolo.VERDADERO, interprete.evaluar("(EQ M (CDR L))"));
+        assertEquals(simbolo.VERDADERO, interprete.evaluar("(EQ Q (CDR P))"));
+
+        Path archivo = Files.createTempFile("interprete", ".img");
+        try {
+            interprete.guardarImagen(archivo);
+            Interprete cargado = Interprete.desdeImagen(archivo, System.in, new PrintStream(new ByteArrayOutputStream()));
+            assertEquals(simbolo.VERDADERO, cargado.evaluar("(EQ M (CDR L))"));
+            assertEquals(simbolo.VERDADERO, cargado.evaluar("(EQ Q (CDR P))"));
+            assertEquals("(5 6)", cargado.evaluar("Q").toString());
+        } finally {
+            Files.deleteIfExists(archivo);
+        }
+    }
+
+    @Test
+    void testPresupuestoRepartidoEntreOperacionesParalelas() throws Exception {
+        StringBuilder lista = new StringBuilder("(SET L (QUOTE (");
+        for (int i = 0; i < 2000; i++) {
+            lista.append(i).append(' ');
+        }
+        interprete.evaluar(lista.append(")))").toString());
+        interprete.evaluar("(DEFUN (doble x) (* x 2))");
+        interprete.evaluar("(DEFUN (contar x) (DOTIMES (i 1000 x)))");
+
+        // Los pasos que cada evaluación paralela no usa vuelven a la reserva
+        assertEquals(2000, ((numero) interprete.evaluar("(LENGTH (PMAP doble L))",
+                new Presupuesto(20000, Presupuesto.SIN_LIMITE, Presupuesto.SIN_LIMITE))).obtenerValor());
+
+        // Las evaluaciones paralelas no pueden sumar más pasos que el límite
+        assertThrows(ExcepcionLimite.class, () -> interprete.evaluar("(PMAP contar L)",
+                new Presupuesto(100000, Presupuesto.SIN_LIMITE, Presupuesto.SIN_LIMITE)));
+    }
+}
@@ -0,0 +1,48 @@
+import lisp.*;
+import org.junit.jupiter.api.Test;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ServidorReplTest {
+    private static String sesion(int puerto, String entrada) throws IOException {
+        try (Socket cliente = new Socket(InetAddress.getLoopbackAddress(), puerto)) {
+            OutputStream salida = cliente.getOutputStream();
+            salida.write(entrada.getBytes(StandardCharsets.UTF_8));
+            salida.flush();
+            cliente.shutdownOutput();
+            InputStream respuesta = cliente.getInputStream();
+            return new String(respuesta.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    void testSesionesIndependientes() throws IOException {
+        try (ServidorRepl servidor = new ServidorRepl(0)) {
+            servidor.iniciar();
+            String primera = sesion(servidor.obtenerPuerto(), "(SET x 41)\n(+ x 1)\n");
+            assertTrue(primera.contains("=> 42"), primera);
+            assertTrue(primera.contains("¡Adiós!"), primera);
+
+            // Otra sesión no ve las variables de la primera, pero sí las funciones incorporadas
+            String segunda = sesion(servidor.obtenerPuerto(), "x\n(* 6 7)\n");
+            assertTrue(segunda.contains("Error: Símbolo no definido: X"), segunda);
+            assertTrue(segunda.contains("=> 42"), segunda);
+        }
+    }
+
+    @Test
+    void testRedefinirIncorporadaSoloAfectaALaSesion() throws IOException {
+        try (ServidorRepl servidor = new ServidorRepl(0)) {
+            servidor.iniciar();
+            String primera = sesion(servidor.obtenerPuerto(), "(SET + *)\n(+ 2 3)\n");
+            assertTrue(primera.contains("=> 6"), primera);
+            String segunda = sesion(servidor.obtenerPuerto(), "(+ 2 3)\n");
+            assertTrue(segunda.contains("=> 5"), segunda);
+        }
+    }
+}
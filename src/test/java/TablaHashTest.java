@@ -0,0 +1,52 @@
+import Excepciones.ExcepcionLisp;
+import lisp.*;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class TablaHashTest {
+    @Test
+    void testPonerYObtener() throws ExcepcionLisp {
+        tablaHash tabla = new tablaHash();
+        simbolo clave = simbolo.inicializarSimbolo("CLAVE");
+        tabla.poner(clave, numero.obtenerValor(1));
+        tabla.poner(numero.obtenerValor(42), new cadena("cuarenta y dos"));
+        tabla.poner(new cadena("texto"), simbolo.VERDADERO);
+
+        assertEquals(numero.obtenerValor(1), tabla.obtener(clave));
+        assertEquals("cuarenta y dos", ((cadena) tabla.obtener(42)).obtenerValor());
+        assertSame(simbolo.VERDADERO, tabla.obtener(new cadena("texto")));
+        assertNull(tabla.obtener(simbolo.inicializarSimbolo("OTRA")));
+        assertEquals(3, tabla.cantidad());
+    }
+
+    @Test
+    void testRedimensionarYQuitar() throws ExcepcionLisp {
+        tablaHash tabla = new tablaHash();
+        for (int i = 0; i < 1000; i++) {
+            tabla.poner(numero.obtenerValor(i), numero.obtenerValor(i * 2));
+        }
+        assertEquals(1000, tabla.cantidad());
+
+        // Quitar los pares para comprobar que el desplazamiento no pierde entradas
+        for (int i = 0; i < 1000; i += 2) {
+            assertTrue(tabla.quitar(numero.obtenerValor(i)));
+        }
+        assertFalse(tabla.quitar(numero.obtenerValor(0)));
+        assertEquals(500, tabla.cantidad());
+        for (int i = 0; i < 1000; i++) {
+            ExpresionLisp valor = tabla.obtener(i);
+            if (i % 2 == 0) {
+                assertNull(valor);
+            } else {
+                assertEquals(i * 2, ((numero) valor).obtenerValor());
+            }
+        }
+    }
+
+    @Test
+    void testClaveInvalida() {
+        tablaHash tabla = new tablaHash();
+        ExpresionLisp lista = par.crearLista(numero.obtenerValor(1));
+        assertThrows(ExcepcionLisp.class, () -> tabla.poner(lista, simbolo.VERDADERO));
+    }
+}